@@ -33,6 +33,13 @@ import javax.sound.sampled.*;
 import java.io.*;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
 
 /**
  * Audio is the main class of the Audio system. In order to use the Audio
@@ -64,13 +71,23 @@ public final class Audio {
     private static SourceDataLine outLine;
 
     // See if the system has been initialised
-    private static boolean isInitialised = false;
+    private static volatile boolean isInitialised = false;
 
     // Auto-updater for the system
     private static UpdateRunner autoUpdater;
 
-    // Counter for unique sound IDs
-    private static int soundCount = 0;
+    // Counter for unique sound IDs, sounds may be loaded on any thread
+    private static final AtomicInteger soundCount = new AtomicInteger();
+
+    // Worker threads for asynchronous loading, started on first use
+    private static ExecutorService loader;
+
+    // Cache of decoded sound data on disk, null when not caching
+    private static volatile PcmCache cache;
+
+    // Voice limits for Sounds, kept across init and shutdown
+    private static int maxVoices = 64;
+    private static VoiceStealing voiceStealing = VoiceStealing.OLDEST;
 
     /**
      * Initialises the Audio system. This must be called before loading any
@@ -135,7 +152,7 @@ public final class Audio {
      */
     private void finishInit() {
         // Now initialise the mixer
-        Audio.mixer = new Mixer();
+        Audio.mixer = new Mixer(Audio.maxVoices, Audio.voiceStealing);
 
         // Initialise and start the updater
         Audio.autoUpdater = new UpdateRunner(Audio.mixer, Audio.outLine);
@@ -162,13 +179,15 @@ public final class Audio {
         }
         Audio.isInitialised = false;
 
+        // Queue the clean up before stopping, the updater applies it on exit
+        Audio.mixer.clearMusic();
+        Audio.mixer.clearSounds();
+
         // Stop the auto-updater if running
         Audio.autoUpdater.stop();
         Audio.autoUpdater = null;
         Audio.outLine.stop();
         Audio.outLine.flush();
-        Audio.mixer.clearMusic();
-        Audio.mixer.clearSounds();
         Audio.mixer = null;
     }
 
@@ -208,6 +227,60 @@ public final class Audio {
         Audio.mixer.setVolume(volume);
     }
 
+    /**
+     * Get the maximum number of Sounds that can play at once.
+     *
+     * @return the maximum number of voices
+     */
+    public int getMaxVoices() {
+        return Audio.maxVoices;
+    }
+
+    /**
+     * Set the maximum number of Sounds that can play at once. Playing a Sound
+     * when this many are already playing stops one of them, as chosen by the
+     * VoiceStealing policy. It starts at 64.
+     *
+     * @param maxVoices the maximum number of voices, at least 1
+     */
+    public void setMaxVoices(int maxVoices) {
+        if (maxVoices <= 0) {
+            return;
+        }
+        Audio.maxVoices = maxVoices;
+
+        if (Audio.isInitialised) {
+            Audio.mixer.setMaxVoices(maxVoices);
+        }
+    }
+
+    /**
+     * Get how a playing Sound is chosen to be stopped when all voices are in
+     * use.
+     *
+     * @return the voice stealing policy
+     */
+    public VoiceStealing getVoiceStealing() {
+        return Audio.voiceStealing;
+    }
+
+    /**
+     * Set how a playing Sound is chosen to be stopped when all voices are in
+     * use. It starts as VoiceStealing.OLDEST.
+     *
+     * @param stealing the voice stealing policy
+     */
+    public void setVoiceStealing(VoiceStealing stealing) {
+        if (stealing == null) {
+            return;
+        }
+        Audio.voiceStealing = stealing;
+
+        if (Audio.isInitialised) {
+            Audio.mixer.setVoiceStealing(stealing);
+        }
+    }
+
     /**
      * Load a Music resource by name. The resource must be on the classpath for
      * this to work. This will store sound data in memory.
@@ -328,16 +401,8 @@ public final class Audio {
             return null;
         }
 
-        // Get a valid stream of sound data
-        AudioInputStream audioStream = getValidAudioStream(url);
-
-        // Check for failure
-        if (audioStream == null) {
-            return null;
-        }
-
-        // Try to read all the bytes
-        byte[][] data = readAllBytes(audioStream);
+        // Decode the sound data, or take it from the cache
+        PcmData data = decode(url);
 
         // Check for failure
         if (data == null) {
@@ -356,14 +421,14 @@ public final class Audio {
             // Try to create it
             StreamMusic sm = null;
             try {
-                sm = new StreamMusic(info.URL, info.NUM_BYTES_PER_CHANNEL, Audio.mixer);
+                sm = new StreamMusic(info.URL, info.FILE, info.NUM_BYTES_PER_CHANNEL, Audio.mixer);
             } catch (IOException e) {
                 System.err.println("Failed to create StreamMusic!");
             }
             return sm;
         }
         // Construct the Music object and register it with the mixer
-        return new MemMusic(data[0], data[1], Audio.mixer);
+        return new MemMusic(data, Audio.mixer);
     }
 
     /**
@@ -488,16 +553,8 @@ public final class Audio {
             return null;
         }
 
-        // Get a valid stream of sound data
-        AudioInputStream audioStream = getValidAudioStream(url);
-
-        // Check for failure
-        if (audioStream == null) {
-            return null;
-        }
-
-        // Try to read all the bytes
-        byte[][] data = readAllBytes(audioStream);
+        // Decode the sound data, or take it from the cache
+        PcmData data = decode(url);
 
         // Check for failure
         if (data == null) {
@@ -517,96 +574,251 @@ public final class Audio {
             StreamSound ss = null;
 
             try {
-                ss = new StreamSound(info.URL, info.NUM_BYTES_PER_CHANNEL, Audio.mixer, Audio.soundCount);
-                Audio.soundCount++;
+                ss = new StreamSound(info.URL, info.FILE, info.NUM_BYTES_PER_CHANNEL, Audio.mixer, Audio.soundCount.incrementAndGet());
             } catch (IOException e) {
                 System.err.println("Failed to create StreamSound!");
             }
             return ss;
         }
         // Construct the Sound object
-        Audio.soundCount++;
-        return new MemSound(data[0], data[1], Audio.mixer, Audio.soundCount);
+        return new MemSound(data, Audio.mixer, Audio.soundCount.incrementAndGet());
     }
 
     /**
-     * Reads all of the bytes from an AudioInputStream.
+     * Load a Sound resource by name on a worker thread. The resource must be
+     * on the classpath for this to work. This will store sound data in memory.
      *
-     * @param stream the stream to read
-     * @return all bytes from the stream, null if error
+     * @param name name of the Sound resource
+     * @return a future for the Sound resource, which completes with null if
+     * it could not be found/loaded
      */
-    private byte[][] readAllBytes(AudioInputStream stream) {
-        // Left and right channels
-        byte[][] data = null;
-        int numChannels = stream.getFormat().getChannels();
+    public CompletableFuture<Sound> loadSoundAsync(final String name) {
+        return loadSoundAsync(name, false);
+    }
+
+    /**
+     * Load a Sound resource by name on a worker thread. The resource must be
+     * on the classpath for this to work.
+     *
+     * @param name name of the Sound resource
+     * @param streamFromFile true if this Sound resource should be streamed from
+     * a temporary file to reduce memory overhead
+     * @return a future for the Sound resource, which completes with null if
+     * it could not be found/loaded
+     */
+    public CompletableFuture<Sound> loadSoundAsync(final String name, final boolean streamFromFile) {
+        return CompletableFuture.supplyAsync(new Supplier<Sound>() {
+            @Override
+            public Sound get() {
+                return loadSound(name, streamFromFile);
+            }
+        }, Audio.getLoader());
+    }
 
-        // Handle 1-channel (if) & 2-channel (else)
-        if (numChannels == 1) {
-            byte[] left = readAllBytesOneChannel(stream);
+    /**
+     * Load a Sound resource by URL on a worker thread. This will store sound
+     * data in memory.
+     *
+     * @param url the URL of the Sound resource
+     * @return a future for the Sound resource, which completes with null if
+     * it could not be found/loaded
+     */
+    public CompletableFuture<Sound> loadSoundAsync(final URL url) {
+        return loadSoundAsync(url, false);
+    }
 
-            // Check failure
-            if (left == null) {
-                return null;
+    /**
+     * Load a Sound resource by URL on a worker thread.
+     *
+     * @param url the URL of the Sound resource
+     * @param streamFromFile true if this Sound resource should be streamed from
+     * a temporary file to reduce memory overhead
+     * @return a future for the Sound resource, which completes with null if
+     * it could not be found/loaded
+     */
+    public CompletableFuture<Sound> loadSoundAsync(final URL url, final boolean streamFromFile) {
+        return CompletableFuture.supplyAsync(new Supplier<Sound>() {
+            @Override
+            public Sound get() {
+                return loadSound(url, streamFromFile);
             }
-            data = new byte[2][];
-            data[0] = left;
-            data[1] = left; // Don't copy for the right channel
-        } else if (numChannels == 2) {
-            data = readAllBytesTwoChannel(stream);
-        } else {
-            System.err.println("Unable to read " + numChannels + " channels!");
+        }, Audio.getLoader());
+    }
+
+    /**
+     * Load a Music resource by name on a worker thread. The resource must be
+     * on the classpath for this to work. This will store sound data in memory.
+     *
+     * @param name name of the Music resource
+     * @return a future for the Music resource, which completes with null if
+     * it could not be found/loaded
+     */
+    public CompletableFuture<Music> loadMusicAsync(final String name) {
+        return loadMusicAsync(name, false);
+    }
+
+    /**
+     * Load a Music resource by name on a worker thread. The resource must be
+     * on the classpath for this to work.
+     *
+     * @param name name of the Music resource
+     * @param streamFromFile true if this Music resource should be streamed from
+     * a temporary file to reduce memory overhead
+     * @return a future for the Music resource, which completes with null if
+     * it could not be found/loaded
+     */
+    public CompletableFuture<Music> loadMusicAsync(final String name, final boolean streamFromFile) {
+        return CompletableFuture.supplyAsync(new Supplier<Music>() {
+            @Override
+            public Music get() {
+                return loadMusic(name, streamFromFile);
+            }
+        }, Audio.getLoader());
+    }
+
+    /**
+     * Load a Music resource by URL on a worker thread. This will store sound
+     * data in memory.
+     *
+     * @param url the URL of the Music resource
+     * @return a future for the Music resource, which completes with null if
+     * it could not be found/loaded
+     */
+    public CompletableFuture<Music> loadMusicAsync(final URL url) {
+        return loadMusicAsync(url, false);
+    }
+
+    /**
+     * Load a Music resource by URL on a worker thread.
+     *
+     * @param url the URL of the Music resource
+     * @param streamFromFile true if this Music resource should be streamed from
+     * a temporary file to reduce memory overhead
+     * @return a future for the Music resource, which completes with null if
+     * it could not be found/loaded
+     */
+    public CompletableFuture<Music> loadMusicAsync(final URL url, final boolean streamFromFile) {
+        return CompletableFuture.supplyAsync(new Supplier<Music>() {
+            @Override
+            public Music get() {
+                return loadMusic(url, streamFromFile);
+            }
+        }, Audio.getLoader());
+    }
+
+    /**
+     * Start a new batch of asynchronous loads. The batch tracks how many of
+     * its loads have finished, for driving a loading screen.
+     *
+     * @return a new, empty AudioBatch
+     */
+    public AudioBatch newBatch() {
+        return new AudioBatch(this);
+    }
+
+    /**
+     * Get the worker pool for asynchronous loading, starting it if needed.
+     * There is one daemon thread per core, leaving one for the game.
+     *
+     * @return the worker pool
+     */
+    private static synchronized ExecutorService getLoader() {
+        if (Audio.loader == null) {
+            int numThreads = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+
+            Audio.loader = Executors.newFixedThreadPool(numThreads, new ThreadFactory() {
+                private final AtomicInteger count = new AtomicInteger();
+
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "AudioLoader-" + this.count.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
         }
-        return data;
+        return Audio.loader;
     }
 
     /**
-     * Reads all of the bytes from a 1-channel AudioInputStream.
+     * Get the directory decoded sound data is cached in.
      *
-     * @param stream the stream to read
-     * @return all bytes from the stream, null if error
+     * @return the cache directory, null if not caching
      */
-    private byte[] readAllBytesOneChannel(AudioInputStream stream) {
-        // Read all the bytes (assuming 1-channel)
-        byte[] data = null;
+    public File getCacheDirectory() {
+        PcmCache cache = Audio.cache;
+        return (cache != null) ? cache.getDirectory() : null;
+    }
 
-        try {
-            data = getBytes(stream);
-        } catch (IOException e) {
-            System.err.println("Error reading all bytes from stream!");
-            return null;
-        } finally {
-            try {
-                stream.close();
-            } catch (IOException e) {
+    /**
+     * Set a directory to cache decoded sound data in. Loading a resource that
+     * is in the cache skips decoding and converting it, which speeds up
+     * startup after the first run. Cached data is rebuilt when the resource
+     * changes. Caching is off to begin with.
+     *
+     * @param directory the cache directory, null to stop caching
+     */
+    public void setCacheDirectory(File directory) {
+        Audio.cache = (directory != null) ? new PcmCache(directory) : null;
+    }
+
+    /**
+     * Decode all the sound data of a resource, using the cache if there is
+     * one.
+     *
+     * @param url URL of the resource
+     * @return the decoded sound data, null if failure
+     */
+    private PcmData decode(URL url) {
+        PcmCache cache = Audio.cache;
+        byte[] hash = null;
+
+        // Try the cache first, hashing the source only once
+        if (cache != null) {
+            hash = PcmCache.hashContents(url);
+            PcmData data = cache.load(url, hash);
+
+            if (data != null) {
+                return data;
             }
         }
+
+        // Get a valid stream of sound data
+        AudioInputStream audioStream = getValidAudioStream(url);
+
+        // Check for failure
+        if (audioStream == null) {
+            return null;
+        }
+
+        // Try to read all the bytes
+        PcmData data = readAllSamples(audioStream);
+
+        // Save it for next time
+        if (cache != null && data != null) {
+            cache.store(url, hash, data);
+        }
         return data;
     }
 
     /**
-     * Reads all of the bytes from a 2-channel AudioInputStream.
+     * Reads all of the samples from an AudioInputStream.
      *
      * @param stream the stream to read
-     * @return all bytes from the stream, null if error
+     * @return all samples from the stream, null if error
      */
-    private byte[][] readAllBytesTwoChannel(AudioInputStream stream) {
-        // Read all the bytes (assuming 16-bit, 2-channel)
-        byte[][] data = null;
+    private PcmData readAllSamples(AudioInputStream stream) {
+        int numChannels = stream.getFormat().getChannels();
+
+        // Handle 1-channel & 2-channel, 1-channel is played on both sides
+        if (numChannels != 1 && numChannels != 2) {
+            System.err.println("Unable to read " + numChannels + " channels!");
+            return null;
+        }
+
         try {
-            byte[] allBytes = getBytes(stream);
-            byte[] left = new byte[allBytes.length / 2];
-            byte[] right = new byte[allBytes.length / 2];
-
-            for (int i = 0, j = 0; i < allBytes.length; i += 4, j += 2) {
-                // Interleaved left then right
-                left[j] = allBytes[i];
-                left[j + 1] = allBytes[i + 1];
-                right[j] = allBytes[i + 2];
-                right[j + 1] = allBytes[i + 3];
-            }
-            data = new byte[2][];
-            data[0] = left;
-            data[1] = right;
+            // Assuming 16-bit little-endian, interleaved if 2-channel
+            return new PcmData(getSamples(stream), numChannels);
         } catch (IOException e) {
             System.err.println("Error reading all bytes from stream!");
             return null;
@@ -616,7 +828,6 @@ public final class Audio {
             } catch (IOException e) {
             }
         }
-        return data;
     }
 
     /**
@@ -818,17 +1029,69 @@ public final class Audio {
     private byte[] getBytes(AudioInputStream stream) throws IOException {
         // Buffer 1-sec at a time
         int bufSize = (int) Audio.FORMAT.getSampleRate() * Audio.FORMAT.getChannels() * Audio.FORMAT.getFrameSize();
-        byte[] buf = new byte[bufSize];
 
-        ByteList list = new ByteList(bufSize);
+        // Size the list exactly if the stream knows its length
+        long frameLength = stream.getFrameLength();
+        long numBytes = frameLength * stream.getFormat().getFrameSize();
+        boolean known = frameLength != AudioSystem.NOT_SPECIFIED && numBytes >= 0 && numBytes <= Integer.MAX_VALUE;
+        ByteList list = new ByteList(known ? (int) numBytes : bufSize);
 
+        // Read straight into the list while it has room
         int numRead = 0;
-        while ((numRead = stream.read(buf)) > -1) {
-            for (int i = 0; i < numRead; i++) {
-                list.add(buf[i]);
+        while ((numRead = list.read(stream)) > 0) {
+        }
+
+        // Then carry on a second at a time if the length was wrong
+        if (numRead == 0) {
+            byte[] buf = new byte[bufSize];
+
+            while ((numRead = stream.read(buf)) > -1) {
+                list.add(buf, 0, numRead);
+            }
+        }
+        return list.takeArray();
+    }
+
+    /**
+     * Reads all of the 16-bit little-endian samples from an AudioInputStream.
+     * The samples are converted a block at a time straight into an array
+     * sized from the stream length, so the whole track is never held as bytes
+     * as well.
+     *
+     * @param stream the stream to read
+     * @return all samples from the stream
+     * @throws java.io.IOException if the stream cannot be read
+     */
+    private short[] getSamples(AudioInputStream stream) throws IOException {
+        // Size the samples exactly if the stream knows its length
+        long frameLength = stream.getFrameLength();
+        long numSamples = frameLength * stream.getFormat().getFrameSize() / 2;
+        boolean known = frameLength != AudioSystem.NOT_SPECIFIED && numSamples >= 0 && numSamples <= Integer.MAX_VALUE;
+        short[] samples = new short[known ? (int) numSamples : (int) Audio.FORMAT.getSampleRate() * 2];
+        int count = 0;
+
+        byte[] buf = new byte[16384];
+        int carry = 0;      // Odd byte left over from the last read
+        int numRead;
+
+        while ((numRead = stream.read(buf, carry, buf.length - carry)) > -1) {
+            int end = carry + numRead;
+            int pairs = end / 2;
+
+            if (count + pairs > samples.length) {
+                // The length was wrong, grow a second at a time or more
+                samples = Arrays.copyOf(samples, Math.max(count + pairs, samples.length + (int) Audio.FORMAT.getSampleRate() * 2));
+            }
+            for (int i = 0; i < pairs; i++) {
+                samples[count++] = (short) ((buf[2 * i + 1] << 8) | (buf[2 * i] & 0xFF));
+            }
+
+            carry = end & 1;
+            if (carry != 0) {
+                buf[0] = buf[end - 1];
             }
         }
-        return list.asArray();
+        return (count == samples.length) ? samples : Arrays.copyOf(samples, count);
     }
 
     /**
@@ -838,7 +1101,7 @@ public final class Audio {
      * @param data the sound data to write to the temporary file
      * @return a StreamInfo Object for the stream
      */
-    private StreamInfo createFileStream(byte[][] data) {
+    private StreamInfo createFileStream(PcmData data) {
         // First try to create a file for the data to live in
         File temp = null;
         try {
@@ -870,22 +1133,31 @@ public final class Audio {
             return null;
         }
 
-        // Write the bytes to the file
+        // Write the bytes to the file as 2-channel frames
         try {
-            // Write two at a time from each channel
-            for (int i = 0; i < data[0].length; i += 2) {
-                try {
-                    // First left
-                    out.write(data[0], i, 2);
-
-                    // Then right
-                    out.write(data[1], i, 2);
-                } catch (IOException e) {
-                    // Hmm
-                    System.err.println("Failed writing bytes to stream file!");
-                    return null;
+            byte[] buf = new byte[64 * 1024];
+            short[] samples = data.SAMPLES;
+            int stride = data.CHANNELS - 1;    // Right is left for 1-channel
+            int pos = 0;
+
+            for (int i = 0; i < samples.length; i += data.CHANNELS) {
+                short left = samples[i];
+                short right = samples[i + stride];
+                buf[pos++] = (byte) (left & 0xFF);
+                buf[pos++] = (byte) ((left >> 8) & 0xFF);
+                buf[pos++] = (byte) (right & 0xFF);
+                buf[pos++] = (byte) ((right >> 8) & 0xFF);
+
+                if (pos == buf.length) {
+                    out.write(buf, 0, pos);
+                    pos = 0;
                 }
             }
+            out.write(buf, 0, pos);
+        } catch (IOException e) {
+            // Hmm
+            System.err.println("Failed writing bytes to stream file!");
+            return null;
         } finally {
             try {
                 out.close();
@@ -893,7 +1165,7 @@ public final class Audio {
                 System.err.println("Failed closing stream file after writing!");
             }
         }
-        return new StreamInfo(url, data[0].length);
+        return new StreamInfo(url, temp, data.NUM_FRAMES * 2L);
     }
 
     /**
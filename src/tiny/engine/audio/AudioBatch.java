@@ -0,0 +1,194 @@
+/*
+ * Copyright (c) 2012, Finn Kuusisto
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *     Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *     
+ *     Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package tiny.engine.audio;
+
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+
+/**
+ * The AudioBatch class groups asynchronous loads so their overall progress
+ * can be shown while they decode in parallel, such as on a loading screen.
+ * Get one from Audio.newBatch(). Loads that fail still count as finished, and
+ * their futures complete with null just like the synchronous loads return
+ * null.
+ *
+ * @author Damian Strain
+ */
+public final class AudioBatch {
+
+    private final Audio audio;
+    private final List<CompletableFuture<?>> loads;
+    private final AtomicInteger numFinished;
+    private final AtomicInteger numFailed;
+
+    /**
+     * Construct a new AudioBatch for an Audio system.
+     *
+     * @param audio the Audio system to load with
+     */
+    AudioBatch(Audio audio) {
+        this.audio = audio;
+        this.loads = new ArrayList<CompletableFuture<?>>();
+        this.numFinished = new AtomicInteger();
+        this.numFailed = new AtomicInteger();
+    }
+
+    /**
+     * Load a Sound resource by name as part of this batch.
+     *
+     * @param name name of the Sound resource
+     * @param streamFromFile true if this Sound resource should be streamed from
+     * a temporary file to reduce memory overhead
+     * @return a future for the Sound resource
+     */
+    public CompletableFuture<Sound> loadSound(String name, boolean streamFromFile) {
+        return this.track(this.audio.loadSoundAsync(name, streamFromFile));
+    }
+
+    /**
+     * Load a Sound resource by URL as part of this batch.
+     *
+     * @param url the URL of the Sound resource
+     * @param streamFromFile true if this Sound resource should be streamed from
+     * a temporary file to reduce memory overhead
+     * @return a future for the Sound resource
+     */
+    public CompletableFuture<Sound> loadSound(URL url, boolean streamFromFile) {
+        return this.track(this.audio.loadSoundAsync(url, streamFromFile));
+    }
+
+    /**
+     * Load a Music resource by name as part of this batch.
+     *
+     * @param name name of the Music resource
+     * @param streamFromFile true if this Music resource should be streamed from
+     * a temporary file to reduce memory overhead
+     * @return a future for the Music resource
+     */
+    public CompletableFuture<Music> loadMusic(String name, boolean streamFromFile) {
+        return this.track(this.audio.loadMusicAsync(name, streamFromFile));
+    }
+
+    /**
+     * Load a Music resource by URL as part of this batch.
+     *
+     * @param url the URL of the Music resource
+     * @param streamFromFile true if this Music resource should be streamed from
+     * a temporary file to reduce memory overhead
+     * @return a future for the Music resource
+     */
+    public CompletableFuture<Music> loadMusic(URL url, boolean streamFromFile) {
+        return this.track(this.audio.loadMusicAsync(url, streamFromFile));
+    }
+
+    /**
+     * Count a load towards this batch's progress.
+     *
+     * @param load the future for the load
+     * @return the same future
+     */
+    private <T> CompletableFuture<T> track(CompletableFuture<T> load) {
+        synchronized (this.loads) {
+            this.loads.add(load);
+        }
+        load.whenComplete(new BiConsumer<T, Throwable>() {
+            @Override
+            public void accept(T result, Throwable error) {
+                if (result == null) {
+                    AudioBatch.this.numFailed.incrementAndGet();
+                }
+                AudioBatch.this.numFinished.incrementAndGet();
+            }
+        });
+        return load;
+    }
+
+    /**
+     * Get the number of loads started in this batch.
+     *
+     * @return the number of loads
+     */
+    public int getTotal() {
+        synchronized (this.loads) {
+            return this.loads.size();
+        }
+    }
+
+    /**
+     * Get the number of loads in this batch that have finished, successfully
+     * or not.
+     *
+     * @return the number of finished loads
+     */
+    public int getFinished() {
+        return this.numFinished.get();
+    }
+
+    /**
+     * Get the number of loads in this batch that have failed.
+     *
+     * @return the number of failed loads
+     */
+    public int getFailed() {
+        return this.numFailed.get();
+    }
+
+    /**
+     * Get the fraction of loads in this batch that have finished.
+     *
+     * @return progress from 0.0 to 1.0, 1.0 if nothing has been loaded
+     */
+    public double getProgress() {
+        int total = this.getTotal();
+        return (total == 0) ? 1.0 : (double) this.getFinished() / total;
+    }
+
+    /**
+     * Determine if every load in this batch has finished.
+     *
+     * @return true if all loads have finished
+     */
+    public boolean isDone() {
+        return this.getFinished() >= this.getTotal();
+    }
+
+    /**
+     * Get a future that completes when every load started so far in this
+     * batch has finished.
+     *
+     * @return a future for the whole batch
+     */
+    public CompletableFuture<Void> whenDone() {
+        synchronized (this.loads) {
+            return CompletableFuture.allOf(this.loads.toArray(new CompletableFuture<?>[this.loads.size()]));
+        }
+    }
+}
@@ -172,6 +172,14 @@ public interface Music {
      */
     public void setPan(double pan);
 
+    /**
+     * Get the number of bytes of memory this Music keeps its sound data in.
+     * Music streamed from a file keeps its data on disk, so this is 0.
+     *
+     * @return the size of this Music's sound data in memory
+     */
+    public long getMemorySize();
+
     /**
      * Unloads this Music from the system. Attempts to use this Music after
      * unloading will result in error.
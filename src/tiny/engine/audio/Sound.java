@@ -29,7 +29,8 @@ package tiny.engine.audio;
 /**
  * The Sound interface is an abstraction for sound effects. Sound objects should
  * only be loaded via the Audio loadSound() functions. Sounds can be played
- * repeatedly in an overlapping fashion.
+ * repeatedly in an overlapping fashion. Each play returns a voice handle that
+ * can be used to adjust or stop just that instance of the Sound.
  *
  * @author Finn Kuusisto
  */
@@ -37,15 +38,20 @@ public interface Sound {
 
     /**
      * Plays this Sound.
+     *
+     * @return the handle of the voice playing this Sound, -1 if it could not
+     * be played
      */
-    public void play();
+    public long play();
 
     /**
      * Plays this Sound with a specified volume.
      *
      * @param volume the volume at which to play this Sound
+     * @return the handle of the voice playing this Sound, -1 if it could not
+     * be played
      */
-    public void play(double volume);
+    public long play(double volume);
 
     /**
      * Plays this Sound with a specified volume and pan.
@@ -53,8 +59,24 @@ public interface Sound {
      * @param volume the volume at which to play this Sound
      * @param pan the pan value to play this Sound [-1.0,1.0], values outside
      * the valid range will assume no panning (0.0)
+     * @return the handle of the voice playing this Sound, -1 if it could not
+     * be played
+     */
+    public long play(double volume, double pan);
+
+    /**
+     * Plays this Sound with a specified volume, pan and priority. The priority
+     * is used to choose which voice to stop when too many are playing and
+     * voice stealing is set to LOWEST_PRIORITY.
+     *
+     * @param volume the volume at which to play this Sound
+     * @param pan the pan value to play this Sound [-1.0,1.0], values outside
+     * the valid range will assume no panning (0.0)
+     * @param priority the priority of this voice, higher is more important
+     * @return the handle of the voice playing this Sound, -1 if it could not
+     * be played
      */
-    public void play(double volume, double pan);
+    public long play(double volume, double pan, int priority);
 
     /**
      * Stops this Sound from playing. Note that if this Sound was played
@@ -63,6 +85,39 @@ public interface Sound {
      */
     public void stop();
 
+    /**
+     * Stops a single voice of this Sound. Handles of voices that have already
+     * finished or been stolen are ignored.
+     *
+     * @param voice the handle returned when the voice was played
+     */
+    public void stop(long voice);
+
+    /**
+     * Sets the volume of a single voice of this Sound.
+     *
+     * @param voice the handle returned when the voice was played
+     * @param volume the new volume of the voice
+     */
+    public void setVolume(long voice, double volume);
+
+    /**
+     * Sets the pan of a single voice of this Sound. Values outside the valid
+     * range will be ignored.
+     *
+     * @param voice the handle returned when the voice was played
+     * @param pan the new pan of the voice [-1.0,1.0]
+     */
+    public void setPan(long voice, double pan);
+
+    /**
+     * Get the number of bytes of memory this Sound keeps its sound data in.
+     * A Sound streamed from a file keeps its data on disk, so this is 0.
+     *
+     * @return the size of this Sound's sound data in memory
+     */
+    public long getMemorySize();
+
     /**
      * Unloads this Sound from the system. Attempts to use this Sound after
      * unloading will result in error.
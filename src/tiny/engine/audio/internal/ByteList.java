@@ -26,6 +26,8 @@
  */
 package tiny.engine.audio.internal;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.Arrays;
 
 /**
@@ -66,18 +68,66 @@ public final class ByteList {
      * @param b the byte to add
      */
     public void add(byte b) {
-        if (this.numBytes >= this.data.length && this.numBytes >= Integer.MAX_VALUE) {
-            throw new RuntimeException("Array reached maximum size");
-        } else if (this.numBytes >= this.data.length) {
-            // Grow the backing array
-            long tmp = this.data.length * 2;
-            int newSize = tmp > Integer.MAX_VALUE ? Integer.MAX_VALUE : (int) tmp;
-            this.data = Arrays.copyOf(this.data, newSize);
-        }
+        this.ensureCapacity(this.numBytes + 1L);
         this.data[this.numBytes] = b;
         this.numBytes++;
     }
 
+    /**
+     * Add a range of bytes to the end of this ByteList.
+     *
+     * @param b the array holding the bytes to add
+     * @param off the index of the first byte to add
+     * @param len the number of bytes to add
+     */
+    public void add(byte[] b, int off, int len) {
+        this.ensureCapacity((long) this.numBytes + len);
+        System.arraycopy(b, off, this.data, this.numBytes, len);
+        this.numBytes += len;
+    }
+
+    /**
+     * Read bytes from a stream straight into the free space at the end of this
+     * ByteList. The ByteList is not grown.
+     *
+     * @param in the stream to read from
+     * @return the number of bytes read, 0 if this ByteList is full, -1 if the
+     * end of the stream was reached
+     * @throws IOException if reading fails
+     */
+    public int read(InputStream in) throws IOException {
+        int free = this.data.length - this.numBytes;
+
+        if (free == 0) {
+            return 0;
+        }
+        int numRead = in.read(this.data, this.numBytes, free);
+
+        if (numRead > 0) {
+            this.numBytes += numRead;
+        }
+        return numRead;
+    }
+
+    /**
+     * Grow the backing array, if needed, to hold a number of bytes.
+     *
+     * @param minSize the number of bytes the backing array must hold
+     */
+    private void ensureCapacity(long minSize) {
+        if (minSize <= this.data.length) {
+            return;
+        }
+        if (minSize > Integer.MAX_VALUE) {
+            throw new RuntimeException("Array reached maximum size");
+        }
+
+        // Grow the backing array
+        long tmp = Math.max(this.data.length * 2L, minSize);
+        int newSize = tmp > Integer.MAX_VALUE ? Integer.MAX_VALUE : (int) tmp;
+        this.data = Arrays.copyOf(this.data, newSize);
+    }
+
     /**
      * Get a byte at a specified index in this ByteList.
      *
@@ -110,6 +160,19 @@ public final class ByteList {
         return Arrays.copyOf(this.data, this.numBytes);
     }
 
+    /**
+     * Take all the bytes added to this ByteList, leaving it empty. The backing
+     * array is handed over as is when it is exactly full, so a ByteList sized
+     * up front never copies its contents.
+     *
+     * @return an array of the bytes added to this ByteList
+     */
+    public byte[] takeArray() {
+        byte[] bytes = (this.numBytes == this.data.length) ? this.data : Arrays.copyOf(this.data, this.numBytes);
+        this.clear();
+        return bytes;
+    }
+
     /**
      * Clear this ByteList of all added bytes.
      */
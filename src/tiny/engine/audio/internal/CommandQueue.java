@@ -0,0 +1,165 @@
+/*
+ * Copyright (c) 2012, Finn Kuusisto
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *     Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *     
+ *     Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package tiny.engine.audio.internal;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * The CommandQueue class is a bounded, lock-free queue of commands from any
+ * number of game threads to the single audio thread. Each slot carries a
+ * sequence number so producers claim slots with a single compare-and-set and
+ * the consumer never takes a lock. Command data is copied into preallocated
+ * slots, so queueing a command does not allocate. CommandQueue is an internal
+ * class of the Audio system and should be of no real concern to the average
+ * user of Audio.
+ *
+ * @author Damian Strain
+ */
+public final class CommandQueue {
+
+    private final int mask;
+    private final AtomicLongArray sequences;
+    private final AtomicLong tail;      // Next slot to be claimed by a producer
+    private long head;                  // Next slot to be read by the consumer
+
+    // Command data, one entry per slot
+    private final int[] types;
+    private final Object[] targets;
+    private final int[] ids;
+    private final long[] handles;
+    private final double[] volumes;
+    private final double[] pans;
+
+    /**
+     * A reusable holder for a command taken off the queue by the consumer.
+     */
+    public static final class Command {
+
+        public int type;
+        public Object target;
+        public int id;
+        public long handle;
+        public double volume;
+        public double pan;
+    }
+
+    /**
+     * Construct a new CommandQueue able to hold the specified number of
+     * commands. The capacity is rounded up to a power of two.
+     *
+     * @param capacity the minimum number of commands the queue can hold
+     */
+    public CommandQueue(int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        this.mask = size - 1;
+        this.sequences = new AtomicLongArray(size);
+        this.tail = new AtomicLong();
+        this.head = 0;
+        this.types = new int[size];
+        this.targets = new Object[size];
+        this.ids = new int[size];
+        this.handles = new long[size];
+        this.volumes = new double[size];
+        this.pans = new double[size];
+
+        // Each slot starts out free for the producer at that position
+        for (int i = 0; i < size; i++) {
+            this.sequences.set(i, i);
+        }
+    }
+
+    /**
+     * Try to add a command to this CommandQueue. This may be called from any
+     * thread.
+     *
+     * @param type the type of command
+     * @param target the object the command applies to, may be null
+     * @param id the ID the command applies to
+     * @param handle the voice handle the command applies to
+     * @param volume the volume value of the command
+     * @param pan the pan value of the command
+     * @return true if the command was added, false if the queue was full
+     */
+    public boolean offer(int type, Object target, int id, long handle, double volume, double pan) {
+        long position;
+        int index;
+
+        // Claim a slot
+        while (true) {
+            position = this.tail.get();
+            index = (int) (position & this.mask);
+            long difference = this.sequences.get(index) - position;
+
+            if (difference == 0) {
+                if (this.tail.compareAndSet(position, position + 1)) {
+                    break;
+                }
+            } else if (difference < 0) {
+                // The consumer hasn't freed this slot yet
+                return false;
+            }
+        }
+
+        // Fill the slot and publish it to the consumer
+        this.types[index] = type;
+        this.targets[index] = target;
+        this.ids[index] = id;
+        this.handles[index] = handle;
+        this.volumes[index] = volume;
+        this.pans[index] = pan;
+        this.sequences.set(index, position + 1);
+        return true;
+    }
+
+    /**
+     * Take the next command off this CommandQueue. This must only be called
+     * from the audio thread.
+     *
+     * @param command the holder to copy the command into
+     * @return true if a command was taken, false if the queue was empty
+     */
+    public boolean poll(Command command) {
+        int index = (int) (this.head & this.mask);
+
+        if (this.sequences.get(index) != this.head + 1) {
+            return false;
+        }
+        command.type = this.types[index];
+        command.target = this.targets[index];
+        command.id = this.ids[index];
+        command.handle = this.handles[index];
+        command.volume = this.volumes[index];
+        command.pan = this.pans[index];
+
+        // Release the slot to the producer one lap ahead
+        this.targets[index] = null;
+        this.sequences.set(index, this.head + this.mask + 1);
+        this.head++;
+        return true;
+    }
+}
@@ -0,0 +1,163 @@
+/*
+ * Copyright (c) 2012, Finn Kuusisto
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *     Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *     
+ *     Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package tiny.engine.audio.internal;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * The MappedStreamSource class is a StreamSource that reads straight out of a
+ * memory-mapped stream file. The mapping is shared by every reference to the
+ * same file, and each MappedStreamSource is just a view with its own
+ * position, so seeking and looping cost nothing and no data is copied on the
+ * heap.
+ *
+ * @author Damian Strain
+ */
+final class MappedStreamSource implements StreamSource {
+
+    private ShortBuffer samples;
+
+    /**
+     * Construct a new MappedStreamSource over a mapped stream file.
+     *
+     * @param mapped the mapped stream file, from map()
+     * @param position byte index to start reading from
+     */
+    MappedStreamSource(ByteBuffer mapped, long position) {
+        this.samples = mapped.duplicate().order(ByteOrder.LITTLE_ENDIAN).asShortBuffer();
+        this.seek(position);
+    }
+
+    /**
+     * Map a stream file into memory.
+     *
+     * @param file the stream file, may be null
+     * @return the mapped file, null if it could not be mapped
+     */
+    static ByteBuffer map(File file) {
+        // Too big for one mapping, stream it instead
+        if (file == null || file.length() > Integer.MAX_VALUE) {
+            return null;
+        }
+        RandomAccessFile raf = null;
+
+        try {
+            raf = new RandomAccessFile(file, "r");
+            return raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
+        } catch (IOException e) {
+            System.err.println("Failed to map stream file, streaming instead");
+            return null;
+        } finally {
+            // The mapping stays valid once the file is closed
+            if (raf != null) {
+                try {
+                    raf.close();
+                } catch (IOException e) {
+                    // Whatever... this should never happen
+                }
+            }
+        }
+    }
+
+    /**
+     * Continue reading from a new position.
+     *
+     * @param position byte index to continue from
+     */
+    @Override
+    public void seek(long position) {
+        long index = position / 2;
+        this.samples.position((int) Math.min(index, this.samples.limit()));
+    }
+
+    /**
+     * The whole file is always available, so there is nothing to resync.
+     *
+     * @param loop true if the data should loop
+     * @param loopPosition byte index to loop back to
+     * @return false
+     */
+    @Override
+    public boolean setLoop(boolean loop, long loopPosition) {
+        return false;
+    }
+
+    /**
+     * Read up to the specified number of frames into a block of interleaved
+     * left and right samples.
+     *
+     * @param data buffer to write the samples into
+     * @param offset the start index to write samples into
+     * @param numFrames the maximum number of frames to read
+     * @return number of frames actually read
+     */
+    @Override
+    public int read(short[] data, int offset, int numFrames) {
+        int framesAvailable = this.samples.remaining() / 2;
+        int frames = (numFrames < framesAvailable) ? numFrames : framesAvailable;
+        this.samples.get(data, offset, frames * 2);
+        return frames;
+    }
+
+    /**
+     * Skip up to the specified number of bytes.
+     *
+     * @param num number of bytes to skip
+     * @return number of bytes actually skipped
+     */
+    @Override
+    public long skip(long num) {
+        long available = (this.samples.remaining() & ~1) * 2L;
+        long skipped = (num < available) ? num & ~3L : available;
+        this.samples.position(this.samples.position() + (int) (skipped / 2));
+        return skipped;
+    }
+
+    /**
+     * Determine if the end of the file has been reached.
+     *
+     * @return true if there are no whole frames left
+     */
+    @Override
+    public boolean ended() {
+        return this.samples.remaining() < 2;
+    }
+
+    /**
+     * Drop the view. The mapping itself is released once nothing uses it.
+     */
+    @Override
+    public void dispose() {
+        this.samples.position(this.samples.limit());
+    }
+}
@@ -37,8 +37,7 @@ import tiny.engine.audio.Music;
  */
 public final class MemMusic implements Music {
 
-    private byte[] left;
-    private byte[] right;
+    private PcmData data;
     private Mixer mixer;
     private MusicReference reference;
 
@@ -46,15 +45,13 @@ public final class MemMusic implements Music {
      * Construct a new MemMusic with the given music data and the Mixer with
      * which to register this MemMusic.
      *
-     * @param left left channel of music data
-     * @param right right channel of music data
+     * @param data the music data
      * @param mixer Mixer with which this Music is registered
      */
-    public MemMusic(byte[] left, byte[] right, Mixer mixer) {
-        this.left = left;
-        this.right = right;
+    public MemMusic(PcmData data, Mixer mixer) {
+        this.data = data;
         this.mixer = mixer;
-        this.reference = new MemMusicReference(this.left, this.right, false, false, 0, 0, 1.0, 0.0);
+        this.reference = new MemMusicReference(this.data, false, false, 0, 0, 1.0, 0.0);
         this.mixer.registerMusicReference(this.reference);
     }
 
@@ -276,18 +273,26 @@ public final class MemMusic implements Music {
         }
     }
 
+    /**
+     * Get the number of bytes of memory this MemMusic keeps its sound data in.
+     *
+     * @return the size of the sound data, 0 once unloaded
+     */
+    @Override
+    public long getMemorySize() {
+        return (this.data != null) ? this.data.SAMPLES.length * 2L : 0;
+    }
+
     /**
      * Unload this MemMusic from the system. Attempts to use this MemMusic after
      * unloading will result in error.
      */
     @Override
     public void unload() {
-        // Un-register the reference
+        // Un-register the reference, the Mixer disposes of it
         this.mixer.unRegisterMusicReference(this.reference);
-        this.reference.dispose();
         this.mixer = null;
-        this.left = null;
-        this.right = null;
+        this.data = null;
         this.reference = null;
     }
 
@@ -300,12 +305,12 @@ public final class MemMusic implements Music {
     @SuppressWarnings("SameParameterValue")
     private static class MemMusicReference implements MusicReference {
 
-        private byte[] left;
-        private byte[] right;
+        private PcmData data;
+        private int numFrames;
         private boolean playing;
         private boolean loop;
-        private int loopPosition;
-        private int position;
+        private int loopFrame;
+        private int frame;
         private double volume;
         private double pan;
 
@@ -313,8 +318,7 @@ public final class MemMusic implements Music {
          * Construct a new MemMusicReference with the given sound data and
          * settings.
          *
-         * @param left left channel of music data
-         * @param right right channel of music data
+         * @param data the music data
          * @param playing true if the music should be playing
          * @param loop true if the music should loop
          * @param loopPosition byte index of the loop position in music data
@@ -322,13 +326,13 @@ public final class MemMusic implements Music {
          * @param volume volume to play the music
          * @param pan pan to play the music
          */
-        public MemMusicReference(byte[] left, byte[] right, boolean playing, boolean loop, int loopPosition, int position, double volume, double pan) {
-            this.left = left;
-            this.right = right;
+        public MemMusicReference(PcmData data, boolean playing, boolean loop, int loopPosition, int position, double volume, double pan) {
+            this.data = data;
+            this.numFrames = data.NUM_FRAMES;
             this.playing = playing;
             this.loop = loop;
-            this.loopPosition = loopPosition;
-            this.position = position;
+            this.loopFrame = loopPosition / 2;
+            this.frame = position / 2;
             this.volume = volume;
             this.pan = pan;
         }
@@ -360,7 +364,7 @@ public final class MemMusic implements Music {
          */
         @Override
         public synchronized long getPosition() {
-            return this.position;
+            return this.frame * 2L;
         }
 
         /**
@@ -370,7 +374,7 @@ public final class MemMusic implements Music {
          */
         @Override
         public synchronized long getLoopPosition() {
-            return this.loopPosition;
+            return this.loopFrame * 2L;
         }
 
         /**
@@ -420,8 +424,8 @@ public final class MemMusic implements Music {
          */
         @Override
         public synchronized void setPosition(long position) {
-            if (position >= 0 && position < this.left.length) {
-                this.position = (int) position;
+            if (position >= 0 && position < this.numFrames * 2L) {
+                this.frame = (int) (position / 2);
             }
         }
 
@@ -432,8 +436,8 @@ public final class MemMusic implements Music {
          */
         @Override
         public synchronized void setLoopPosition(long loopPosition) {
-            if (loopPosition >= 0 && loopPosition < this.left.length) {
-                this.loopPosition = (int) loopPosition;
+            if (loopPosition >= 0 && loopPosition < this.numFrames * 2L) {
+                this.loopFrame = (int) (loopPosition / 2);
             }
         }
 
@@ -466,7 +470,7 @@ public final class MemMusic implements Music {
          */
         @Override
         public synchronized long bytesAvailable() {
-            return this.left.length - this.position;
+            return (this.numFrames - this.frame) * 2L;
         }
 
         /**
@@ -477,8 +481,7 @@ public final class MemMusic implements Music {
          */
         @Override
         public synchronized boolean done() {
-            long available = this.left.length - this.position;
-            return available <= 0 && !this.playing;
+            return this.frame >= this.numFrames && !this.playing;
         }
 
         /**
@@ -488,53 +491,52 @@ public final class MemMusic implements Music {
          */
         @Override
         public synchronized void skipBytes(long num) {
-            for (int i = 0; i < num; i++) {
-                this.position++;
+            long next = this.frame + (num / 2);
 
-                // Wrap if looping, stop otherwise
-                if (this.position >= this.left.length) {
-                    if (this.loop) {
-                        this.position = this.loopPosition;
-                    } else {
-                        this.playing = false;
-                    }
+            // Wrap if looping, stop otherwise
+            if (next >= this.numFrames) {
+                if (this.loop) {
+                    next = this.loopFrame + ((next - this.numFrames) % (this.numFrames - this.loopFrame));
+                } else {
+                    next = this.numFrames;
+                    this.playing = false;
                 }
             }
+            this.frame = (int) next;
         }
 
         /**
-         * Get the next two bytes from the music data in the specified
-         * endianness.
+         * Read up to the specified number of frames of music data into a block
+         * of interleaved left and right samples, wrapping to the loop position
+         * if looping.
          *
-         * @param data length-2 array to write in next two bytes from each
-         * channel
-         * @param bigEndian true if the bytes should be read big-endian
+         * @param data buffer to write the samples into, at least 2 * numFrames
+         * long
+         * @param numFrames the maximum number of frames to read
+         * @return number of frames actually read into the buffer
          */
         @Override
-        public synchronized void nextTwoBytes(int[] data, boolean bigEndian) {
-            if (bigEndian) {
-                // Left
-                data[0] = ((this.left[this.position] << 8) | (this.left[this.position + 1] & 0xFF));
-
-                // Right
-                data[1] = ((this.right[this.position] << 8) | (this.right[this.position + 1] & 0xFF));
-            } else {
-                // Left
-                data[0] = ((this.left[this.position + 1] << 8) | (this.left[this.position] & 0xFF));
-
-                // Right
-                data[1] = ((this.right[this.position + 1] << 8) | (this.right[this.position] & 0xFF));
-            }
-            this.position += 2;
+        public synchronized int nextFrames(short[] data, int numFrames) {
+            int frames = 0;
 
-            // Wrap if looping, stop otherwise
-            if (this.position >= this.left.length) {
-                if (this.loop) {
-                    this.position = this.loopPosition;
-                } else {
-                    this.playing = false;
+            while (frames < numFrames && this.playing) {
+                // Read as far as we can before the end of the data
+                int run = this.numFrames - this.frame;
+                run = (run < numFrames - frames) ? run : numFrames - frames;
+                this.data.copyFrames(this.frame, data, frames * 2, run);
+                this.frame += run;
+                frames += run;
+
+                // Wrap if looping, stop otherwise
+                if (this.frame >= this.numFrames) {
+                    if (this.loop) {
+                        this.frame = this.loopFrame;
+                    } else {
+                        this.playing = false;
+                    }
                 }
             }
+            return frames;
         }
 
         /**
@@ -544,9 +546,8 @@ public final class MemMusic implements Music {
         @Override
         public synchronized void dispose() {
             this.playing = false;
-            this.position = this.left.length + 1;
-            this.left = null;
-            this.right = null;
+            this.frame = this.numFrames;
+            this.data = null;
         }
     }
 }
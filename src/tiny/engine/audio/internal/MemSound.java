@@ -30,14 +30,14 @@ import tiny.engine.audio.Sound;
 
 /**
  * The MemSound class is an implementation of the Sound interface that stores
- * all sound data in memory for low latency.
+ * all sound data in memory for low latency. Playing a MemSound takes a pooled
+ * voice from the Mixer rather than allocating a new reference.
  *
  * @author Finn Kuusisto
  */
 public final class MemSound implements Sound {
 
-    private byte[] left;
-    private byte[] right;
+    private PcmData data;
     private Mixer mixer;
     private final int ID;        // Unique ID to match references
 
@@ -45,34 +45,35 @@ public final class MemSound implements Sound {
      * Construct a new MemSound with the given data and Mixer which will handle
      * this MemSound.
      *
-     * @param left left channel of sound data
-     * @param right right channel of sound data
+     * @param data the sound data
      * @param mixer Mixer that will handle this MemSound
      * @param id unique ID of this MemSound
      */
-    public MemSound(byte[] left, byte[] right, Mixer mixer, int id) {
-        this.left = left;
-        this.right = right;
+    public MemSound(PcmData data, Mixer mixer, int id) {
+        this.data = data;
         this.mixer = mixer;
         this.ID = id;
     }
 
     /**
      * Plays this MemSound.
+     *
+     * @return the handle of the voice playing this MemSound
      */
     @Override
-    public void play() {
-        this.play(1.0);
+    public long play() {
+        return this.play(1.0);
     }
 
     /**
      * Plays this MemSound with a specified volume.
      *
      * @param volume the volume at which to play this MemSound
+     * @return the handle of the voice playing this MemSound
      */
     @Override
-    public void play(double volume) {
-        this.play(volume, 0.0);
+    public long play(double volume) {
+        return this.play(volume, 0.0);
     }
 
     /**
@@ -81,12 +82,28 @@ public final class MemSound implements Sound {
      * @param volume the volume at which to play this MemSound
      * @param pan the pan value to play this MemSound [-1.0,1.0], values outside
      * the valid range will assume no panning (0.0)
+     * @return the handle of the voice playing this MemSound
+     */
+    @Override
+    public long play(double volume, double pan) {
+        return this.play(volume, pan, 0);
+    }
+
+    /**
+     * Plays this MemSound with a specified volume, pan and priority.
+     *
+     * @param volume the volume at which to play this MemSound
+     * @param pan the pan value to play this MemSound [-1.0,1.0], values outside
+     * the valid range will assume no panning (0.0)
+     * @param priority the priority of this voice, higher is more important
+     * @return the handle of the voice playing this MemSound
      */
     @Override
-    public void play(double volume, double pan) {
-        // Dispatch a sound reference to the mixer
-        SoundReference ref = new MemSoundReference(this.left, this.right, volume, pan, this.ID);
-        this.mixer.registerSoundReference(ref);
+    public long play(double volume, double pan, int priority) {
+        // Dispatch to the mixer, which plays it on a pooled voice
+        long handle = this.mixer.newHandle();
+        this.mixer.playMemSound(this, handle, volume, pan, priority);
+        return handle;
     }
 
     /**
@@ -99,6 +116,48 @@ public final class MemSound implements Sound {
         this.mixer.unRegisterSoundReference(this.ID);
     }
 
+    /**
+     * Stops a single voice of this MemSound.
+     *
+     * @param voice the handle returned when the voice was played
+     */
+    @Override
+    public void stop(long voice) {
+        this.mixer.stopVoice(voice);
+    }
+
+    /**
+     * Sets the volume of a single voice of this MemSound.
+     *
+     * @param voice the handle returned when the voice was played
+     * @param volume the new volume of the voice
+     */
+    @Override
+    public void setVolume(long voice, double volume) {
+        this.mixer.setVoiceVolume(voice, volume);
+    }
+
+    /**
+     * Sets the pan of a single voice of this MemSound.
+     *
+     * @param voice the handle returned when the voice was played
+     * @param pan the new pan of the voice [-1.0,1.0]
+     */
+    @Override
+    public void setPan(long voice, double pan) {
+        this.mixer.setVoicePan(voice, pan);
+    }
+
+    /**
+     * Get the number of bytes of memory this MemSound keeps its sound data in.
+     *
+     * @return the size of the sound data, 0 once unloaded
+     */
+    @Override
+    public long getMemorySize() {
+        return (this.data != null) ? this.data.SAMPLES.length * 2L : 0;
+    }
+
     /**
      * Unloads this MemSound from the system. Attempts to use this MemSound
      * after unloading will result in error.
@@ -107,129 +166,24 @@ public final class MemSound implements Sound {
     public void unload() {
         this.mixer.unRegisterSoundReference(this.ID);
         this.mixer = null;
-        this.left = null;
-        this.right = null;
+        this.data = null;
+    }
+
+    /**
+     * Get the sound data, null once unloaded.
+     *
+     * @return the sound data
+     */
+    PcmData getData() {
+        return this.data;
     }
 
     /**
-     * The MemSoundReference is an implementation of the SoundReference
-     * interface.
+     * Get the unique ID of this MemSound.
      *
-     * @author Finn Kuusisto
+     * @return unique ID of this MemSound
      */
-    private static class MemSoundReference implements SoundReference {
-
-        public final int SOUND_ID;      // Parent MemSound
-
-        private byte[] left;
-        private byte[] right;
-        private int position;
-        private double volume;
-        private double pan;
-
-        /**
-         * Construct a new MemSoundReference with the given reference data.
-         *
-         * @param left left channel of sound data
-         * @param right right channel of sound data
-         * @param volume volume at which to play the sound
-         * @param pan pan at which to play the sound
-         * @param soundID ID of the MemSound for which this is a reference
-         */
-        public MemSoundReference(byte[] left, byte[] right, double volume, double pan, int soundID) {
-            this.left = left;
-            this.right = right;
-            this.volume = (volume >= 0.0) ? volume : 1.0;
-            this.pan = (pan >= -1.0 && pan <= 1.0) ? pan : 0.0;
-            this.position = 0;
-            this.SOUND_ID = soundID;
-        }
-
-        /**
-         * Get the ID of the MemSound that produced this MemSoundReference.
-         *
-         * @return the ID of this MemSoundReference's parent MemSound
-         */
-        @Override
-        public int getSoundID() {
-            return this.SOUND_ID;
-        }
-
-        /**
-         * Gets the volume of this MemSoundReference.
-         *
-         * @return volume of this MemSoundReference
-         */
-        @Override
-        public double getVolume() {
-            return this.volume;
-        }
-
-        /**
-         * Gets the pan of this MemSoundReference.
-         *
-         * @return pan of this MemSoundReference
-         */
-        @Override
-        public double getPan() {
-            return this.pan;
-        }
-
-        /**
-         * Get the number of bytes remaining for each channel.
-         *
-         * @return number of bytes remaining for each channel
-         */
-        @Override
-        public long bytesAvailable() {
-            return this.left.length - this.position;
-        }
-
-        /**
-         * Skip a specified number of bytes of the sound data.
-         *
-         * @param num number of bytes to skip
-         */
-        @Override
-        public synchronized void skipBytes(long num) {
-            this.position += num;
-        }
-
-        /**
-         * Get the next two bytes from the sound data in the specified
-         * endianness.
-         *
-         * @param data length-2 array to write in next two bytes from each
-         * channel
-         * @param bigEndian true if the bytes should be read big-endian
-         */
-        @Override
-        public void nextTwoBytes(int[] data, boolean bigEndian) {
-            if (bigEndian) {
-                // Left
-                data[0] = ((this.left[this.position] << 8) | (this.left[this.position + 1] & 0xFF));
-
-                // Right
-                data[1] = ((this.right[this.position] << 8) | (this.right[this.position + 1] & 0xFF));
-            } else {
-                // Left
-                data[0] = ((this.left[this.position + 1] << 8) | (this.left[this.position] & 0xFF));
-
-                // Right
-                data[1] = ((this.right[this.position + 1] << 8) | (this.right[this.position] & 0xFF));
-            }
-            this.position += 2;
-        }
-
-        /**
-         * Does any cleanup necessary to dispose of resources in use by this
-         * MemSoundReference.
-         */
-        @Override
-        public void dispose() {
-            this.position = this.left.length + 1;
-            this.left = null;
-            this.right = null;
-        }
+    int getID() {
+        return this.ID;
     }
 }
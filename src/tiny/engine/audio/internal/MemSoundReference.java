@@ -0,0 +1,189 @@
+/*
+ * Copyright (c) 2012, Finn Kuusisto
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *     Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *     
+ *     Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package tiny.engine.audio.internal;
+
+/**
+ * The MemSoundReference is an implementation of the SoundReference interface
+ * used as a voice for MemSound playback. MemSoundReferences are pooled by the
+ * Mixer and re-initialised for each play rather than reallocated.
+ *
+ * @author Finn Kuusisto
+ */
+final class MemSoundReference implements SoundReference {
+
+    private int soundID;        // Parent MemSound
+    private long handle;
+    private int priority;
+    private PcmData data;
+    private int numFrames;
+    private int frame;
+    private double volume;
+    private double pan;
+
+    /**
+     * Set up this MemSoundReference to play the given sound data.
+     *
+     * @param data the sound data
+     * @param volume volume at which to play the sound
+     * @param pan pan at which to play the sound
+     * @param soundID ID of the MemSound for which this is a reference
+     * @param handle voice handle returned to the game for this play
+     * @param priority priority at which to play the sound
+     */
+    void init(PcmData data, double volume, double pan, int soundID, long handle, int priority) {
+        this.data = data;
+        this.numFrames = data.NUM_FRAMES;
+        this.volume = (volume >= 0.0) ? volume : 1.0;
+        this.pan = (pan >= -1.0 && pan <= 1.0) ? pan : 0.0;
+        this.frame = 0;
+        this.soundID = soundID;
+        this.handle = handle;
+        this.priority = priority;
+    }
+
+    /**
+     * Get the ID of the MemSound that produced this MemSoundReference.
+     *
+     * @return the ID of this MemSoundReference's parent MemSound
+     */
+    @Override
+    public int getSoundID() {
+        return this.soundID;
+    }
+
+    /**
+     * Get the voice handle that was returned when this MemSoundReference was
+     * played.
+     *
+     * @return the voice handle of this MemSoundReference
+     */
+    @Override
+    public long getHandle() {
+        return this.handle;
+    }
+
+    /**
+     * Get the priority this MemSoundReference was played with.
+     *
+     * @return priority of this MemSoundReference
+     */
+    @Override
+    public int getPriority() {
+        return this.priority;
+    }
+
+    /**
+     * Gets the volume of this MemSoundReference.
+     *
+     * @return volume of this MemSoundReference
+     */
+    @Override
+    public double getVolume() {
+        return this.volume;
+    }
+
+    /**
+     * Sets the volume of this MemSoundReference.
+     *
+     * @param volume the desired volume of this MemSoundReference
+     */
+    @Override
+    public void setVolume(double volume) {
+        if (volume >= 0.0) {
+            this.volume = volume;
+        }
+    }
+
+    /**
+     * Gets the pan of this MemSoundReference.
+     *
+     * @return pan of this MemSoundReference
+     */
+    @Override
+    public double getPan() {
+        return this.pan;
+    }
+
+    /**
+     * Sets the pan of this MemSoundReference.
+     *
+     * @param pan the desired pan of this MemSoundReference
+     */
+    @Override
+    public void setPan(double pan) {
+        if (pan >= -1.0 && pan <= 1.0) {
+            this.pan = pan;
+        }
+    }
+
+    /**
+     * Get the number of bytes remaining for each channel.
+     *
+     * @return number of bytes remaining for each channel
+     */
+    @Override
+    public long bytesAvailable() {
+        return (this.numFrames - this.frame) * 2L;
+    }
+
+    /**
+     * Skip a specified number of bytes of the sound data.
+     *
+     * @param num number of bytes to skip
+     */
+    @Override
+    public void skipBytes(long num) {
+        this.frame = (int) Math.min(this.numFrames, this.frame + (num / 2));
+    }
+
+    /**
+     * Read up to the specified number of frames of sound data into a block of
+     * interleaved left and right samples.
+     *
+     * @param data buffer to write the samples into, at least 2 * numFrames long
+     * @param numFrames the maximum number of frames to read
+     * @return number of frames actually read into the buffer
+     */
+    @Override
+    public int nextFrames(short[] data, int numFrames) {
+        int framesAvailable = this.numFrames - this.frame;
+        int frames = (numFrames < framesAvailable) ? numFrames : framesAvailable;
+        this.data.copyFrames(this.frame, data, 0, frames);
+        this.frame += frames;
+        return frames;
+    }
+
+    /**
+     * Does any cleanup necessary to dispose of resources in use by this
+     * MemSoundReference, leaving it ready to be re-initialised.
+     */
+    @Override
+    public void dispose() {
+        this.frame = this.numFrames;
+        this.data = null;
+    }
+}
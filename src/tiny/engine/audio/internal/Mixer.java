@@ -26,31 +26,83 @@
  */
 package tiny.engine.audio.internal;
 
+import tiny.engine.audio.VoiceStealing;
+
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * The Mixer class is what does the sound data mixing for the Audio system.
- * Mixer is an internal class of the Audio system and should be of no real
- * concern to the average user of Audio.
+ * Changes made from game threads are queued and applied by the audio thread
+ * in processCommands(), so neither side ever waits on the other. Sounds play
+ * in a fixed number of voices, and once they are all in use a playing voice
+ * is stolen according to the VoiceStealing policy. Mixer is an internal
+ * class of the Audio system and should be of no real concern to the average
+ * user of Audio.
  *
  * @author Finn Kuusisto
  */
 public final class Mixer {
 
+    private static final int FRAME_SIZE = 4;       // 16-bit, 2-channel
+    private static final int BLOCK_FRAMES = 256;   // Frames mixed per block
+    private static final int MAX_COMMANDS = 1024;  // Commands queued between updates
+
+    // Command types
+    private static final int REGISTER_MUSIC = 0;
+    private static final int REGISTER_SOUND = 1;
+    private static final int UNREGISTER_MUSIC = 2;
+    private static final int UNREGISTER_SOUND = 3;
+    private static final int CLEAR_MUSIC = 4;
+    private static final int CLEAR_SOUNDS = 5;
+    private static final int PLAY_MEM_SOUND = 6;
+    private static final int STOP_VOICE = 7;
+    private static final int SET_VOICE_VOLUME = 8;
+    private static final int SET_VOICE_PAN = 9;
+    private static final int SET_MAX_VOICES = 10;
+    private static final int SET_VOICE_STEALING = 11;
+
+    // Only touched by the audio thread
     private List<MusicReference> musics;
-    private List<SoundReference> sounds;
-    private double globalVolume;
-    private int[] dataBuf;       // Buffer for reading sound data
+    private SoundReference[] voices;          // Playing sounds, numVoices long
+    private long[] voiceStarts;               // Start order of each voice
+    private int numVoices;
+    private long nextStart;
+    private MemSoundReference[] pool;         // Idle MemSound voices
+    private int poolSize;
+    private VoiceStealing stealing;
+
+    private final AtomicLong handles;         // Voice handles handed out
+
+    private final CommandQueue commands;      // Game threads to audio thread
+    private final CommandQueue.Command command;
+    private final AtomicLong droppedCommands;
+    private volatile double globalVolume;
+    private short[] readBuf;     // Block of frames read from a single source
+    private float[] mixBuf;      // Block of frames accumulated across sources
 
     /**
      * Construct a new Mixer for Audio system.
+     *
+     * @param maxVoices the maximum number of Sounds playing at once
+     * @param stealing how to choose the voice to stop when all are in use
      */
-    public Mixer() {
+    public Mixer(int maxVoices, VoiceStealing stealing) {
         this.musics = new ArrayList<MusicReference>();
-        this.sounds = new ArrayList<SoundReference>();
+        this.voices = new SoundReference[0];
+        this.voiceStarts = new long[0];
+        this.pool = new MemSoundReference[0];
+        this.resizeVoices(maxVoices);
+        this.stealing = stealing;
+        this.handles = new AtomicLong(1);
+        this.commands = new CommandQueue(MAX_COMMANDS);
+        this.command = new CommandQueue.Command();
+        this.droppedCommands = new AtomicLong();
         this.globalVolume = 1.0;
-        this.dataBuf = new int[2];              // 2-channel
+        this.readBuf = new short[BLOCK_FRAMES * 2];     // 2-channel
+        this.mixBuf = new float[BLOCK_FRAMES * 2];      // 2-channel
     }
 
     /**
@@ -58,7 +110,7 @@ public final class Mixer {
      *
      * @return the global volume
      */
-    public synchronized double getVolume() {
+    public double getVolume() {
         return this.globalVolume;
     }
 
@@ -67,37 +119,114 @@ public final class Mixer {
      *
      * @param volume the global volume to set
      */
-    public synchronized void setVolume(double volume) {
+    public void setVolume(double volume) {
         if (volume >= 0.0) {
             this.globalVolume = volume;
         }
     }
 
+    /**
+     * Get a new, unique voice handle.
+     *
+     * @return a voice handle
+     */
+    public long newHandle() {
+        return this.handles.getAndIncrement();
+    }
+
+    /**
+     * Set the maximum number of Sounds that can play at once. Lowering it
+     * stops the oldest voices over the new limit.
+     *
+     * @param maxVoices the maximum number of voices, at least 1
+     */
+    public void setMaxVoices(int maxVoices) {
+        if (maxVoices > 0) {
+            this.enqueue(SET_MAX_VOICES, null, maxVoices, 0, 0.0, 0.0);
+        }
+    }
+
+    /**
+     * Set how a voice is chosen to be stopped when a Sound is played and all
+     * voices are in use.
+     *
+     * @param stealing the voice stealing policy
+     */
+    public void setVoiceStealing(VoiceStealing stealing) {
+        if (stealing != null) {
+            this.enqueue(SET_VOICE_STEALING, stealing, 0, 0, 0.0, 0.0);
+        }
+    }
+
+    /**
+     * Plays a MemSound in a pooled voice.
+     *
+     * @param sound the MemSound to play
+     * @param handle voice handle from newHandle()
+     * @param volume the volume to play at
+     * @param pan the pan to play at
+     * @param priority the priority of the voice
+     */
+    public void playMemSound(MemSound sound, long handle, double volume, double pan, int priority) {
+        this.enqueue(PLAY_MEM_SOUND, sound, priority, handle, volume, pan);
+    }
+
+    /**
+     * Stops a single voice.
+     *
+     * @param handle handle of the voice to stop
+     */
+    public void stopVoice(long handle) {
+        this.enqueue(STOP_VOICE, null, 0, handle, 0.0, 0.0);
+    }
+
+    /**
+     * Sets the volume of a single voice.
+     *
+     * @param handle handle of the voice
+     * @param volume the new volume
+     */
+    public void setVoiceVolume(long handle, double volume) {
+        this.enqueue(SET_VOICE_VOLUME, null, 0, handle, volume, 0.0);
+    }
+
+    /**
+     * Sets the pan of a single voice.
+     *
+     * @param handle handle of the voice
+     * @param pan the new pan
+     */
+    public void setVoicePan(long handle, double pan) {
+        this.enqueue(SET_VOICE_PAN, null, 0, handle, 0.0, pan);
+    }
+
     /**
      * Registers a MusicReference with this Mixer.
      *
      * @param music MusicReference to be registered
      */
-    public synchronized void registerMusicReference(MusicReference music) {
-        this.musics.add(music);
+    public void registerMusicReference(MusicReference music) {
+        this.enqueue(REGISTER_MUSIC, music, 0, 0, 0.0, 0.0);
     }
 
     /**
-     * Registers a SoundReference with this Mixer.
+     * Registers a SoundReference with this Mixer. It takes a voice like any
+     * other Sound, and is disposed of if no voice can be found for it.
      *
      * @param sound SoundReference to be registered
      */
-    public synchronized void registerSoundReference(SoundReference sound) {
-        this.sounds.add(sound);
+    public void registerSoundReference(SoundReference sound) {
+        this.enqueue(REGISTER_SOUND, sound, 0, 0, 0.0, 0.0);
     }
 
     /**
-     * Un-registers a MusicReference with this Mixer.
+     * Un-registers a MusicReference with this Mixer. The reference is disposed
+     * of once the audio thread has stopped using it.
      *
      * @param music MusicReference to be unregistered
      */
-    public synchronized void unRegisterMusicReference(MusicReference music) {
-        this.musics.remove(music);
+    public void unRegisterMusicReference(MusicReference music) {
+        this.enqueue(UNREGISTER_MUSIC, music, 0, 0, 0.0, 0.0);
     }
 
     /**
@@ -105,30 +234,277 @@ public final class Mixer {
      *
      * @param soundID ID of SoundReferences to be unregistered
      */
-    public synchronized void unRegisterSoundReference(int soundID) {
-        // Removal working backward is easier
-        for (int i = this.sounds.size() - 1; i >= 0; i--) {
-            if (this.sounds.get(i).getSoundID() == soundID) {
-                this.sounds.remove(i).dispose();
-            }
-        }
+    public void unRegisterSoundReference(int soundID) {
+        this.enqueue(UNREGISTER_SOUND, null, soundID, 0, 0.0, 0.0);
     }
 
     /**
      * Un-register all Music registered with this Mixer.
      */
-    public synchronized void clearMusic() {
-        this.musics.clear();
+    public void clearMusic() {
+        this.enqueue(CLEAR_MUSIC, null, 0, 0, 0.0, 0.0);
     }
 
     /**
      * Un-register all Sounds registered with this Mixer.
      */
-    public synchronized void clearSounds() {
-        for (SoundReference s : this.sounds) {
-            s.dispose();
+    public void clearSounds() {
+        this.enqueue(CLEAR_SOUNDS, null, 0, 0, 0.0, 0.0);
+    }
+
+    /**
+     * Get the number of commands dropped because the queue was full.
+     *
+     * @return the number of dropped commands
+     */
+    public long getDroppedCommands() {
+        return this.droppedCommands.get();
+    }
+
+    /**
+     * Queue a command for the audio thread. If the queue is full, which only
+     * happens if the audio thread has stalled or stopped, the command is
+     * dropped and counted rather than making the caller wait.
+     *
+     * @param type the type of command
+     * @param target the object the command applies to, may be null
+     * @param id the ID the command applies to
+     * @param handle the voice handle the command applies to
+     * @param volume the volume value of the command
+     * @param pan the pan value of the command
+     */
+    private void enqueue(int type, Object target, int id, long handle, double volume, double pan) {
+        if (!this.commands.offer(type, target, id, handle, volume, pan)) {
+            this.droppedCommands.incrementAndGet();
+        }
+    }
+
+    /**
+     * Apply all commands queued since the last call. This must only be called
+     * from the audio thread, before reading or skipping.
+     */
+    public void processCommands() {
+        CommandQueue.Command command = this.command;
+
+        while (this.commands.poll(command)) {
+            switch (command.type) {
+                case REGISTER_MUSIC:
+                    this.musics.add((MusicReference) command.target);
+                    break;
+                case REGISTER_SOUND: {
+                    SoundReference sound = (SoundReference) command.target;
+
+                    if (this.admit(sound.getVolume(), sound.getPriority())) {
+                        this.addVoice(sound);
+                    } else {
+                        sound.dispose();
+                    }
+                    break;
+                }
+                case PLAY_MEM_SOUND: {
+                    MemSound sound = (MemSound) command.target;
+
+                    // Skip sounds unloaded since they were played
+                    PcmData data = sound.getData();
+
+                    if (data != null && this.admit(command.volume, command.id)) {
+                        MemSoundReference ref = (this.poolSize > 0) ? this.pool[--this.poolSize] : new MemSoundReference();
+                        ref.init(data, command.volume, command.pan, sound.getID(), command.handle, command.id);
+                        this.addVoice(ref);
+                    }
+                    break;
+                }
+                case UNREGISTER_MUSIC:
+                    if (this.musics.remove((MusicReference) command.target)) {
+                        ((MusicReference) command.target).dispose();
+                    }
+                    break;
+                case UNREGISTER_SOUND:
+                    // Removal working backward is easier
+                    for (int i = this.numVoices - 1; i >= 0; i--) {
+                        if (this.voices[i].getSoundID() == command.id) {
+                            this.releaseVoice(i);
+                        }
+                    }
+                    break;
+                case STOP_VOICE: {
+                    int i = this.findVoice(command.handle);
+
+                    if (i >= 0) {
+                        this.releaseVoice(i);
+                    }
+                    break;
+                }
+                case SET_VOICE_VOLUME: {
+                    int i = this.findVoice(command.handle);
+
+                    if (i >= 0) {
+                        this.voices[i].setVolume(command.volume);
+                    }
+                    break;
+                }
+                case SET_VOICE_PAN: {
+                    int i = this.findVoice(command.handle);
+
+                    if (i >= 0) {
+                        this.voices[i].setPan(command.pan);
+                    }
+                    break;
+                }
+                case SET_MAX_VOICES:
+                    this.resizeVoices(command.id);
+                    break;
+                case SET_VOICE_STEALING:
+                    this.stealing = (VoiceStealing) command.target;
+                    break;
+                case CLEAR_MUSIC:
+                    this.musics.clear();
+                    break;
+                case CLEAR_SOUNDS:
+                    while (this.numVoices > 0) {
+                        this.releaseVoice(this.numVoices - 1);
+                    }
+                    break;
+                default:
+                    break;
+            }
+            command.target = null;
         }
-        this.sounds.clear();
+    }
+
+    /**
+     * Make room for a new voice, stealing a playing one if they are all in
+     * use.
+     *
+     * @param volume the volume of the new voice
+     * @param priority the priority of the new voice
+     * @return true if there is now a free voice, false if the new voice
+     * should not be played
+     */
+    private boolean admit(double volume, int priority) {
+        if (this.numVoices < this.voices.length) {
+            return true;
+        }
+        int victim = 0;
+
+        // Pick the voice to steal, ties go to the oldest
+        for (int i = 1; i < this.numVoices; i++) {
+            if (this.isBetterVictim(i, victim)) {
+                victim = i;
+            }
+        }
+
+        // Don't cut off something more important than the new voice
+        if (this.stealing == VoiceStealing.QUIETEST && this.voices[victim].getVolume() > volume) {
+            return false;
+        }
+        if (this.stealing == VoiceStealing.LOWEST_PRIORITY && this.voices[victim].getPriority() > priority) {
+            return false;
+        }
+        this.releaseVoice(victim);
+        return true;
+    }
+
+    /**
+     * Determine if one voice should be stolen before another.
+     *
+     * @param a index of the candidate voice
+     * @param b index of the current victim
+     * @return true if voice a should be stolen before voice b
+     */
+    private boolean isBetterVictim(int a, int b) {
+        boolean older = this.voiceStarts[a] < this.voiceStarts[b];
+
+        switch (this.stealing) {
+            case QUIETEST: {
+                double va = this.voices[a].getVolume();
+                double vb = this.voices[b].getVolume();
+                return va < vb || (va == vb && older);
+            }
+            case LOWEST_PRIORITY: {
+                int pa = this.voices[a].getPriority();
+                int pb = this.voices[b].getPriority();
+                return pa < pb || (pa == pb && older);
+            }
+            default:
+                return older;
+        }
+    }
+
+    /**
+     * Add a voice. There must be a free voice.
+     *
+     * @param sound the SoundReference to play in the voice
+     */
+    private void addVoice(SoundReference sound) {
+        this.voices[this.numVoices] = sound;
+        this.voiceStarts[this.numVoices] = this.nextStart++;
+        this.numVoices++;
+    }
+
+    /**
+     * Find the index of a playing voice.
+     *
+     * @param handle handle of the voice
+     * @return index of the voice, -1 if it is no longer playing
+     */
+    private int findVoice(long handle) {
+        for (int i = 0; i < this.numVoices; i++) {
+            if (this.voices[i].getHandle() == handle) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Stop a voice, returning pooled references to the pool. The last voice
+     * is moved into its place.
+     *
+     * @param index index of the voice to stop
+     */
+    private void releaseVoice(int index) {
+        SoundReference sound = this.voices[index];
+        sound.dispose();
+
+        if (sound instanceof MemSoundReference && this.poolSize < this.pool.length) {
+            this.pool[this.poolSize++] = (MemSoundReference) sound;
+        }
+        int last = --this.numVoices;
+        this.voices[index] = this.voices[last];
+        this.voiceStarts[index] = this.voiceStarts[last];
+        this.voices[last] = null;
+    }
+
+    /**
+     * Change the number of voices, stopping the oldest voices if there are
+     * too many playing. Allocates, but only when the limit is changed.
+     *
+     * @param maxVoices the new number of voices
+     */
+    private void resizeVoices(int maxVoices) {
+        while (this.numVoices > maxVoices) {
+            int oldest = 0;
+
+            for (int i = 1; i < this.numVoices; i++) {
+                if (this.voiceStarts[i] < this.voiceStarts[oldest]) {
+                    oldest = i;
+                }
+            }
+            this.releaseVoice(oldest);
+        }
+        this.voices = Arrays.copyOf(this.voices, maxVoices);
+        this.voiceStarts = Arrays.copyOf(this.voiceStarts, maxVoices);
+
+        // Keep enough idle references for every voice
+        MemSoundReference[] pool = new MemSoundReference[maxVoices];
+        this.poolSize = Math.min(this.poolSize, maxVoices);
+        System.arraycopy(this.pool, 0, pool, 0, this.poolSize);
+
+        while (this.poolSize < maxVoices) {
+            pool[this.poolSize++] = new MemSoundReference();
+        }
+        this.pool = pool;
     }
 
     /**
@@ -139,125 +515,123 @@ public final class Mixer {
      * @param length the maximum number of bytes that should be read
      * @return number of bytes read into buffer
      */
-    public synchronized int read(byte[] data, int offset, int length) {
+    public int read(byte[] data, int offset, int length) {
         // Assume little-endian, stereo, 16-bit, signed PCM
-        int numRead = 0;
-        boolean bytesRead = true; // Terminate early if out of bytes
-
-        for (int i = offset; i < (length + offset) && bytesRead; i += 4) {
-            // First assume we are done
-            bytesRead = false;
-
-            // Need to track value across sound sources
-            double leftValue = 0.0;
-            double rightValue = 0.0;
-
-            // Go through all the music first
-            for (int m = 0; m < this.musics.size(); m++) {
-                MusicReference music = this.musics.get(m);
-
-                // Is the music playing and are there bytes available
-                if (music.getPlaying() && music.bytesAvailable() > 0) {
-                    // Add this music to the mix by volume (and global volume)
-                    music.nextTwoBytes(this.dataBuf, false);
-                    double volume = music.getVolume() * this.globalVolume;
-                    double leftCurr = (this.dataBuf[0] * volume);
-                    double rightCurr = (this.dataBuf[1] * volume);
-
-                    // Do panning
-                    double pan = music.getPan();
-
-                    if (pan != 0.0) {
-                        double ll = (pan <= 0.0) ? 1.0 : (1.0 - pan);
-                        double lr = (pan <= 0.0) ? Math.abs(pan) : 0.0;
-                        double rl = (pan >= 0.0) ? pan : 0.0;
-                        double rr = (pan >= 0.0) ? 1.0 : (1.0 - Math.abs(pan));
-                        double tmpL = (ll * leftCurr) + (lr * rightCurr);
-                        double tmpR = (rl * leftCurr) + (rr * rightCurr);
-                        leftCurr = tmpL;
-                        rightCurr = tmpR;
-                    }
+        int numFrames = length / FRAME_SIZE;
+        int framesRead = 0;
 
-                    // Update the final left and right channels
-                    leftValue += leftCurr;
-                    rightValue += rightCurr;
+        // Mix a block at a time, terminate early if out of frames
+        while (framesRead < numFrames) {
+            int blockFrames = Math.min(BLOCK_FRAMES, numFrames - framesRead);
+            int framesMixed = this.mixBlock(blockFrames);
 
-                    // We know we aren't done yet now
-                    bytesRead = true;
-                }
+            if (framesMixed <= 0) {
+                break;
             }
+            this.writeBlock(data, offset + (framesRead * FRAME_SIZE), framesMixed);
+            framesRead += framesMixed;
+        }
+        return framesRead * FRAME_SIZE;
+    }
 
-            // Then go through all the sounds (backwards to remove completed)
-            for (int s = this.sounds.size() - 1; s >= 0; s--) {
-                SoundReference sound = this.sounds.get(s);
-
-                // Are there bytes available
-                if (sound.bytesAvailable() > 0) {
-                    // Add this sound to the mix by volume (and global volume)
-                    sound.nextTwoBytes(this.dataBuf, false);
-                    double volume = sound.getVolume() * this.globalVolume;
-                    double leftCurr = (this.dataBuf[0] * volume);
-                    double rightCurr = (this.dataBuf[1] * volume);
-
-                    // Do panning
-                    double pan = sound.getPan();
-
-                    if (pan != 0.0) {
-                        double ll = (pan <= 0.0) ? 1.0 : (1.0 - pan);
-                        double lr = (pan <= 0.0) ? Math.abs(pan) : 0.0;
-                        double rl = (pan >= 0.0) ? pan : 0.0;
-                        double rr = (pan >= 0.0) ? 1.0 : (1.0 - Math.abs(pan));
-                        double tmpL = (ll * leftCurr) + (lr * rightCurr);
-                        double tmpR = (rl * leftCurr) + (rr * rightCurr);
-                        leftCurr = tmpL;
-                        rightCurr = tmpR;
-                    }
+    /**
+     * Mix the next block of frames from all sound sources into the mix buffer.
+     *
+     * @param numFrames the maximum number of frames to mix
+     * @return the number of frames mixed, 0 if no source had frames available
+     */
+    private int mixBlock(int numFrames) {
+        int framesMixed = 0;
 
-                    // Update the final left and right channels
-                    leftValue += leftCurr;
-                    rightValue += rightCurr;
+        // Clear the part of the mix buffer we are about to use
+        Arrays.fill(this.mixBuf, 0, numFrames * 2, 0.0f);
 
-                    // We know we aren't done yet now
-                    bytesRead = true;
+        // Go through all the music first
+        for (int m = 0; m < this.musics.size(); m++) {
+            MusicReference music = this.musics.get(m);
 
-                    // Remove the reference if done
-                    if (sound.bytesAvailable() <= 0) {
-                        this.sounds.remove(s).dispose();
-                    }
-                } else {
-                    // Otherwise remove this reference
-                    this.sounds.remove(s).dispose();
-                }
+            // Is the music playing and are there bytes available
+            if (music.getPlaying() && music.bytesAvailable() > 0) {
+                // Add this music to the mix by volume and pan
+                int framesRead = music.nextFrames(this.readBuf, numFrames);
+                this.accumulate(framesRead, music.getVolume(), music.getPan());
+                framesMixed = Math.max(framesMixed, framesRead);
             }
+        }
 
-            // If we actually read bytes, store in the buffer
-            if (bytesRead) {
-                int finalLeftValue = (int) leftValue;
-                int finalRightValue = (int) rightValue;
+        // Then go through all the sounds (backwards to remove completed)
+        for (int s = this.numVoices - 1; s >= 0; s--) {
+            SoundReference sound = this.voices[s];
 
-                // Clipping
-                if (finalLeftValue > Short.MAX_VALUE) {
-                    finalLeftValue = Short.MAX_VALUE;
-                } else if (finalLeftValue < Short.MIN_VALUE) {
-                    finalLeftValue = Short.MIN_VALUE;
-                }
-                if (finalRightValue > Short.MAX_VALUE) {
-                    finalRightValue = Short.MAX_VALUE;
-                } else if (finalRightValue < Short.MIN_VALUE) {
-                    finalRightValue = Short.MIN_VALUE;
-                }
+            // Are there bytes available
+            if (sound.bytesAvailable() > 0) {
+                // Add this sound to the mix by volume and pan
+                int framesRead = sound.nextFrames(this.readBuf, numFrames);
+                this.accumulate(framesRead, sound.getVolume(), sound.getPan());
+                framesMixed = Math.max(framesMixed, framesRead);
+            }
+
+            // Release the voice if done
+            if (sound.bytesAvailable() <= 0) {
+                this.releaseVoice(s);
+            }
+        }
+        return framesMixed;
+    }
 
-                // Left channel bytes
-                data[i + 1] = (byte) ((finalLeftValue >> 8) & 0xFF);    //MSB
-                data[i] = (byte) (finalLeftValue & 0xFF);               //LSB
+    /**
+     * Add a block of frames from the read buffer to the mix buffer. Gain and
+     * pan are worked out once for the whole block.
+     *
+     * @param numFrames the number of frames in the read buffer
+     * @param volume the volume of the source
+     * @param pan the pan of the source
+     */
+    private void accumulate(int numFrames, double volume, double pan) {
+        double gain = volume * this.globalVolume;
+
+        // Panning as a 2x2 matrix, identity when there is no pan
+        float ll = (float) (gain * ((pan <= 0.0) ? 1.0 : (1.0 - pan)));
+        float lr = (float) (gain * ((pan <= 0.0) ? Math.abs(pan) : 0.0));
+        float rl = (float) (gain * ((pan >= 0.0) ? pan : 0.0));
+        float rr = (float) (gain * ((pan >= 0.0) ? 1.0 : (1.0 - Math.abs(pan))));
+
+        short[] in = this.readBuf;
+        float[] out = this.mixBuf;
+        int numSamples = numFrames * 2;
+
+        for (int i = 0; i < numSamples; i += 2) {
+            float left = in[i];
+            float right = in[i + 1];
+            out[i] += (ll * left) + (lr * right);
+            out[i + 1] += (rl * left) + (rr * right);
+        }
+    }
 
-                // Then right channel bytes
-                data[i + 3] = (byte) ((finalRightValue >> 8) & 0xFF);   //MSB
-                data[i + 2] = (byte) (finalRightValue & 0xFF);          //LSB
-                numRead += 4;
+    /**
+     * Clip the mix buffer and write it to the output as 16-bit little-endian
+     * stereo frames.
+     *
+     * @param data the buffer to write the bytes into
+     * @param offset the start index to write bytes into
+     * @param numFrames the number of frames to write
+     */
+    private void writeBlock(byte[] data, int offset, int numFrames) {
+        float[] in = this.mixBuf;
+        int numSamples = numFrames * 2;
+
+        for (int i = 0, j = offset; i < numSamples; i++, j += 2) {
+            int value = (int) in[i];
+
+            // Clipping
+            if (value > Short.MAX_VALUE) {
+                value = Short.MAX_VALUE;
+            } else if (value < Short.MIN_VALUE) {
+                value = Short.MIN_VALUE;
             }
+            data[j + 1] = (byte) ((value >> 8) & 0xFF);    //MSB
+            data[j] = (byte) (value & 0xFF);               //LSB
         }
-        return numRead;
     }
 
     /**
@@ -265,7 +639,10 @@ public final class Mixer {
      *
      * @param numBytes the number of bytes to skip
      */
-    public synchronized void skip(int numBytes) {
+    public void skip(int numBytes) {
+        // References count bytes for each channel, 2 per frame
+        long numChannelBytes = (numBytes / FRAME_SIZE) * 2L;
+
         // Go through all the music first
         for (int m = 0; m < this.musics.size(); m++) {
             MusicReference music = this.musics.get(m);
@@ -273,25 +650,25 @@ public final class Mixer {
             // Is the music playing and are there bytes available
             if (music.getPlaying() && music.bytesAvailable() > 0) {
                 // Skip the bytes
-                music.skipBytes(numBytes);
+                music.skipBytes(numChannelBytes);
             }
         }
 
         // Then go through all the sounds (backwards to remove completed)
-        for (int s = this.sounds.size() - 1; s >= 0; s--) {
-            SoundReference sound = this.sounds.get(s);
+        for (int s = this.numVoices - 1; s >= 0; s--) {
+            SoundReference sound = this.voices[s];
 
             // Are there bytes available
             if (sound.bytesAvailable() > 0) {
                 // Skip the bytes
-                sound.skipBytes(numBytes);
-                // Remove the reference if done
+                sound.skipBytes(numChannelBytes);
+                // Release the voice if done
                 if (sound.bytesAvailable() <= 0) {
-                    this.sounds.remove(s).dispose();
+                    this.releaseVoice(s);
                 }
             } else {
-                // Otherwise remove this reference
-                this.sounds.remove(s).dispose();
+                // Otherwise release this voice
+                this.releaseVoice(s);
             }
         }
     }
@@ -145,12 +145,14 @@ public interface MusicReference {
     public void skipBytes(long num);
 
     /**
-     * Get the next two bytes from the music data in the specified endianness.
+     * Read up to the specified number of frames of music data into a block of
+     * interleaved left and right samples.
      *
-     * @param data length-2 array to write in next two bytes from each channel
-     * @param bigEndian true if the bytes should be read big-endian
+     * @param data buffer to write the samples into, at least 2 * numFrames long
+     * @param numFrames the maximum number of frames to read
+     * @return number of frames actually read into the buffer
      */
-    public void nextTwoBytes(int[] data, boolean bigEndian);
+    public int nextFrames(short[] data, int numFrames);
 
     /**
      * Does any cleanup necessary to dispose of resources in use by this
@@ -0,0 +1,294 @@
+/*
+ * Copyright (c) 2012, Finn Kuusisto
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *     Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *     
+ *     Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package tiny.engine.audio.internal;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+
+/**
+ * The PcmCache class keeps decoded sound data on disk so it does not have to
+ * be decoded and converted again on the next run. Each entry is named after a
+ * hash of the source URL and records a hash of the source contents, so an
+ * entry is thrown away and rebuilt when the source asset changes. PcmCache is
+ * an internal class of the Audio system and should be of no real concern to
+ * the average user of Audio.
+ *
+ * @author Damian Strain
+ */
+public final class PcmCache {
+
+    private static final int MAGIC = 0x4D435054;   // "TPCM"
+    private static final int VERSION = 1;
+    private static final int HASH_SIZE = 20;       // SHA-1
+    private static final int HEADER_SIZE = 4 + 4 + HASH_SIZE + 4 + 4;
+    private static final int CHUNK_SIZE = 64 * 1024;
+
+    private final File directory;
+
+    /**
+     * Construct a new PcmCache keeping entries in a directory, which is
+     * created if needed.
+     *
+     * @param directory the directory for cache entries
+     */
+    public PcmCache(File directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Get the directory this PcmCache keeps entries in.
+     *
+     * @return the cache directory
+     */
+    public File getDirectory() {
+        return this.directory;
+    }
+
+    /**
+     * Load the cached sound data for a source, if there is an up to date
+     * entry. Out of date entries are deleted.
+     *
+     * @param url URL of the source asset
+     * @param sourceHash hash of the source contents, from hashContents()
+     * @return the cached sound data, null if there is no up to date entry
+     */
+    public PcmData load(URL url, byte[] sourceHash) {
+        File file = this.getFile(url);
+
+        if (!file.isFile() || sourceHash == null) {
+            return null;
+        }
+        RandomAccessFile raf = null;
+        PcmData data = null;
+
+        try {
+            raf = new RandomAccessFile(file, "r");
+            FileChannel channel = raf.getChannel();
+            long size = channel.size();
+
+            if (size >= HEADER_SIZE) {
+                ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+
+                while (header.hasRemaining() && channel.read(header) >= 0) {
+                }
+                header.flip();
+                int magic = header.getInt();
+                int version = header.getInt();
+                byte[] hash = new byte[HASH_SIZE];
+                header.get(hash);
+                int channels = header.getInt();
+                int numSamples = header.getInt();
+
+                // Only trust an entry that matches in every way
+                if (magic == MAGIC && version == VERSION && Arrays.equals(hash, sourceHash)
+                        && (channels == 1 || channels == 2) && numSamples >= 0
+                        && size == HEADER_SIZE + numSamples * 2L) {
+                    short[] samples = new short[numSamples];
+                    ByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_SIZE, numSamples * 2L);
+                    mapped.order(ByteOrder.LITTLE_ENDIAN).asShortBuffer().get(samples);
+                    data = new PcmData(samples, channels);
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Failed to read audio cache entry " + file);
+        } finally {
+            close(raf);
+        }
+
+        // Out of date or broken, rebuild it next time
+        if (data == null && !file.delete()) {
+            System.err.println("Failed to delete stale audio cache entry " + file);
+        }
+        return data;
+    }
+
+    /**
+     * Store decoded sound data for a source, replacing any existing entry.
+     *
+     * @param url URL of the source asset
+     * @param sourceHash hash of the source contents, from hashContents()
+     * @param data the decoded sound data
+     */
+    public void store(URL url, byte[] sourceHash, PcmData data) {
+        if (sourceHash == null) {
+            return;
+        }
+        if (!this.directory.isDirectory() && !this.directory.mkdirs()) {
+            System.err.println("Failed to create audio cache directory " + this.directory);
+            return;
+        }
+        File file = this.getFile(url);
+        File temp = null;
+        FileOutputStream out = null;
+
+        try {
+            // Write to a temporary file so a half written entry is never seen
+            temp = File.createTempFile("pcm", ".tmp", this.directory);
+            out = new FileOutputStream(temp);
+            FileChannel channel = out.getChannel();
+            ByteBuffer buf = ByteBuffer.allocate(CHUNK_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+
+            buf.putInt(MAGIC);
+            buf.putInt(VERSION);
+            buf.put(sourceHash);
+            buf.putInt(data.CHANNELS);
+            buf.putInt(data.SAMPLES.length);
+
+            // Then the samples a chunk at a time
+            short[] samples = data.SAMPLES;
+            int pos = 0;
+
+            while (pos < samples.length || buf.position() > 0) {
+                ShortBuffer view = buf.asShortBuffer();
+                int count = Math.min(view.remaining(), samples.length - pos);
+                view.put(samples, pos, count);
+                buf.position(buf.position() + count * 2);
+                pos += count;
+                buf.flip();
+
+                while (buf.hasRemaining()) {
+                    channel.write(buf);
+                }
+                buf.clear();
+            }
+            out.close();
+            out = null;
+
+            // Replace the old entry
+            if (file.exists() && !file.delete() || !temp.renameTo(file)) {
+                System.err.println("Failed to write audio cache entry " + file);
+            }
+        } catch (IOException e) {
+            System.err.println("Failed to write audio cache entry " + file);
+        } finally {
+            close(out);
+
+            if (temp != null && temp.exists() && !temp.delete()) {
+                temp.deleteOnExit();
+            }
+        }
+    }
+
+    /**
+     * Get the cache entry file for a source.
+     *
+     * @param url URL of the source asset
+     * @return the cache entry file
+     */
+    private File getFile(URL url) {
+        MessageDigest digest = newDigest();
+        byte[] hash = digest.digest(url.toString().getBytes(StandardCharsets.UTF_8));
+        return new File(this.directory, toHex(hash) + ".pcm");
+    }
+
+    /**
+     * Hash the contents of a source. Entries are matched against this hash,
+     * so it should be computed once per decode and passed to both load() and
+     * store().
+     *
+     * @param url URL of the source asset
+     * @return hash of the contents, null if they could not be read
+     */
+    public static byte[] hashContents(URL url) {
+        MessageDigest digest = newDigest();
+        InputStream in = null;
+
+        try {
+            in = url.openStream();
+            byte[] buf = new byte[CHUNK_SIZE];
+            int numRead;
+
+            while ((numRead = in.read(buf)) > -1) {
+                digest.update(buf, 0, numRead);
+            }
+            return digest.digest();
+        } catch (IOException e) {
+            System.err.println("Failed to read audio source " + url);
+            return null;
+        } finally {
+            close(in);
+        }
+    }
+
+    /**
+     * Create a new SHA-1 digest.
+     *
+     * @return a new digest
+     */
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            // Every Java platform is required to support SHA-1
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Convert bytes to lowercase hex.
+     *
+     * @param bytes the bytes to convert
+     * @return the bytes as hex
+     */
+    private static String toHex(byte[] bytes) {
+        StringBuilder sb = new StringBuilder(bytes.length * 2);
+
+        for (byte b : bytes) {
+            sb.append(Character.forDigit((b >> 4) & 0xF, 16));
+            sb.append(Character.forDigit(b & 0xF, 16));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Close something quietly.
+     *
+     * @param closeable what to close, may be null
+     */
+    private static void close(Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException e) {
+                // Whatever... this should never happen
+            }
+        }
+    }
+}
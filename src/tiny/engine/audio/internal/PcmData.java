@@ -0,0 +1,70 @@
+/*
+ * Copyright (c) 2012, Finn Kuusisto
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *     Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *     
+ *     Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package tiny.engine.audio.internal;
+
+/**
+ * The PcmData class holds decoded 16-bit sound data as interleaved samples,
+ * one sample per channel per frame. Mono data is kept as a single channel and
+ * played on both sides.
+ *
+ * @author Damian Strain
+ */
+public final class PcmData {
+
+    public final short[] SAMPLES;
+    public final int CHANNELS;
+    public final int NUM_FRAMES;
+
+    public PcmData(short[] samples, int channels) {
+        this.SAMPLES = samples;
+        this.CHANNELS = channels;
+        this.NUM_FRAMES = samples.length / channels;
+    }
+
+    /**
+     * Read up to the specified number of frames into a block of interleaved
+     * left and right samples.
+     *
+     * @param frame index of the first frame to read
+     * @param data buffer to write the samples into
+     * @param offset the start index to write samples into
+     * @param numFrames the number of frames to read, no more than are left
+     */
+    void copyFrames(int frame, short[] data, int offset, int numFrames) {
+        short[] samples = this.SAMPLES;
+
+        if (this.CHANNELS == 2) {
+            System.arraycopy(samples, frame * 2, data, offset, numFrames * 2);
+        } else {
+            for (int i = frame, j = offset, end = frame + numFrames; i < end; i++, j += 2) {
+                short sample = samples[i];
+                data[j] = sample;
+                data[j + 1] = sample;
+            }
+        }
+    }
+}
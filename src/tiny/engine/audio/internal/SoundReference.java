@@ -42,6 +42,21 @@ public interface SoundReference {
      */
     public int getSoundID();
 
+    /**
+     * Get the voice handle that was returned when this SoundReference was
+     * played.
+     *
+     * @return the voice handle of this SoundReference
+     */
+    public long getHandle();
+
+    /**
+     * Get the priority this SoundReference was played with.
+     *
+     * @return priority of this SoundReference
+     */
+    public int getPriority();
+
     /**
      * Gets the volume of this SoundReference.
      *
@@ -49,6 +64,13 @@ public interface SoundReference {
      */
     public double getVolume();
 
+    /**
+     * Sets the volume of this SoundReference.
+     *
+     * @param volume the desired volume of this SoundReference
+     */
+    public void setVolume(double volume);
+
     /**
      * Gets the pan of this SoundReference.
      *
@@ -56,6 +78,14 @@ public interface SoundReference {
      */
     public double getPan();
 
+    /**
+     * Sets the pan of this SoundReference. Must be between -1.0 (full pan
+     * left) and 1.0 (full pan right).
+     *
+     * @param pan the desired pan of this SoundReference
+     */
+    public void setPan(double pan);
+
     /**
      * Get the number of bytes remaining for each channel.
      *
@@ -71,12 +101,14 @@ public interface SoundReference {
     public void skipBytes(long num);
 
     /**
-     * Get the next two bytes from the sound data in the specified endianness.
+     * Read up to the specified number of frames of sound data into a block of
+     * interleaved left and right samples.
      *
-     * @param data length-2 array to write in next two bytes from each channel
-     * @param bigEndian true if the bytes should be read big-endian
+     * @param data buffer to write the samples into, at least 2 * numFrames long
+     * @param numFrames the maximum number of frames to read
+     * @return number of frames actually read into the buffer
      */
-    public void nextTwoBytes(int[] data, boolean bigEndian);
+    public int nextFrames(short[] data, int numFrames);
 
     /**
      * Does any cleanup necessary to dispose of resources in use by this
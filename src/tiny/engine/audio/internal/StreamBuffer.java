@@ -0,0 +1,361 @@
+/*
+ * Copyright (c) 2012, Finn Kuusisto
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *     Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *     
+ *     Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package tiny.engine.audio.internal;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The StreamBuffer class is a StreamSource that holds the next chunk of a
+ * streamed sound file in memory. The StreamPrefetcher thread reads ahead from
+ * the file into a ring buffer, and the audio thread only ever reads frames out
+ * of that ring, so a slow disk shows up as a short silence instead of a stall
+ * in the mixer. The ring is filled past the end of the file from the loop
+ * position when looping. Seeking starts a new generation of data, anything
+ * left from the old generation is dropped. It is used when the stream file
+ * cannot be memory-mapped.
+ *
+ * @author Damian Strain
+ */
+final class StreamBuffer implements StreamSource {
+
+    private static final int CAPACITY = 1 << 16;      // 64KB, whole frames
+    private static final int MIN_READ = 1 << 12;      // Don't bother with less
+
+    private final byte[] ring;
+    private final int mask;
+    private final URL url;
+    private final long numBytes;
+
+    // Only touched by the filling thread
+    private InputStream data;
+    private long filePosition;
+    private int fillGeneration;
+
+    // Written by the filling thread
+    private volatile long writeCount;
+    private volatile long generationStart;
+    private volatile int bufferGeneration;
+    private volatile long endCount = -1;    // Ring offset the end of the file was reached at
+    private volatile boolean endOfData;
+
+    // Written by the audio thread
+    private volatile long readCount;
+    private int readGeneration;
+
+    // Written by whoever controls playback
+    private final AtomicInteger seekGeneration;
+    private volatile long seekPosition;
+    private volatile boolean loop;
+    private volatile long loopPosition;
+    private volatile boolean disposed;
+
+    /**
+     * Construct a new StreamBuffer, filling it from the start position before
+     * returning so playback can start straight away. The StreamBuffer is
+     * registered with the StreamPrefetcher once filled.
+     *
+     * @param url URL of the temporary file containing sound data
+     * @param numBytes the total number of bytes in the file
+     * @param position byte index to start reading from
+     * @param loop true if the data should loop
+     * @param loopPosition byte index to loop back to
+     * @throws java.io.IOException if a stream cannot be opened from the URL
+     */
+    StreamBuffer(URL url, long numBytes, long position, boolean loop, long loopPosition) throws IOException {
+        this.ring = new byte[CAPACITY];
+        this.mask = CAPACITY - 1;
+        this.url = url;
+        this.numBytes = numBytes;
+        this.seekGeneration = new AtomicInteger();
+        this.seekPosition = position;
+        this.loop = loop;
+        this.loopPosition = loopPosition;
+        this.readGeneration = -1;
+
+        // Open the stream here so failure is reported to the caller
+        this.open(position);
+        this.fill();
+        StreamPrefetcher.register(this);
+    }
+
+    /**
+     * Request that data is read from a new position. Data from the old
+     * position is no longer read, and nothing is read until the
+     * StreamPrefetcher has caught up.
+     *
+     * @param position byte index to continue from
+     */
+    @Override
+    public void seek(long position) {
+        this.seekPosition = position;
+        this.seekGeneration.incrementAndGet();
+        StreamPrefetcher.wake();
+    }
+
+    /**
+     * Set whether data should continue from the loop position after the end
+     * of the file.
+     *
+     * @param loop true if the data should loop
+     * @param loopPosition byte index to loop back to
+     * @return true if the end of the file was reached with the old settings
+     * and the data after it has not been played yet, in which case the caller
+     * should seek to resync
+     */
+    @Override
+    public boolean setLoop(boolean loop, long loopPosition) {
+        this.loop = loop;
+        this.loopPosition = loopPosition;
+        long end = this.endCount;
+        return end >= 0 && this.readCount <= end;
+    }
+
+    /**
+     * Read up to the specified number of frames from the buffer into a block
+     * of interleaved left and right samples. Only the audio thread may call
+     * this.
+     *
+     * @param data buffer to write the samples into
+     * @param offset the start index to write samples into
+     * @param numFrames the maximum number of frames to read
+     * @return number of frames actually read, fewer than asked if the buffer
+     * has run dry
+     */
+    @Override
+    public int read(short[] data, int offset, int numFrames) {
+        if (!this.sync()) {
+            return 0;
+        }
+        long read = this.readCount;
+        long available = (this.writeCount - read) / 4;
+        int frames = (numFrames < available) ? numFrames : (int) available;
+        byte[] ring = this.ring;
+        int mask = this.mask;
+
+        // Little-endian samples, frames never wrap around the ring
+        for (int i = 0, j = offset; i < frames; i++, j += 2) {
+            int p = (int) (read & mask);
+            data[j] = (short) ((ring[p + 1] << 8) | (ring[p] & 0xFF));
+            data[j + 1] = (short) ((ring[p + 3] << 8) | (ring[p + 2] & 0xFF));
+            read += 4;
+        }
+        this.readCount = read;
+
+        // Top up before running low
+        if (this.writeCount - read < CAPACITY / 2) {
+            StreamPrefetcher.wake();
+        }
+        return frames;
+    }
+
+    /**
+     * Drop up to the specified number of bytes from the buffer. Only the
+     * audio thread may call this.
+     *
+     * @param num number of bytes to drop
+     * @return number of bytes actually dropped
+     */
+    @Override
+    public long skip(long num) {
+        if (!this.sync()) {
+            return 0;
+        }
+        long available = (this.writeCount - this.readCount) & ~3L;
+        long skipped = (num < available) ? num : available;
+        this.readCount += skipped;
+        StreamPrefetcher.wake();
+        return skipped;
+    }
+
+    /**
+     * Determine if the buffer is empty and no more data will be read into it
+     * from the current position.
+     *
+     * @return true if no more data will arrive without a seek
+     */
+    @Override
+    public boolean ended() {
+        return this.sync() && this.endOfData && (this.writeCount - this.readCount) < 4;
+    }
+
+    /**
+     * Catch up with the latest seek. Only the audio thread may call this.
+     *
+     * @return true if the buffer holds data from the latest seek
+     */
+    private boolean sync() {
+        int generation = this.seekGeneration.get();
+
+        if (this.bufferGeneration != generation) {
+            return false;
+        }
+        if (this.readGeneration != generation) {
+            // Everything before the start of this generation is stale
+            this.readCount = this.generationStart;
+            this.readGeneration = generation;
+        }
+        return true;
+    }
+
+    /**
+     * Read from the file into any free space in the buffer. Only one thread
+     * may fill at a time, the constructor and then the StreamPrefetcher.
+     *
+     * @return true if any work was done
+     */
+    boolean fill() {
+        int generation = this.seekGeneration.get();
+        boolean worked = false;
+
+        if (generation != this.fillGeneration) {
+            try {
+                this.open(this.seekPosition);
+            } catch (IOException e) {
+                System.err.println("Failed to open stream for streaming audio");
+                this.endOfData = true;
+            }
+            // Start on a whole frame so frames never wrap around the ring
+            long start = (this.writeCount + 3) & ~3L;
+            this.writeCount = start;
+            this.fillGeneration = generation;
+            this.generationStart = start;
+            this.endCount = -1;
+            this.bufferGeneration = generation;
+            worked = true;
+        }
+
+        while (!this.endOfData) {
+            long write = this.writeCount;
+            long free = CAPACITY - (write - this.readCount);
+
+            if (free < MIN_READ) {
+                break;
+            }
+
+            // Carry on from the loop position once past the end
+            if (this.filePosition >= this.numBytes) {
+                this.endCount = write;
+
+                if (!this.loop) {
+                    this.endOfData = true;
+                    break;
+                }
+                try {
+                    this.open(this.loopPosition);
+                } catch (IOException e) {
+                    System.err.println("Failed to open stream for streaming audio");
+                    this.endOfData = true;
+                    break;
+                }
+            }
+
+            // Read up to the end of the ring, file or free space
+            int start = (int) (write & this.mask);
+            long len = Math.min(free, Math.min(CAPACITY - start, this.numBytes - this.filePosition));
+            int numRead;
+
+            try {
+                numRead = this.data.read(this.ring, start, (int) len);
+            } catch (IOException e) {
+                System.err.println("Failed reading bytes for streaming audio");
+                numRead = -1;
+            }
+
+            if (numRead < 0) {
+                // Truncated file, this should never happen
+                this.endOfData = true;
+                break;
+            }
+            this.filePosition += numRead;
+            this.writeCount = write + numRead;
+            worked = true;
+        }
+        return worked;
+    }
+
+    /**
+     * Open the file at a byte index, closing any stream already open.
+     *
+     * @param position byte index to open at
+     * @throws java.io.IOException if a stream cannot be opened from the URL
+     */
+    private void open(long position) throws IOException {
+        this.close();
+        this.endOfData = false;
+        this.data = this.url.openStream();
+        this.filePosition = 0;
+
+        // Skip is not guaranteed to skip everything, so fall back on reads
+        while (this.filePosition < position) {
+            long skipped = this.data.skip(position - this.filePosition);
+
+            if (skipped <= 0) {
+                if (this.data.read() < 0) {
+                    break;
+                }
+                skipped = 1;
+            }
+            this.filePosition += skipped;
+        }
+    }
+
+    /**
+     * Close the stream, if open. Only the filling thread may call this.
+     */
+    void close() {
+        if (this.data != null) {
+            try {
+                this.data.close();
+            } catch (IOException e) {
+                // Whatever... this should never happen
+            }
+            this.data = null;
+        }
+    }
+
+    /**
+     * Mark this StreamBuffer as no longer needed. The StreamPrefetcher closes
+     * the stream and stops filling it.
+     */
+    @Override
+    public void dispose() {
+        this.disposed = true;
+        StreamPrefetcher.wake();
+    }
+
+    /**
+     * Determine if this StreamBuffer has been disposed of.
+     *
+     * @return true if disposed
+     */
+    boolean isDisposed() {
+        return this.disposed;
+    }
+}
@@ -26,15 +26,18 @@
  */
 package tiny.engine.audio.internal;
 
+import java.io.File;
 import java.net.URL;
 
 public final class StreamInfo {
 
     public final URL URL;
+    public final File FILE;
     public final long NUM_BYTES_PER_CHANNEL;
 
-    public StreamInfo(URL url, long numBytesPerChannel) {
+    public StreamInfo(URL url, File file, long numBytesPerChannel) {
         this.URL = url;
+        this.FILE = file;
         this.NUM_BYTES_PER_CHANNEL = numBytesPerChannel;
     }
 }
@@ -29,13 +29,15 @@ package tiny.engine.audio.internal;
 import tiny.engine.audio.Audio;
 import tiny.engine.audio.Music;
 
+import java.io.File;
 import java.io.IOException;
-import java.io.InputStream;
 import java.net.URL;
+import java.nio.ByteBuffer;
 
 /**
  * The StreamMusic class is an implementation of the Music interface that
- * streams sound data from a temporary file to reduce memory overhead.
+ * streams sound data from a temporary file to reduce memory overhead. The file
+ * is memory-mapped when possible.
  *
  * @author Finn Kuusisto
  */
@@ -50,15 +52,16 @@ public final class StreamMusic implements Music {
      * to register this StreamMusic.
      *
      * @param dataURL URL of the temporary file containing sound data
+     * @param dataFile the temporary file to map, null to always stream
      * @param numBytesPerChannel the total number of bytes for each channel in
      * the file
      * @param mixer Mixer that will handle this StreamSound
      * @throws java.io.IOException if a stream cannot be opened from the URL
      */
-    public StreamMusic(URL dataURL, long numBytesPerChannel, Mixer mixer) throws IOException {
+    public StreamMusic(URL dataURL, File dataFile, long numBytesPerChannel, Mixer mixer) throws IOException {
         this.dataURL = dataURL;
         this.mixer = mixer;
-        this.reference = new StreamMusicReference(this.dataURL, false, false, 0, 0, numBytesPerChannel, 1.0, 0.0);
+        this.reference = new StreamMusicReference(this.dataURL, MappedStreamSource.map(dataFile), false, false, 0, 0, numBytesPerChannel, 1.0, 0.0);
         this.mixer.registerMusicReference(this.reference);
     }
 
@@ -280,15 +283,25 @@ public final class StreamMusic implements Music {
         }
     }
 
+    /**
+     * Get the number of bytes of memory this StreamMusic keeps its sound data in,
+     * which is none since it is streamed from a file.
+     *
+     * @return 0
+     */
+    @Override
+    public long getMemorySize() {
+        return 0;
+    }
+
     /**
      * Unload this MemMusic from the system. Attempts to use this MemMusic after
      * unloading will result in error.
      */
     @Override
     public void unload() {
-        // Un-register the reference
+        // Un-register the reference, the Mixer disposes of it
         this.mixer.unRegisterMusicReference(this.reference);
-        this.reference.dispose();
         this.mixer = null;
         this.dataURL = null;
         this.reference = null;
@@ -296,15 +309,13 @@ public final class StreamMusic implements Music {
 
     /**
      * The StreamMusicReference is an implementation of the MusicReference
-     * interface.
+     * interface. Music data is read from a StreamSource, so the audio thread
+     * never waits on the file.
      */
     private static class StreamMusicReference implements MusicReference {
 
-        private URL url;
-        private InputStream data;
+        private StreamSource source;
         private long numBytesPerChannel; //not per frame, but the whole sound
-        private byte[] buf;
-        private byte[] skipBuf;
         private boolean playing;
         private boolean loop;
         private long loopPosition;
@@ -317,6 +328,7 @@ public final class StreamMusic implements Music {
          * settings.
          *
          * @param dataURL URL of the temporary file containing sound data
+         * @param mapped the mapped file, null to stream from the URL
          * @param playing true if the music should be playing
          * @param loop true if the music should loop
          * @param loopPosition byte index of the loop position in music data
@@ -327,8 +339,7 @@ public final class StreamMusic implements Music {
          * @param pan pan to play the music
          * @throws java.io.IOException if a stream cannot be opened from the URL
          */
-        public StreamMusicReference(URL dataURL, boolean playing, boolean loop, long loopPosition, long position, long numBytesPerChannel, double volume, double pan) throws IOException {
-            this.url = dataURL;
+        public StreamMusicReference(URL dataURL, ByteBuffer mapped, boolean playing, boolean loop, long loopPosition, long position, long numBytesPerChannel, double volume, double pan) throws IOException {
             this.playing = playing;
             this.loop = loop;
             this.loopPosition = loopPosition;
@@ -336,11 +347,13 @@ public final class StreamMusic implements Music {
             this.numBytesPerChannel = numBytesPerChannel;
             this.volume = volume;
             this.pan = pan;
-            this.buf = new byte[4];
-            this.skipBuf = new byte[50];
 
-            // Now get the data stream
-            this.data = this.url.openStream();
+            // Now get the data source, positions are doubled for 2 channels
+            if (mapped != null) {
+                this.source = new MappedStreamSource(mapped, position * 2);
+            } else {
+                this.source = new StreamBuffer(dataURL, numBytesPerChannel * 2, position * 2, loop, loopPosition * 2);
+            }
         }
 
         /**
@@ -420,7 +433,10 @@ public final class StreamMusic implements Music {
          */
         @Override
         public synchronized void setLoop(boolean loop) {
-            this.loop = loop;
+            if (loop != this.loop) {
+                this.loop = loop;
+                this.updateSourceLoop();
+            }
         }
 
         /**
@@ -431,28 +447,8 @@ public final class StreamMusic implements Music {
         @Override
         public synchronized void setPosition(long position) {
             if (position >= 0 && position < this.numBytesPerChannel) {
-                // If it's later, skip
-                if (position >= this.position) {
-                    this.skipBytes(position - this.position);
-                } else // Otherwise skip from the beginning
-                {
-                    // First close our current stream
-                    try {
-                        this.data.close();
-                    } catch (IOException e) {
-                        // Whatever...
-                    }
-
-                    // Open a new stream
-                    try {
-                        this.data = this.url.openStream();
-                        this.position = 0;
-                        this.skipBytes(position);
-                    } catch (IOException e) {
-                        System.err.println("Failed to open stream for StreamMusic");
-                        this.playing = false;
-                    }
-                }
+                this.position = position;
+                this.source.seek(position * 2);
             }
         }
 
@@ -463,8 +459,19 @@ public final class StreamMusic implements Music {
          */
         @Override
         public synchronized void setLoopPosition(long loopPosition) {
-            if (loopPosition >= 0 && loopPosition < this.numBytesPerChannel) {
+            if (loopPosition >= 0 && loopPosition < this.numBytesPerChannel && loopPosition != this.loopPosition) {
                 this.loopPosition = loopPosition;
+                this.updateSourceLoop();
+            }
+        }
+
+        /**
+         * Pass the loop settings on to the source, which may already hold
+         * data read past the end with the old settings.
+         */
+        private void updateSourceLoop() {
+            if (this.source.setLoop(this.loop, this.loopPosition * 2)) {
+                this.source.seek(this.position * 2);
             }
         }
 
@@ -540,98 +547,65 @@ public final class StreamMusic implements Music {
                 }
             }
 
-            // This is the number of bytes to skip per channel, so double it
+            // Skip what is available, and seek if that is not enough
             long numSkip = num * 2;
 
-            // Spin read since skip is not always supported apparently and won't
-            // Guarantee a correct skip amount
-            int tmpRead = 0;
-            int numRead = 0;
-
-            try {
-                while (numRead < numSkip && tmpRead != -1) {
-                    // Determine safe length to read
-                    long remaining = numSkip - numRead;
-                    int len = remaining > this.skipBuf.length ? this.skipBuf.length : (int) remaining;
-
-                    // And read
-                    tmpRead = this.data.read(this.skipBuf, 0, len);
-                    numRead += tmpRead;
-                }
-            } catch (IOException e) {
-                // Hmm... I guess invalidate this reference
-                this.position = this.numBytesPerChannel;
-                this.playing = false;
-            }
-
-            // Increment the position appropriately
-            if (tmpRead == -1) {
-                // Reached end of file in the middle of reading
-                this.position = this.numBytesPerChannel;
-                this.playing = false;
-            } else {
-                this.position += num;
+            if (this.source.skip(numSkip) < numSkip) {
+                this.source.seek((this.position + num) * 2);
             }
+            this.position += num;
         }
 
         /**
-         * Get the next two bytes from the music data in the specified
-         * endianness.
+         * Read up to the specified number of frames of music data into a block
+         * of interleaved left and right samples, wrapping to the loop position
+         * if looping.
          *
-         * @param data length-2 array to write in next two bytes from each
-         * channel
-         * @param bigEndian true if the bytes should be read big-endian
+         * @param data buffer to write the samples into, at least 2 * numFrames
+         * long
+         * @param numFrames the maximum number of frames to read
+         * @return number of frames actually read into the buffer
          */
         @Override
-        public synchronized void nextTwoBytes(int[] data, boolean bigEndian) {
-            // Try to read sound data
-            int tmpRead = 0;
-            int numRead = 0;
-
-            try {
-                while (numRead < this.buf.length && tmpRead != -1) {
-                    tmpRead = this.data.read(this.buf, numRead, this.buf.length - numRead);
-                    numRead += tmpRead;
+        public synchronized int nextFrames(short[] data, int numFrames) {
+            int frames = 0;
+
+            while (frames < numFrames && this.playing) {
+                // Read as far as we can before the end of the data
+                long framesAvailable = (this.numBytesPerChannel - this.position) / 2;
+                int run = (numFrames - frames < framesAvailable) ? numFrames - frames : (int) framesAvailable;
+                int numRead = this.source.read(data, frames * 2, run);
+                boolean dry = numRead < run;
+                frames += numRead;
+                this.position += numRead * 2;
+
+                if (dry && this.source.ended()) {
+                    // Reached end of file in the middle of reading
+                    // This should never happen
+                    this.position = this.numBytesPerChannel;
                 }
-            } catch (IOException e) {
-                // This shouldn't happen if the bytes were written correctly to
-                // the temp file, but this sound should now be invalid at least
-                this.position = this.numBytesPerChannel;
-                System.err.println("Failed reading bytes for stream sound");
-            }
-
-            // Copy the values into the caller buffer
-            if (bigEndian) {
-                // Left
-                data[0] = ((this.buf[0] << 8) | (this.buf[1] & 0xFF));
-
-                // Right
-                data[1] = ((this.buf[2] << 8) | (this.buf[3] & 0xFF));
-            } else {
-                // Left
-                data[0] = ((this.buf[1] << 8) | (this.buf[0] & 0xFF));
 
-                // Right
-                data[1] = ((this.buf[3] << 8) | (this.buf[2] & 0xFF));
-            }
-
-            // Increment the position appropriately
-            if (tmpRead == -1) {
-                // Reached end of file in the middle of reading
-                // This should never happen
-                this.position = this.numBytesPerChannel;
-            } else {
-                this.position += 2;
-            }
+                // Wrap if looping, stop otherwise
+                if (this.position >= this.numBytesPerChannel) {
+                    if (this.loop) {
+                        this.position = this.loopPosition;
+
+                        // The source only carries on from the loop position
+                        // if it was looping when it read past the end
+                        if (this.source.ended()) {
+                            this.source.seek(this.position * 2);
+                        }
+                    } else {
+                        this.playing = false;
+                    }
+                }
 
-            // Wrap if looping, stop otherwise
-            if (this.position >= this.numBytesPerChannel) {
-                if (this.loop) {
-                    this.setPosition(this.loopPosition);
-                } else {
-                    this.playing = false;
+                // Play silence until the source catches up
+                if (dry) {
+                    break;
                 }
             }
+            return frames;
         }
 
         /**
@@ -642,12 +616,7 @@ public final class StreamMusic implements Music {
         public synchronized void dispose() {
             this.playing = false;
             this.position = this.numBytesPerChannel;
-            this.url = null;
-            try {
-                this.data.close();
-            } catch (IOException e) {
-                // Whatever... this should never happen
-            }
+            this.source.dispose();
         }
     }
 }
@@ -0,0 +1,106 @@
+/*
+ * Copyright (c) 2012, Finn Kuusisto
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *     Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *     
+ *     Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package tiny.engine.audio.internal;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * The StreamPrefetcher class runs a single background thread that keeps every
+ * StreamBuffer topped up from disk. It is started the first time a stream is
+ * played and sleeps while there is nothing to do.
+ *
+ * @author Damian Strain
+ */
+final class StreamPrefetcher implements Runnable {
+
+    // Check in this often even if no one asks
+    private static final long IDLE_NANOS = TimeUnit.MILLISECONDS.toNanos(5);
+
+    private static final List<StreamBuffer> buffers = new CopyOnWriteArrayList<StreamBuffer>();
+    private static volatile Thread thread;
+
+    private StreamPrefetcher() {
+    }
+
+    /**
+     * Start keeping a StreamBuffer filled, starting the thread if needed.
+     *
+     * @param buffer the StreamBuffer to fill
+     */
+    static void register(StreamBuffer buffer) {
+        StreamPrefetcher.buffers.add(buffer);
+
+        synchronized (StreamPrefetcher.class) {
+            if (StreamPrefetcher.thread == null) {
+                Thread t = new Thread(new StreamPrefetcher(), "StreamPrefetcher");
+                t.setDaemon(true);
+                StreamPrefetcher.thread = t;
+                t.start();
+            }
+        }
+        StreamPrefetcher.wake();
+    }
+
+    /**
+     * Wake the thread to fill buffers now.
+     */
+    static void wake() {
+        Thread t = StreamPrefetcher.thread;
+
+        if (t != null) {
+            LockSupport.unpark(t);
+        }
+    }
+
+    @Override
+    public void run() {
+        while (true) {
+            boolean worked = false;
+
+            for (StreamBuffer buffer : StreamPrefetcher.buffers) {
+                if (buffer.isDisposed()) {
+                    buffer.close();
+                    StreamPrefetcher.buffers.remove(buffer);
+                } else if (buffer.fill()) {
+                    worked = true;
+                }
+            }
+
+            // Nothing was read, so wait to be woken
+            if (!worked) {
+                if (StreamPrefetcher.buffers.isEmpty()) {
+                    LockSupport.park(this);
+                } else {
+                    LockSupport.parkNanos(this, IDLE_NANOS);
+                }
+            }
+        }
+    }
+}
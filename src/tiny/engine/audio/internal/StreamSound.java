@@ -28,19 +28,23 @@ package tiny.engine.audio.internal;
 
 import tiny.engine.audio.Sound;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URL;
+import java.nio.ByteBuffer;
 
 /**
  * Thes StreamSound class is an implementation of the Sound interface that
- * streams sound data from a temporary file to reduce memory overhead.
+ * streams sound data from a temporary file to reduce memory overhead. The file
+ * is memory-mapped when possible, so any number of plays share one mapping.
  *
  * @author Finn Kuusisto
  */
 public final class StreamSound implements Sound {
 
     private URL dataURL;
+    private ByteBuffer mapped;
     private long numBytesPerChannel;
     private Mixer mixer;
     private final int ID;
@@ -50,14 +54,16 @@ public final class StreamSound implements Sound {
      * handle this StreamSound.
      *
      * @param dataURL URL of the temporary file containing sound data
+     * @param dataFile the temporary file to map, null to always stream
      * @param numBytesPerChannel the total number of bytes for each channel in
      * the file
      * @param mixer Mixer that will handle this StreamSound
      * @param id unique ID of this StreamSound
      * @throws java.io.IOException if a stream cannot be opened from the URL
      */
-    public StreamSound(URL dataURL, long numBytesPerChannel, Mixer mixer, int id) throws IOException {
+    public StreamSound(URL dataURL, File dataFile, long numBytesPerChannel, Mixer mixer, int id) throws IOException {
         this.dataURL = dataURL;
+        this.mapped = MappedStreamSource.map(dataFile);
         this.numBytesPerChannel = numBytesPerChannel;
         this.mixer = mixer;
         this.ID = id;
@@ -69,40 +75,68 @@ public final class StreamSound implements Sound {
 
     /**
      * Plays this StreamSound.
+     *
+     * @return the handle of the voice playing this StreamSound, -1 if it could
+     * not be played
      */
     @Override
-    public void play() {
-        this.play(1.0);
+    public long play() {
+        return this.play(1.0);
     }
 
     /**
      * Plays this StreamSound with a specified volume.
      *
      * @param volume the volume at which to play this StreamSound
+     * @return the handle of the voice playing this StreamSound, -1 if it could
+     * not be played
      */
     @Override
-    public void play(double volume) {
-        this.play(volume, 0.0);
+    public long play(double volume) {
+        return this.play(volume, 0.0);
     }
 
     /**
-     * Plays this MemSound with a specified volume and pan.
+     * Plays this StreamSound with a specified volume and pan.
      *
-     * @param volume the volume at which to play this MemSound
-     * @param pan the pan value to play this MemSound [-1.0,1.0], values outside
-     * the valid range will assume no panning (0.0)
+     * @param volume the volume at which to play this StreamSound
+     * @param pan the pan value to play this StreamSound [-1.0,1.0], values
+     * outside the valid range will assume no panning (0.0)
+     * @return the handle of the voice playing this StreamSound, -1 if it could
+     * not be played
+     */
+    @Override
+    public long play(double volume, double pan) {
+        return this.play(volume, pan, 0);
+    }
+
+    /**
+     * Plays this StreamSound with a specified volume, pan and priority.
+     *
+     * @param volume the volume at which to play this StreamSound
+     * @param pan the pan value to play this StreamSound [-1.0,1.0], values
+     * outside the valid range will assume no panning (0.0)
+     * @param priority the priority of this voice, higher is more important
+     * @return the handle of the voice playing this StreamSound, -1 if it could
+     * not be played
      */
     @Override
-    public void play(double volume, double pan) {
+    public long play(double volume, double pan, int priority) {
         // Dispatch a SoundReference to the mixer
         SoundReference ref;
+        long handle = this.mixer.newHandle();
 
         try {
-            ref = new StreamSoundReference(this.dataURL.openStream(), this.numBytesPerChannel, volume, pan, this.ID);
+            StreamSource source = (this.mapped != null)
+                    ? new MappedStreamSource(this.mapped, 0)
+                    : new StreamBuffer(this.dataURL, this.numBytesPerChannel * 2, 0, false, 0);
+            ref = new StreamSoundReference(source, this.numBytesPerChannel, volume, pan, this.ID, handle, priority);
             this.mixer.registerSoundReference(ref);
         } catch (IOException e) {
             System.err.println("Failed to open stream for Sound");
+            return -1;
         }
+        return handle;
     }
 
     /**
@@ -115,6 +149,49 @@ public final class StreamSound implements Sound {
         this.mixer.unRegisterSoundReference(this.ID);
     }
 
+    /**
+     * Stops a single voice of this StreamSound.
+     *
+     * @param voice the handle returned when the voice was played
+     */
+    @Override
+    public void stop(long voice) {
+        this.mixer.stopVoice(voice);
+    }
+
+    /**
+     * Sets the volume of a single voice of this StreamSound.
+     *
+     * @param voice the handle returned when the voice was played
+     * @param volume the new volume of the voice
+     */
+    @Override
+    public void setVolume(long voice, double volume) {
+        this.mixer.setVoiceVolume(voice, volume);
+    }
+
+    /**
+     * Sets the pan of a single voice of this StreamSound.
+     *
+     * @param voice the handle returned when the voice was played
+     * @param pan the new pan of the voice [-1.0,1.0]
+     */
+    @Override
+    public void setPan(long voice, double pan) {
+        this.mixer.setVoicePan(voice, pan);
+    }
+
+    /**
+     * Get the number of bytes of memory this StreamSound keeps its sound data in,
+     * which is none since it is streamed from a file.
+     *
+     * @return 0
+     */
+    @Override
+    public long getMemorySize() {
+        return 0;
+    }
+
     /**
      * Unloads this StreamSound from the system. Attempts to use this
      * StreamSound after unloading will result in error.
@@ -124,45 +201,49 @@ public final class StreamSound implements Sound {
         this.mixer.unRegisterSoundReference(this.ID);
         this.mixer = null;
         this.dataURL = null;
+        this.mapped = null;
     }
 
     /**
      * The StreamSoundReference class is an implementation of the SoundReference
-     * interface.
+     * interface. Sound data is read from a StreamSource, so the audio thread
+     * never waits on the file.
      *
      * @author Finn Kuusisto
      */
     private static class StreamSoundReference implements SoundReference {
 
         public final int SOUND_ID;
+        public final long HANDLE;
+        public final int PRIORITY;
 
-        private InputStream data;
+        private StreamSource source;
         private long numBytesPerChannel;     // Not per frame, but the whole sound
         private long position;
         private double volume;
         private double pan;
-        private byte[] buf;
-        private byte[] skipBuf;
 
         /**
          * Construct a new StreamSoundReference with the given reference data.
          *
-         * @param data the stream of the sound data
+         * @param source the source of the sound data
          * @param numBytesPerChannel the total number of bytes for each channel
          * in the stream
          * @param volume volume at which to play the sound
          * @param pan pan at which to play the sound
          * @param soundID ID of the StreamSound for which this is a reference
+         * @param handle voice handle returned to the game for this play
+         * @param priority priority at which to play the sound
          */
-        public StreamSoundReference(InputStream data, long numBytesPerChannel, double volume, double pan, int soundID) {
-            this.data = data;
+        public StreamSoundReference(StreamSource source, long numBytesPerChannel, double volume, double pan, int soundID, long handle, int priority) {
+            this.source = source;
             this.numBytesPerChannel = numBytesPerChannel;
             this.volume = (volume >= 0.0) ? volume : 1.0;
             this.pan = (pan >= -1.0 && pan <= 1.0) ? pan : 0.0;
             this.position = 0;
-            this.buf = new byte[4];
-            this.skipBuf = new byte[20];
             this.SOUND_ID = soundID;
+            this.HANDLE = handle;
+            this.PRIORITY = priority;
         }
 
         /**
@@ -176,6 +257,27 @@ public final class StreamSound implements Sound {
             return this.SOUND_ID;
         }
 
+        /**
+         * Get the voice handle that was returned when this
+         * StreamSoundReference was played.
+         *
+         * @return the voice handle of this StreamSoundReference
+         */
+        @Override
+        public long getHandle() {
+            return this.HANDLE;
+        }
+
+        /**
+         * Get the priority this StreamSoundReference was played with.
+         *
+         * @return priority of this StreamSoundReference
+         */
+        @Override
+        public int getPriority() {
+            return this.PRIORITY;
+        }
+
         /**
          * Gets the volume of this StreamSoundReference.
          *
@@ -186,6 +288,18 @@ public final class StreamSound implements Sound {
             return this.volume;
         }
 
+        /**
+         * Sets the volume of this StreamSoundReference.
+         *
+         * @param volume the desired volume of this StreamSoundReference
+         */
+        @Override
+        public void setVolume(double volume) {
+            if (volume >= 0.0) {
+                this.volume = volume;
+            }
+        }
+
         /**
          * Gets the pan of this StreamSoundReference.
          *
@@ -196,6 +310,18 @@ public final class StreamSound implements Sound {
             return this.pan;
         }
 
+        /**
+         * Sets the pan of this StreamSoundReference.
+         *
+         * @param pan the desired pan of this StreamSoundReference
+         */
+        @Override
+        public void setPan(double pan) {
+            if (pan >= -1.0 && pan <= 1.0) {
+                this.pan = pan;
+            }
+        }
+
         /**
          * Get the number of bytes remaining for each channel.
          *
@@ -219,84 +345,36 @@ public final class StreamSound implements Sound {
                 return;
             }
 
-            // This is the number of bytes to skip per channel, so double it
+            // Skip what is available, and seek if that is not enough
             long numSkip = num * 2;
 
-            // Spin read since skip is not always supported apparently and won't
-            // guarantee a correct skip amount
-            int tmpRead = 0;
-            long numRead = 0;
-
-            try {
-                while (numRead < numSkip && tmpRead != -1) {
-                    // Determine safe length to read
-                    long remaining = numSkip - numRead;
-                    int len = remaining > this.skipBuf.length ? this.skipBuf.length : (int) remaining;
-
-                    // And read
-                    tmpRead = this.data.read(this.skipBuf, 0, len);
-                    numRead += tmpRead;
-                }
-            } catch (IOException e) {
-                // Hmm... I guess invalidate this reference
-                this.position = this.numBytesPerChannel;
-            }
-
-            // Increment the position appropriately
-            if (tmpRead == -1) {
-                // Reached end of file in the middle of reading
-                this.position = this.numBytesPerChannel;
-            } else {
-                this.position += num;
+            if (this.source.skip(numSkip) < numSkip) {
+                this.source.seek((this.position + num) * 2);
             }
+            this.position += num;
         }
 
         /**
-         * Get the next two bytes from the sound data in the specified
-         * endianness.
+         * Read up to the specified number of frames of sound data into a block
+         * of interleaved left and right samples.
          *
-         * @param data length-2 array to write in next two bytes from each
-         * channel
-         * @param bigEndian true if the bytes should be read big-endian
+         * @param data buffer to write the samples into, at least 2 * numFrames
+         * long
+         * @param numFrames the maximum number of frames to read
+         * @return number of frames actually read into the buffer
          */
         @Override
-        public void nextTwoBytes(int[] data, boolean bigEndian) {
-            // Try to read sound data
-            int tmpRead = 0;
-            int numRead = 0;
-
-            try {
-                while (numRead < this.buf.length && tmpRead != -1) {
-                    tmpRead = this.data.read(this.buf, numRead, this.buf.length - numRead);
-                    numRead += tmpRead;
-                }
-            } catch (IOException e) {
-                // This shouldn't happen if the bytes were written correctly to
-                // the temp file, but this sound should now be invalid at least
-                this.position = this.numBytesPerChannel;
-                System.err.println("Failed reading bytes for stream sound");
-            }
-
-            // Copy the values into the caller buffer
-            if (bigEndian) {
-                // Left
-                data[0] = ((this.buf[0] << 8) | (this.buf[1] & 0xFF));
-                // Right
-                data[1] = ((this.buf[2] << 8) | (this.buf[3] & 0xFF));
-            } else {
-                // Left
-                data[0] = ((this.buf[1] << 8) | (this.buf[0] & 0xFF));
-                // Right
-                data[1] = ((this.buf[3] << 8) | (this.buf[2] & 0xFF));
-            }
+        public int nextFrames(short[] data, int numFrames) {
+            long framesAvailable = (this.numBytesPerChannel - this.position) / 2;
+            int frames = (numFrames < framesAvailable) ? numFrames : (int) framesAvailable;
+            int numRead = this.source.read(data, 0, frames);
+            this.position += numRead * 2;
 
-            // Increment the position appropriately
-            if (tmpRead == -1) {
+            if (numRead < frames && this.source.ended()) {
                 // Reached end of file in the middle of reading
                 this.position = this.numBytesPerChannel;
-            } else {
-                this.position += 2;
             }
+            return numRead;
         }
 
         /**
@@ -306,13 +384,7 @@ public final class StreamSound implements Sound {
         @Override
         public void dispose() {
             this.position = this.numBytesPerChannel;
-            try {
-                this.data.close();
-            } catch (IOException e) {
-                // Whatever... this shouldn't happen
-            }
-            this.buf = null;
-            this.skipBuf = null;
+            this.source.dispose();
         }
     }
 }
@@ -0,0 +1,88 @@
+/*
+ * Copyright (c) 2012, Finn Kuusisto
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *     Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *     
+ *     Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package tiny.engine.audio.internal;
+
+/**
+ * The StreamSource interface is how streaming references get at their sound
+ * data, as frames of interleaved left and right samples. Positions are in
+ * bytes of the stream file, 4 bytes per frame.
+ *
+ * @author Damian Strain
+ */
+interface StreamSource {
+
+    /**
+     * Continue reading from a new position.
+     *
+     * @param position byte index to continue from
+     */
+    public void seek(long position);
+
+    /**
+     * Set whether data should continue from the loop position after the end
+     * of the file.
+     *
+     * @param loop true if the data should loop
+     * @param loopPosition byte index to loop back to
+     * @return true if data past the end of the file was already read with the
+     * old settings, in which case the caller should seek to resync
+     */
+    public boolean setLoop(boolean loop, long loopPosition);
+
+    /**
+     * Read up to the specified number of frames into a block of interleaved
+     * left and right samples.
+     *
+     * @param data buffer to write the samples into
+     * @param offset the start index to write samples into
+     * @param numFrames the maximum number of frames to read
+     * @return number of frames actually read, fewer than asked if no more
+     * data is available yet
+     */
+    public int read(short[] data, int offset, int numFrames);
+
+    /**
+     * Skip up to the specified number of bytes.
+     *
+     * @param num number of bytes to skip
+     * @return number of bytes actually skipped
+     */
+    public long skip(long num);
+
+    /**
+     * Determine if no more data will be available without a seek.
+     *
+     * @return true if the data has run out
+     */
+    public boolean ended();
+
+    /**
+     * Does any cleanup necessary to dispose of resources in use by this
+     * StreamSource.
+     */
+    public void dispose();
+}
@@ -80,6 +80,9 @@ public final class UpdateRunner implements Runnable {
 
         // Keep running until told to stop
         while (this.running.get()) {
+            // Apply anything queued by the game since the last update
+            this.mixer.processCommands();
+
             // Check the time
             long currTime = System.nanoTime();
 
@@ -137,5 +140,8 @@ public final class UpdateRunner implements Runnable {
             } catch (InterruptedException e) {
             }
         }
+
+        // Apply anything queued on shutdown so references are disposed
+        this.mixer.processCommands();
     }
 }
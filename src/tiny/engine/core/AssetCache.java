@@ -0,0 +1,294 @@
+package tiny.engine.core;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import javax.imageio.ImageIO;
+import tiny.engine.audio.Music;
+import tiny.engine.audio.Sound;
+import tiny.engine.fileio.LoadFile;
+
+/**
+ * The AssetCache class keeps decoded images, sounds and music resident so they
+ * are not loaded again each time a screen is created. Assets are looked up by
+ * the same reference used with LoadFile and are reference counted: every get
+ * must be matched by a release once the asset is no longer needed, usually in
+ * GameScreen.dispose(). Released assets stay cached until together they go
+ * over the budget, then the least recently used are dropped first. Assets in
+ * use do not count towards the budget.
+ *
+ * @author Damian Strain
+ */
+public final class AssetCache {
+
+    /**
+     * The default number of bytes released assets may occupy.
+     */
+    public static final long DEFAULT_BUDGET = 64L * 1024 * 1024;
+
+    private final LoadFile loadFile;
+    private final GameAudio audio;
+    private final Map<String, Asset> assets;
+    private long budget;
+    private long size;
+    private long unusedSize;
+
+    /**
+     * Constructs a new asset cache loading through the given components, with
+     * the default budget.
+     *
+     * @param loadFile the file loader to find resources with
+     * @param audio the audio component to load sounds and music with
+     */
+    public AssetCache(LoadFile loadFile, GameAudio audio) {
+        this(loadFile, audio, DEFAULT_BUDGET);
+    }
+
+    /**
+     * Constructs a new asset cache loading through the given components.
+     *
+     * @param loadFile the file loader to find resources with
+     * @param audio the audio component to load sounds and music with
+     * @param budget the number of bytes released assets may occupy
+     */
+    public AssetCache(LoadFile loadFile, GameAudio audio, long budget) {
+        this.loadFile = loadFile;
+        this.audio = audio;
+        this.budget = budget;
+
+        // Access ordered, so iteration starts at the least recently used
+        assets = new LinkedHashMap<>(16, 0.75f, true);
+    }
+
+    /**
+     * Returns the image for the specified reference, loading it if it is not
+     * already cached.
+     *
+     * @param ref the reference to the image resource
+     * @return the image
+     */
+    public synchronized BufferedImage getImage(String ref) {
+        Asset asset = acquire(ref, BufferedImage.class);
+
+        if (asset == null) {
+            BufferedImage image;
+
+            try (InputStream in = loadFile.getResourceAsStream(ref)) {
+                image = ImageIO.read(in);
+            } catch (IOException e) {
+                throw new RuntimeException("Failed to load image: " + ref, e);
+            }
+
+            if (image == null) {
+                throw new RuntimeException("Unsupported image: " + ref);
+            }
+            asset = add(ref, image, sizeOf(image));
+        }
+        return (BufferedImage) asset.value;
+    }
+
+    /**
+     * Returns the Sound for the specified reference, loading it if it is not
+     * already cached.
+     *
+     * @param ref the reference to the Sound resource
+     * @return the Sound, null if it could not be loaded
+     */
+    public synchronized Sound getSound(String ref) {
+        Asset asset = acquire(ref, Sound.class);
+
+        if (asset == null) {
+            Sound sound = audio.newSound(loadFile.getResource(ref));
+
+            if (sound == null) {
+                return null;
+            }
+            asset = add(ref, sound, sound.getMemorySize());
+        }
+        return (Sound) asset.value;
+    }
+
+    /**
+     * Returns the Music for the specified reference, loading it if it is not
+     * already cached.
+     *
+     * @param ref the reference to the Music resource
+     * @return the Music, null if it could not be loaded
+     */
+    public synchronized Music getMusic(String ref) {
+        Asset asset = acquire(ref, Music.class);
+
+        if (asset == null) {
+            Music music = audio.newMusic(loadFile.getResource(ref));
+
+            if (music == null) {
+                return null;
+            }
+            asset = add(ref, music, music.getMemorySize());
+        }
+        return (Music) asset.value;
+    }
+
+    /**
+     * Releases an asset previously returned for the specified reference. Once
+     * every get has been released the asset may be evicted.
+     *
+     * @param ref the reference to the released asset
+     */
+    public synchronized void release(String ref) {
+        Asset asset = assets.get(ref);
+
+        if (asset == null || asset.refs <= 0) {
+            throw new IllegalStateException("Asset not in use: " + ref);
+        }
+        asset.refs--;
+        if (asset.refs == 0) {
+            unusedSize += asset.size;
+            evict(budget);
+        }
+    }
+
+    /**
+     * Evicts every asset that is no longer in use, regardless of the budget.
+     */
+    public synchronized void evictUnused() {
+        evict(0);
+    }
+
+    /**
+     * Returns the number of bytes released assets may occupy before they are
+     * evicted.
+     *
+     * @return the budget in bytes
+     */
+    public synchronized long getBudget() {
+        return budget;
+    }
+
+    /**
+     * Sets the number of bytes released assets may occupy before they are
+     * evicted. Assets in use are never evicted, so the cache can go over
+     * budget while they are held.
+     *
+     * @param budget the budget in bytes
+     */
+    public synchronized void setBudget(long budget) {
+        this.budget = budget;
+        evict(budget);
+    }
+
+    /**
+     * Returns the total size of all cached assets.
+     *
+     * @return the size in bytes
+     */
+    public synchronized long getSize() {
+        return size;
+    }
+
+    /**
+     * Returns the total size of the cached assets that are no longer in use.
+     * This is what the budget limits.
+     *
+     * @return the size in bytes
+     */
+    public synchronized long getUnusedSize() {
+        return unusedSize;
+    }
+
+    /**
+     * Looks up a cached asset and marks it as in use.
+     *
+     * @param ref the reference to the asset
+     * @param type the type of asset expected
+     * @return the cached asset, null if not cached
+     */
+    private Asset acquire(String ref, Class<?> type) {
+        Asset asset = assets.get(ref);
+
+        if (asset == null) {
+            return null;
+        }
+        if (!type.isInstance(asset.value)) {
+            throw new IllegalArgumentException("Resource is not a " + type.getSimpleName() + ": " + ref);
+        }
+        if (asset.refs == 0) {
+            unusedSize -= asset.size;
+        }
+        asset.refs++;
+        return asset;
+    }
+
+    /**
+     * Caches a newly loaded asset, marked as in use.
+     *
+     * @param ref the reference to the asset
+     * @param value the loaded asset
+     * @param assetSize the size of the asset in bytes
+     * @return the cached asset
+     */
+    private Asset add(String ref, Object value, long assetSize) {
+        Asset asset = new Asset(value, assetSize);
+        asset.refs = 1;
+        assets.put(ref, asset);
+        size += assetSize;
+        return asset;
+    }
+
+    /**
+     * Evicts the least recently used assets that are not in use until the
+     * rest of them fit the given limit.
+     *
+     * @param limit the size to evict down to
+     */
+    private void evict(long limit) {
+        Iterator<Asset> it = assets.values().iterator();
+
+        while (unusedSize > limit && it.hasNext()) {
+            Asset asset = it.next();
+
+            if (asset.refs == 0) {
+                it.remove();
+                size -= asset.size;
+                unusedSize -= asset.size;
+
+                // Audio is registered with the mixer until unloaded
+                if (asset.value instanceof Sound) {
+                    ((Sound) asset.value).unload();
+                } else if (asset.value instanceof Music) {
+                    ((Music) asset.value).unload();
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the approximate number of bytes used by an image's pixels.
+     *
+     * @param image the image to measure
+     * @return the size in bytes
+     */
+    private static long sizeOf(BufferedImage image) {
+        DataBuffer buffer = image.getRaster().getDataBuffer();
+        return (long) buffer.getSize() * buffer.getNumBanks() * DataBuffer.getDataTypeSize(buffer.getDataType()) / 8;
+    }
+
+    /**
+     * A cached asset and how many users it has.
+     */
+    private static final class Asset {
+
+        private final Object value;
+        private final long size;
+        private int refs;
+
+        private Asset(Object value, long size) {
+            this.value = value;
+            this.size = size;
+        }
+    }
+}
@@ -0,0 +1,313 @@
+package tiny.engine.core;
+
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.geom.AffineTransform;
+import java.util.List;
+import tiny.engine.entity.Broadphase;
+import tiny.engine.entity.Collidable;
+
+/**
+ * The Camera maps world coordinates to the screen. It looks at a point in the
+ * world, which appears at the centre of the view, and can zoom in or out and
+ * smoothly follow a target.
+ * <p/>
+ * Call update() once per game update, after moving things. The camera keeps
+ * its previous position, so rendering with the loop's interpolation value
+ * moves the view as smoothly as the sprites it follows. At render time, apply
+ * the camera to the Graphics context and draw only what cull() returns:
+ * <pre>
+ * camera.apply(g2d, interpolation);
+ * visible.clear();
+ * camera.cull(broadphase, interpolation, visible);
+ * </pre>
+ *
+ * @author Damian Strain
+ */
+public final class Camera {
+
+    private int viewWidth;
+    private int viewHeight;
+
+    private double x;
+    private double y;
+    private double zoom = 1.0;
+    private double prevX;
+    private double prevY;
+    private double prevZoom = 1.0;
+
+    private Collidable target = null;
+    private double followSpeed = 1.0;       // Fraction of the distance covered per update
+    private Rectangle limits = null;        // World area the view must stay inside
+
+    private final Rectangle view = new Rectangle();
+
+    /**
+     * Constructs a new camera looking at the world origin.
+     *
+     * @param viewWidth the width of the view on screen, in pixels
+     * @param viewHeight the height of the view on screen, in pixels
+     */
+    public Camera(int viewWidth, int viewHeight) {
+        setViewSize(viewWidth, viewHeight);
+    }
+
+    /**
+     * Sets the size of the view on screen, usually the canvas size.
+     *
+     * @param viewWidth the width of the view, in pixels
+     * @param viewHeight the height of the view, in pixels
+     */
+    public void setViewSize(int viewWidth, int viewHeight) {
+        this.viewWidth = viewWidth;
+        this.viewHeight = viewHeight;
+    }
+
+    /**
+     * Moves the camera to look at a point, without interpolating from where
+     * it was.
+     *
+     * @param x the world x position to centre the view on
+     * @param y the world y position to centre the view on
+     */
+    public void setPosition(double x, double y) {
+        this.x = x;
+        this.y = y;
+        clamp();
+        prevX = this.x;
+        prevY = this.y;
+    }
+
+    /**
+     * Moves the camera by an amount. The move is interpolated like any other.
+     *
+     * @param dx the distance to move along x, in world units
+     * @param dy the distance to move along y, in world units
+     */
+    public void move(double dx, double dy) {
+        x += dx;
+        y += dy;
+        clamp();
+    }
+
+    /**
+     * @return the world x position at the centre of the view.
+     */
+    public double getX() {
+        return x;
+    }
+
+    /**
+     * @return the world y position at the centre of the view.
+     */
+    public double getY() {
+        return y;
+    }
+
+    /**
+     * @return the zoom, where 2 draws everything at twice its size.
+     */
+    public double getZoom() {
+        return zoom;
+    }
+
+    /**
+     * Sets the zoom. The change is interpolated like a move.
+     *
+     * @param zoom the new zoom, greater than zero
+     */
+    public void setZoom(double zoom) {
+        if (zoom > 0) {
+            this.zoom = zoom;
+            clamp();
+        }
+    }
+
+    /**
+     * Makes the camera follow a target, keeping the centre of its bounds at
+     * the centre of the view.
+     *
+     * @param target the target to follow, or null to stop following
+     * @param followSpeed the fraction of the distance to the target covered
+     * each update, 1 to stay locked on
+     */
+    public void follow(Collidable target, double followSpeed) {
+        this.target = target;
+        this.followSpeed = Math.max(0.0, Math.min(1.0, followSpeed));
+    }
+
+    /**
+     * Keeps the view inside an area of the world. If the view is bigger than
+     * the area, it is centred on it.
+     *
+     * @param limits the world area, or null for no limits
+     */
+    public void setLimits(Rectangle limits) {
+        this.limits = (limits != null) ? new Rectangle(limits) : null;
+        clamp();
+    }
+
+    /**
+     * Advances the camera by one update, remembering where it was for
+     * interpolation and moving towards the target if following one.
+     */
+    public void update() {
+        prevX = x;
+        prevY = y;
+        prevZoom = zoom;
+
+        if (target != null) {
+            Rectangle bounds = target.getBounds();
+            x += (bounds.getCenterX() - x) * followSpeed;
+            y += (bounds.getCenterY() - y) * followSpeed;
+            clamp();
+        }
+    }
+
+    /**
+     * Transforms a Graphics context so that drawing at world coordinates
+     * appears in the right place on screen.
+     *
+     * @param g2d the Graphics context to transform
+     * @param interpolation the interpolation between the previous and current
+     * state
+     */
+    public void apply(Graphics2D g2d, float interpolation) {
+        double ix = lerp(prevX, x, interpolation);
+        double iy = lerp(prevY, y, interpolation);
+        double iz = lerp(prevZoom, zoom, interpolation);
+
+        g2d.translate(viewWidth / 2.0, viewHeight / 2.0);
+        g2d.scale(iz, iz);
+        g2d.translate(-ix, -iy);
+    }
+
+    /**
+     * Returns the world to screen transform.
+     *
+     * @param interpolation the interpolation between the previous and current
+     * state
+     * @return a new transform
+     */
+    public AffineTransform getTransform(float interpolation) {
+        double ix = lerp(prevX, x, interpolation);
+        double iy = lerp(prevY, y, interpolation);
+        double iz = lerp(prevZoom, zoom, interpolation);
+
+        AffineTransform transform = AffineTransform.getTranslateInstance(viewWidth / 2.0, viewHeight / 2.0);
+        transform.scale(iz, iz);
+        transform.translate(-ix, -iy);
+        return transform;
+    }
+
+    /**
+     * Returns the screen x position of a world x position.
+     *
+     * @param worldX the world x position
+     * @return the screen x position
+     */
+    public double worldToScreenX(double worldX) {
+        return (worldX - x) * zoom + viewWidth / 2.0;
+    }
+
+    /**
+     * Returns the screen y position of a world y position.
+     *
+     * @param worldY the world y position
+     * @return the screen y position
+     */
+    public double worldToScreenY(double worldY) {
+        return (worldY - y) * zoom + viewHeight / 2.0;
+    }
+
+    /**
+     * Returns the world x position under a screen x position, such as the
+     * mouse position.
+     *
+     * @param screenX the screen x position
+     * @return the world x position
+     */
+    public double screenToWorldX(double screenX) {
+        return (screenX - viewWidth / 2.0) / zoom + x;
+    }
+
+    /**
+     * Returns the world y position under a screen y position, such as the
+     * mouse position.
+     *
+     * @param screenY the screen y position
+     * @return the world y position
+     */
+    public double screenToWorldY(double screenY) {
+        return (screenY - viewHeight / 2.0) / zoom + y;
+    }
+
+    /**
+     * Returns the area of the world in view, rounded out to whole pixels.
+     * The same rectangle is reused by every call.
+     *
+     * @param interpolation the interpolation between the previous and current
+     * state
+     * @return the visible world area
+     */
+    public Rectangle getViewBounds(float interpolation) {
+        double ix = lerp(prevX, x, interpolation);
+        double iy = lerp(prevY, y, interpolation);
+        double iz = lerp(prevZoom, zoom, interpolation);
+        double halfWidth = viewWidth / (2.0 * iz);
+        double halfHeight = viewHeight / (2.0 * iz);
+
+        int left = (int) Math.floor(ix - halfWidth);
+        int top = (int) Math.floor(iy - halfHeight);
+        view.setBounds(left, top, (int) Math.ceil(ix + halfWidth) - left, (int) Math.ceil(iy + halfHeight) - top);
+        return view;
+    }
+
+    /**
+     * Returns whether an area of the world is at least partly in view.
+     *
+     * @param bounds the world area
+     * @param interpolation the interpolation between the previous and current
+     * state
+     * @return true if the area is visible
+     */
+    public boolean isVisible(Rectangle bounds, float interpolation) {
+        return getViewBounds(interpolation).intersects(bounds);
+    }
+
+    /**
+     * Adds every object in a broadphase that is in view to a list, using
+     * the broadphase to skip everything that is not.
+     *
+     * @param broadphase the broadphase holding the objects
+     * @param interpolation the interpolation between the previous and current
+     * state
+     * @param out the list to add the visible objects to
+     * @return the number of objects added
+     */
+    public int cull(Broadphase broadphase, float interpolation, List<Collidable> out) {
+        return broadphase.query(getViewBounds(interpolation), out);
+    }
+
+    /**
+     * Keeps the view inside the limits, if there are any.
+     */
+    private void clamp() {
+        if (limits == null) {
+            return;
+        }
+        x = clamp(x, viewWidth / (2.0 * zoom), limits.getMinX(), limits.getMaxX());
+        y = clamp(y, viewHeight / (2.0 * zoom), limits.getMinY(), limits.getMaxY());
+    }
+
+    private static double clamp(double centre, double half, double min, double max) {
+        if (max - min <= half * 2) {
+            return (min + max) / 2;
+        }
+        return Math.max(min + half, Math.min(max - half, centre));
+    }
+
+    private static double lerp(double from, double to, float t) {
+        return from + (to - from) * t;
+    }
+}
@@ -0,0 +1,99 @@
+package tiny.engine.core;
+
+import java.awt.Rectangle;
+
+/**
+ * The DirtyRegions class collects the areas of a screen that have changed
+ * since the last frame. When dirty rendering is switched on in the GameLoop,
+ * only the union of these areas is redrawn into a back buffer that is kept
+ * between frames, and a frame where nothing changed is not redrawn at all.
+ * <p/>
+ * A moving sprite should mark both the area it left and the area it moved
+ * to, for example by adding its bounds before and after it moves. If the
+ * screen draws interpolated positions, the sprite may have been drawn
+ * anywhere between its last two positions, so it should also mark its bounds
+ * from the update before, not just the bounds it is moving from.
+ * <p/>
+ * Dirty rendering is not used by the pipelined loop, where these areas are
+ * ignored.
+ *
+ * @author Damian Strain
+ */
+public final class DirtyRegions {
+
+    private int minX = Integer.MAX_VALUE;
+    private int minY = Integer.MAX_VALUE;
+    private int maxX = Integer.MIN_VALUE;
+    private int maxY = Integer.MIN_VALUE;
+    private boolean all = false;
+
+    /**
+     * Marks an area as changed.
+     *
+     * @param x the x position of the area
+     * @param y the y position of the area
+     * @param width the width of the area
+     * @param height the height of the area
+     */
+    public synchronized void add(int x, int y, int width, int height) {
+        if (width <= 0 || height <= 0) {
+            return;
+        }
+        minX = Math.min(minX, x);
+        minY = Math.min(minY, y);
+        maxX = Math.max(maxX, x + width);
+        maxY = Math.max(maxY, y + height);
+    }
+
+    /**
+     * Marks an area as changed.
+     *
+     * @param area the area
+     */
+    public void add(Rectangle area) {
+        add(area.x, area.y, area.width, area.height);
+    }
+
+    /**
+     * Marks the whole screen as changed.
+     */
+    public synchronized void addAll() {
+        all = true;
+    }
+
+    /**
+     * Returns whether anything has changed.
+     *
+     * @return true if nothing has been marked since the last take
+     */
+    public synchronized boolean isEmpty() {
+        return !all && minX >= maxX;
+    }
+
+    /**
+     * Moves the changed area into a rectangle and clears it.
+     *
+     * @param area set to the bounds of every area marked, or to the screen
+     * size if addAll() was called
+     * @param width the width of the screen
+     * @param height the height of the screen
+     * @return false if nothing has changed
+     */
+    synchronized boolean take(Rectangle area, int width, int height) {
+        if (isEmpty()) {
+            return false;
+        }
+
+        if (all) {
+            area.setBounds(0, 0, width, height);
+        } else {
+            area.setBounds(minX, minY, maxX - minX, maxY - minY);
+        }
+        minX = Integer.MAX_VALUE;
+        minY = Integer.MAX_VALUE;
+        maxX = Integer.MIN_VALUE;
+        maxY = Integer.MIN_VALUE;
+        all = false;
+        return true;
+    }
+}
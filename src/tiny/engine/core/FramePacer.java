@@ -0,0 +1,222 @@
+package tiny.engine.core;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * The FramePacer waits for frame deadlines with sub-millisecond accuracy. Most
+ * of the wait is spent parked, and the last stretch is spun so the thread
+ * wakes as close to the deadline as possible. The length of the spin window
+ * is calibrated against the platform's measured sleep error.
+ * <p/>
+ * The FramePacer also records how far each wake-up landed from its deadline,
+ * so the jitter of the loop can be checked against a target. The statistics
+ * are not synchronized and should be read from the game thread.
+ *
+ * @author Damian Strain
+ */
+public final class FramePacer {
+
+    public static final long DEFAULT_TOLERANCE = 200000L;      // 0.2 ms
+
+    private static final int CALIBRATION_SAMPLES = 20;
+    private static final long CALIBRATION_SLEEP = 1000000L;     // 1 ms
+    private static final long MIN_SPIN_WINDOW = 50000L;         // 0.05 ms
+    private static final long MAX_SPIN_WINDOW = 4000000L;       // 4 ms
+
+    private long spinWindow = MAX_SPIN_WINDOW;
+    private long sleepError = 0;
+    private long tolerance = DEFAULT_TOLERANCE;
+
+    private long samples;
+    private long withinTolerance;
+    private long overruns;
+    private long maxError;
+    private double errorSum;
+    private double errorSquareSum;
+
+    /**
+     * Measures how late the platform wakes a parked thread and sizes the spin
+     * window to cover the worst case seen. This blocks for roughly 20 ms and
+     * should be called once, on the thread that will be paced.
+     */
+    public void calibrate() {
+        long worst = 0;
+        for (int i = 0; i < CALIBRATION_SAMPLES; i++) {
+            long start = System.nanoTime();
+            LockSupport.parkNanos(CALIBRATION_SLEEP);
+            long overshoot = System.nanoTime() - start - CALIBRATION_SLEEP;
+            if (overshoot > worst) {
+                worst = overshoot;
+            }
+        }
+        sleepError = worst;
+        spinWindow = Math.max(MIN_SPIN_WINDOW, Math.min(MAX_SPIN_WINDOW, worst + worst / 2));
+    }
+
+    /**
+     * Waits until System.nanoTime() reaches the deadline. If the deadline has
+     * already passed, this returns immediately and counts an overrun.
+     *
+     * @param deadline the time to wake at, in nanoseconds
+     * @return the time this method returned, in nanoseconds
+     */
+    public long sleepUntil(long deadline) {
+        long now = System.nanoTime();
+        if (now >= deadline) {
+            overruns++;
+            return now;
+        }
+
+        // Park coarsely while the deadline is outside the spin window
+        while (deadline - now > spinWindow) {
+            LockSupport.parkNanos(deadline - now - spinWindow);
+            now = System.nanoTime();
+        }
+
+        // Spin out the rest
+        while (now < deadline) {
+            now = System.nanoTime();
+        }
+        record(now - deadline);
+        return now;
+    }
+
+    /**
+     * Adds the error of one wake-up to the jitter statistics.
+     *
+     * @param error nanoseconds the wake-up landed after its deadline
+     */
+    private void record(long error) {
+        samples++;
+        errorSum += error;
+        errorSquareSum += (double) error * error;
+        if (error > maxError) {
+            maxError = error;
+        }
+        if (error <= tolerance) {
+            withinTolerance++;
+        }
+    }
+
+    /**
+     * Clears the jitter statistics.
+     */
+    public void resetStats() {
+        samples = 0;
+        withinTolerance = 0;
+        overruns = 0;
+        maxError = 0;
+        errorSum = 0;
+        errorSquareSum = 0;
+    }
+
+    /**
+     * Returns the worst sleep overshoot measured by calibrate().
+     *
+     * @return the platform sleep error in nanoseconds
+     */
+    public long getSleepError() {
+        return sleepError;
+    }
+
+    /**
+     * Returns how long before a deadline the pacer stops parking and starts
+     * spinning.
+     *
+     * @return the spin window in nanoseconds
+     */
+    public long getSpinWindow() {
+        return spinWindow;
+    }
+
+    /**
+     * Sets the spin window directly, overriding calibration. A wider window is
+     * more accurate but burns more CPU.
+     *
+     * @param spinWindow the spin window in nanoseconds
+     */
+    public void setSpinWindow(long spinWindow) {
+        if (spinWindow >= 0) {
+            this.spinWindow = spinWindow;
+        }
+    }
+
+    /**
+     * Returns the error a wake-up may have and still count as on time.
+     *
+     * @return the tolerance in nanoseconds
+     */
+    public long getTolerance() {
+        return tolerance;
+    }
+
+    /**
+     * Sets the error a wake-up may have and still count as on time.
+     *
+     * @param tolerance the tolerance in nanoseconds
+     */
+    public void setTolerance(long tolerance) {
+        if (tolerance >= 0) {
+            this.tolerance = tolerance;
+        }
+    }
+
+    /**
+     * Returns the number of wake-ups recorded since the last reset.
+     *
+     * @return the number of samples
+     */
+    public long getSamples() {
+        return samples;
+    }
+
+    /**
+     * Returns the number of frames that ran past their deadline, so there was
+     * nothing to wait for.
+     *
+     * @return the number of overruns
+     */
+    public long getOverruns() {
+        return overruns;
+    }
+
+    /**
+     * Returns the mean wake-up error.
+     *
+     * @return the mean error in nanoseconds
+     */
+    public double getMeanError() {
+        return (samples > 0) ? errorSum / samples : 0;
+    }
+
+    /**
+     * Returns the standard deviation of the wake-up error.
+     *
+     * @return the standard deviation in nanoseconds
+     */
+    public double getStdDeviation() {
+        if (samples == 0) {
+            return 0;
+        }
+        double mean = errorSum / samples;
+        return Math.sqrt(Math.max(0, errorSquareSum / samples - mean * mean));
+    }
+
+    /**
+     * Returns the largest wake-up error.
+     *
+     * @return the maximum error in nanoseconds
+     */
+    public long getMaxError() {
+        return maxError;
+    }
+
+    /**
+     * Returns the fraction of wake-ups that landed within the tolerance.
+     *
+     * @return a value between 0 and 1
+     */
+    public double getOnTimeRatio() {
+        return (samples > 0) ? (double) withinTolerance / samples : 1;
+    }
+}
@@ -12,6 +12,7 @@ public abstract class Game {
     private final GameAudio audio;
     private final GameInput input;
     private final GameFileIO fileIO;
+    private final AssetCache assets;
     private GameScreen screen = null;
 
     /**
@@ -23,6 +24,7 @@ public abstract class Game {
         audio = new GameAudio();
         input = new GameInput();
         fileIO = new GameFileIO();
+        assets = new AssetCache(fileIO.loadFile(), audio);
     }
 
     /**
@@ -83,6 +85,21 @@ public abstract class Game {
         screen = getStartScreen();
     }
 
+    /**
+     * Initialises the game to run without a window, such as on a server or in
+     * a batch of replays. The audio component is not initialised and no input
+     * listeners are added, though input can still be replayed through
+     * GameInput.
+     *
+     * @param width the width of the offscreen image frames are drawn into, or
+     * 0 to not draw frames
+     * @param height the height of the offscreen image, or 0 to not draw frames
+     */
+    public final void initHeadless(int width, int height) {
+        loop.initHeadless(this, width, height);
+        screen = getStartScreen();
+    }
+
     /**
      * Starts the game.
      */
@@ -132,6 +149,16 @@ public abstract class Game {
         return gui;
     }
 
+    /**
+     * Returns a reference to the game loop. Use this component to set the frame
+     * and update rates, and to inspect frame pacing.
+     *
+     * @return a game loop reference
+     */
+    public final GameLoop getLoop() {
+        return loop;
+    }
+
     /**
      * Returns a reference to the game audio component. Use this component to
      * load audio resources and manage playback.
@@ -162,6 +189,17 @@ public abstract class Game {
         return fileIO;
     }
 
+    /**
+     * Returns a reference to the game asset cache. Use this to get images,
+     * sounds and music that should stay loaded between screens, and release
+     * them when a screen is disposed.
+     *
+     * @return the asset cache reference
+     */
+    public final AssetCache getAssets() {
+        return assets;
+    }
+
     /**
      * Sets the current screen to the specified screen and renders it.
      *
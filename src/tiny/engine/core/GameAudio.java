@@ -1,10 +1,13 @@
 package tiny.engine.core;
 
 import tiny.engine.audio.Audio;
+import tiny.engine.audio.AudioBatch;
 import tiny.engine.audio.Music;
 import tiny.engine.audio.Sound;
 
+import java.io.File;
 import java.net.URL;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * The GameAudio class encapsulates and provides access to the underlying audio
@@ -52,6 +55,47 @@ public final class GameAudio {
         return audio.loadMusic(url);
     }
 
+    /**
+     * Returns a Sound resource for the specified URL, decoded on a worker
+     * thread.
+     *
+     * @param url the URL for the Sound resource
+     * @return a future for the new Sound resource
+     */
+    public CompletableFuture<Sound> newSoundAsync(URL url) {
+        return audio.loadSoundAsync(url);
+    }
+
+    /**
+     * Returns a Music resource for the specified URL, decoded on a worker
+     * thread.
+     *
+     * @param url the URL for the Music resource
+     * @return a future for the new Music resource
+     */
+    public CompletableFuture<Music> newMusicAsync(URL url) {
+        return audio.loadMusicAsync(url);
+    }
+
+    /**
+     * Returns a new batch for loading many audio resources in parallel while
+     * tracking their progress.
+     *
+     * @return a new, empty batch
+     */
+    public AudioBatch newBatch() {
+        return audio.newBatch();
+    }
+
+    /**
+     * Sets a directory to cache decoded audio in, so later runs load faster.
+     *
+     * @param directory the cache directory, null to stop caching
+     */
+    public void setCacheDirectory(File directory) {
+        audio.setCacheDirectory(directory);
+    }
+
     /**
      * Shuts down the Audio system, freeing up resources.
      */
@@ -1,13 +1,18 @@
 package tiny.engine.core;
 
+import tiny.engine.input.InputRecorder;
+import tiny.engine.input.InputReplay;
 import tiny.engine.input.Keyboard;
 import tiny.engine.input.Mouse;
 import tiny.engine.input.MouseWheel;
 
+import java.io.InputStream;
+import java.io.OutputStream;
+
 /**
  * The GameInput class encapsulates and provides access to the underlying input
  * component. It provides methods to returns instances of the keyboard, mouse or
- * mouse wheel.
+ * mouse wheel. Input can also be recorded to a log and replayed from one.
  *
  * @author Damian Strain
  */
@@ -16,6 +21,8 @@ public final class GameInput {
     private final Keyboard keyboard;
     private final Mouse mouse;
     private final MouseWheel mouseWheel;
+    private InputRecorder recorder;
+    private InputReplay replay;
 
     /**
      * Constructs and initialises the input component.
@@ -52,4 +59,80 @@ public final class GameInput {
     public MouseWheel getMouseWheel() {
         return mouseWheel;
     }
+
+    /**
+     * Updates the keyboard, mouse and mouse wheel, processing the input queued
+     * since the last update. If a replay is running, its next tick is queued
+     * first, and if recording, the processed input is written to the log.
+     */
+    public void update() {
+        if (replay != null && !replay.nextTick(keyboard, mouse, mouseWheel)) {
+            stopReplay();
+        }
+        keyboard.update();
+        mouse.update();
+        mouseWheel.update();
+        if (recorder != null) {
+            recorder.endTick();
+        }
+    }
+
+    /**
+     * Starts recording input to a log, stopping any previous recording.
+     *
+     * @param out the stream to write the log to
+     */
+    public void startRecording(OutputStream out) {
+        stopRecording();
+        recorder = new InputRecorder(out, keyboard, mouse, mouseWheel);
+    }
+
+    /**
+     * Stops recording input and closes the log.
+     */
+    public void stopRecording() {
+        if (recorder != null) {
+            recorder.close();
+            recorder = null;
+        }
+    }
+
+    /**
+     * Returns whether input is being recorded.
+     *
+     * @return true if recording, false otherwise
+     */
+    public boolean isRecording() {
+        return recorder != null;
+    }
+
+    /**
+     * Starts replaying input from a log, one recorded tick per update. The
+     * replay stops by itself when the log ends.
+     *
+     * @param in the stream to read the log from
+     */
+    public void startReplay(InputStream in) {
+        stopReplay();
+        replay = new InputReplay(in);
+    }
+
+    /**
+     * Stops replaying input and closes the log.
+     */
+    public void stopReplay() {
+        if (replay != null) {
+            replay.close();
+            replay = null;
+        }
+    }
+
+    /**
+     * Returns whether input is being replayed.
+     *
+     * @return true if replaying, false otherwise
+     */
+    public boolean isReplaying() {
+        return replay != null;
+    }
 }
@@ -5,6 +5,7 @@ import tiny.engine.utils.GraphicsUtils;
 
 import java.awt.*;
 import java.awt.image.BufferStrategy;
+import java.awt.image.BufferedImage;
 
 /**
  * @author Damian Strain
@@ -24,6 +25,9 @@ public final class GameLoop implements Runnable {
     private volatile boolean running = false;   // Control of the game
     private volatile boolean paused = false;   // Control of pausing
     private volatile boolean isFixedTimeStep = true;    // Choose loop type (fixed/variable)
+    private volatile boolean isPipelined = false;       // Update and render on separate threads
+    private volatile boolean isDirtyRendering = false;  // Only redraw areas that changed
+    private volatile boolean isHeadless = false;        // Run without a window
 
     private volatile boolean debug = true;              // Display debug info
 
@@ -32,7 +36,21 @@ public final class GameLoop implements Runnable {
 
     private Thread animator = null;             // The main game thread
     private BufferStrategy strategy = null;             // Used for double buffering and page flipping
+    private BufferedImage backBuffer = null;            // Kept between frames for dirty rendering
+    private GameScreen backBufferScreen = null;         // The screen last drawn to the back buffer
+    private final Rectangle dirtyArea = new Rectangle();
     private Game game = null;
+    private final FramePacer pacer = new FramePacer();     // Waits out the time between frames
+    private final FramePacer updatePacer = new FramePacer();   // Waits between updates when pipelined
+    private BufferedImage headlessImage = null;         // Render target when headless, may be null
+    private long tickLimit = 0;                         // Headless ticks to run, 0 for no limit
+
+    // Update timing, read from the game thread or once the loop has stopped
+    private long ticks;
+    private long tickTimeSum;
+    private long maxTickTime;
+    private long tickStartTime;
+    private long tickEndTime;
 
     /**
      * Initialises the GameLoop and attempts to set the frame rate to the
@@ -59,6 +77,29 @@ public final class GameLoop implements Runnable {
         this.game.getGui().getWindow().getCanvas().addMouseWheelListener(this.game.getInput().getMouseWheel());
     }
 
+    /**
+     * Initialises the GameLoop to run without a window, for servers, bots and
+     * batch runs of replays. No input listeners are added and nothing is
+     * shown. Frames are drawn into an offscreen image of the given size, or
+     * not at all if the size is 0.
+     * <p/>
+     * The update and frame rates are left as they are, and both default to 0.
+     * An update rate of 0 runs updates as fast as possible, with game time
+     * advancing at the default 30ups. Renders follow the game time rather
+     * than the clock, so a frame rate of 0 draws no frames.
+     *
+     * @param game the current game
+     * @param width the width of the offscreen image, or 0 for none
+     * @param height the height of the offscreen image, or 0 for none
+     */
+    public void initHeadless(Game game, int width, int height) {
+        this.game = game;
+        isHeadless = true;
+        if (width > 0 && height > 0) {
+            headlessImage = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        }
+    }
+
     /**
      * Starts the game by initialising the game thread and calling it's start
      * method.
@@ -141,7 +182,7 @@ public final class GameLoop implements Runnable {
      * @param newGameHz The new update rate
      */
     public void setUpdateRate(int newGameHz) {
-        if (newGameHz >= 0 && isFixedTimeStep) {
+        if (newGameHz >= 0 && (isFixedTimeStep || isHeadless)) {
             targetGameUps = newGameHz;
         }
     }
@@ -171,6 +212,159 @@ public final class GameLoop implements Runnable {
         return isFixedTimeStep;
     }
 
+    /**
+     * This method sets whether the fixed time step loop runs updates and
+     * renders on separate threads. When pipelined, the update thread saves a
+     * snapshot of the screen after each update and the render thread draws the
+     * latest snapshot at the frame rate, so a slow render no longer delays the
+     * next update. Screens need to implement createRenderState,
+     * saveRenderState and render(Graphics2D, RenderState, float) to be drawn
+     * safely.
+     * <p/>
+     * This has no effect on the variable time step loop, and should be set
+     * before startGame is called, otherwise the default is False.
+     *
+     * @param isPipelined True to update and render on separate threads
+     */
+    public void setPipelined(boolean isPipelined) {
+        this.isPipelined = isPipelined;
+    }
+
+    /**
+     * Returns whether the fixed time step loop runs updates and renders on
+     * separate threads.
+     *
+     * @return True if pipelined, False otherwise
+     */
+    public boolean isPipelined() {
+        return isPipelined;
+    }
+
+    /**
+     * This method sets whether only the changed areas of the screen are
+     * redrawn. Screens report their changes through
+     * GameScreen.getDirtyRegions(), and the loop redraws the union of those
+     * areas into a back buffer kept between frames, then copies it to the
+     * screen. Frames where nothing changed are skipped. The whole screen is
+     * redrawn when the screen changes or the canvas is resized.
+     * <p/>
+     * This suits screens that mostly stand still, such as menus and board
+     * games. It is ignored by the pipelined loop, since the render thread
+     * could take an area before the snapshot that changed it is published.
+     * The default is False.
+     *
+     * @param isDirtyRendering True to only redraw changed areas
+     */
+    public void setDirtyRendering(boolean isDirtyRendering) {
+        this.isDirtyRendering = isDirtyRendering;
+    }
+
+    /**
+     * Returns whether only the changed areas of the screen are redrawn.
+     *
+     * @return True if dirty rendering is on, False otherwise
+     */
+    public boolean isDirtyRendering() {
+        return isDirtyRendering;
+    }
+
+    /**
+     * Returns whether the game is running without a window.
+     *
+     * @return True if headless, False otherwise
+     */
+    public boolean isHeadless() {
+        return isHeadless;
+    }
+
+    /**
+     * Returns the offscreen image frames are drawn into when headless.
+     *
+     * @return the offscreen image, or null if headless frames are not drawn
+     */
+    public BufferedImage getHeadlessImage() {
+        return headlessImage;
+    }
+
+    /**
+     * Sets the number of updates the headless loop runs before stopping by
+     * itself, such as the length of a replay. Calling run() directly then
+     * runs a whole session on the calling thread.
+     *
+     * @param tickLimit the number of updates to run, or 0 for no limit
+     */
+    public void setTickLimit(long tickLimit) {
+        if (tickLimit >= 0) {
+            this.tickLimit = tickLimit;
+        }
+    }
+
+    /**
+     * Returns the number of updates the headless loop runs before stopping.
+     *
+     * @return the tick limit, or 0 for no limit
+     */
+    public long getTickLimit() {
+        return tickLimit;
+    }
+
+    /**
+     * Returns the number of updates run since the last reset.
+     *
+     * @return the number of ticks
+     */
+    public long getTicks() {
+        return ticks;
+    }
+
+    /**
+     * Returns the mean time spent in each update, including input.
+     *
+     * @return the mean tick time in nanoseconds
+     */
+    public double getMeanTickTime() {
+        return (ticks > 0) ? (double) tickTimeSum / ticks : 0;
+    }
+
+    /**
+     * Returns the longest time spent in one update.
+     *
+     * @return the maximum tick time in nanoseconds
+     */
+    public long getMaxTickTime() {
+        return maxTickTime;
+    }
+
+    /**
+     * Returns the measured number of updates per second, from the first to
+     * the last update since the last reset.
+     *
+     * @return the measured update rate
+     */
+    public double getMeasuredUpdateRate() {
+        long elapsed = tickEndTime - tickStartTime;
+        return (ticks > 0 && elapsed > 0) ? (double) ticks * NS_TO_SEC / elapsed : 0;
+    }
+
+    /**
+     * Clears the update timing statistics.
+     */
+    public void resetTickStats() {
+        ticks = 0;
+        tickTimeSum = 0;
+        maxTickTime = 0;
+    }
+
+    /**
+     * Returns the frame pacer used to wait between frames. Its statistics show
+     * how closely the loop hits its target frame times.
+     *
+     * @return the frame pacer
+     */
+    public FramePacer getPacer() {
+        return pacer;
+    }
+
     /**
      * Returns whether the game is currently running or not.
      *
@@ -191,10 +385,16 @@ public final class GameLoop implements Runnable {
 
     @Override
     public void run() {
+        if (isHeadless) {
+            runHeadless();
+            return;
+        }
         try {
             loopInit();// initialise the loop
 
-            if (isFixedTimeStep) {
+            if (isFixedTimeStep && isPipelined) {
+                pipelinedTimeStep();
+            } else if (isFixedTimeStep) {
                 fixedTimeStep();
             } else {
                 variableTimeStep();
@@ -206,6 +406,21 @@ public final class GameLoop implements Runnable {
         }
     }
 
+    /**
+     * Runs the headless loop. Unlike the windowed loops, this does not exit
+     * the JVM when it stops, so batch runs can start another game afterwards.
+     */
+    private void runHeadless() {
+        running = true;
+        try {
+            headlessTimeStep();
+        } catch (Exception e) {
+            e.printStackTrace();// Delete in production
+        } finally {
+            running = false;
+        }
+    }
+
     /**
      * Initialises the game loop by requesting focus in the window, creating the
      * buffer strategy, and setting the running flag to true.
@@ -216,6 +431,7 @@ public final class GameLoop implements Runnable {
             game.getGui().getWindow().getCanvas().createBufferStrategy(NUM_BUFFERS);
             strategy = game.getGui().getWindow().getCanvas().getBufferStrategy();
         }
+        pacer.calibrate();
         running = true;
     }
 
@@ -232,18 +448,18 @@ public final class GameLoop implements Runnable {
      * @since Version 1.0
      */
     private void fixedTimeStep() {
-        double timeBetweenUpdates = NS_TO_SEC / targetGameUps;
-        double timeBetweenRenders = NS_TO_SEC / targetGameFps;
+        long timeBetweenUpdates = NS_TO_SEC / targetGameUps;
+        long timeBetweenRenders = NS_TO_SEC / targetGameFps;
 
-        double lastUpdateTime = System.nanoTime();
-        double lastRenderTime = System.nanoTime();
+        long lastUpdateTime = System.nanoTime();
+        long lastRenderTime = lastUpdateTime;
 
         while (running) {
-            double now = System.nanoTime();
+            long now = System.nanoTime();
             int updateCount = 0;
 
             // Do as many game updates as we need to, potentially playing catchup
-            while (now - lastUpdateTime > timeBetweenUpdates && updateCount < MAX_UPDATES) {
+            while (now - lastUpdateTime >= timeBetweenUpdates && updateCount < MAX_UPDATES) {
                 update(0);
                 lastUpdateTime += timeBetweenUpdates;
                 updateCount++;
@@ -259,30 +475,178 @@ public final class GameLoop implements Runnable {
             }
 
             // Calculate interpolation and render
-            float interpolation = Math.min(1.0f, (float) ((now - lastUpdateTime) / timeBetweenUpdates));
+            float interpolation = Math.min(1.0f, (float) (now - lastUpdateTime) / timeBetweenUpdates);
             render(interpolation);
             lastRenderTime = now;
 
-            // Yield until it has been at least the target time between renders. This saves the CPU from hogging
-            while (now - lastRenderTime < timeBetweenRenders && now - lastUpdateTime < timeBetweenUpdates) {
-                Thread.yield();
-
-                /**
-                 * This stops the app from consuming all your CPU. It makes this
-                 * slightly less accurate, but is worth it. You can remove this
-                 * line and it will still work (better), your CPU just climbs on
-                 * certain OSes.
-                 *
-                 * FYI on some OS's this can cause pretty bad stuttering. Scroll
-                 * down and have a look at different peoples' solutions to this.
-                 */
-                try {
-                    Thread.sleep(1);
-                } catch (Exception e) {
-                    e.printStackTrace();
+            /**
+             * Wait until the next render or update is due, whichever comes
+             * first. The pacer parks for most of the wait and spins the last
+             * part, so we wake within a fraction of a millisecond without
+             * hogging the CPU.
+             */
+            pacer.sleepUntil(Math.min(lastRenderTime + timeBetweenRenders, lastUpdateTime + timeBetweenUpdates));
+        }
+    }
+
+    /**
+     * The pipelined time step loop runs the fixed time step updates on this
+     * thread and renders on a second thread.
+     * <p/>
+     * After each batch of updates, the current screen is copied into a
+     * snapshot and handed to the render thread through a triple buffer. The
+     * render thread always draws the newest snapshot, interpolated by how much
+     * time has passed since it was taken. Neither thread ever waits for the
+     * other, so updates stay on their fixed schedule however long a render
+     * takes.
+     *
+     * @throws InterruptedException if interrupted while waiting for the render
+     * thread to finish
+     */
+    private void pipelinedTimeStep() throws InterruptedException {
+        final long timeBetweenUpdates = NS_TO_SEC / targetGameUps;
+        final TripleBuffer<Snapshot> snapshots = new TripleBuffer<>(new Snapshot(), new Snapshot(), new Snapshot());
+
+        Thread renderer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                renderLoop(snapshots, timeBetweenUpdates);
+            }
+        }, "TinyEngine render thread");
+        updatePacer.setSpinWindow(pacer.getSpinWindow());
+        renderer.start();
+
+        long lastUpdateTime = System.nanoTime();
+
+        try {
+            while (running) {
+                long now = System.nanoTime();
+                int updateCount = 0;
+
+                // Do as many game updates as we need to, potentially playing catchup
+                while (now - lastUpdateTime >= timeBetweenUpdates && updateCount < MAX_UPDATES) {
+                    update(0);
+                    lastUpdateTime += timeBetweenUpdates;
+                    updateCount++;
+                }
+
+                // Don't try to catch up on more than one update after a stall
+                if (now - lastUpdateTime > timeBetweenUpdates) {
+                    lastUpdateTime = now - timeBetweenUpdates;
+                }
+
+                if (updateCount > 0) {
+                    saveSnapshot(snapshots.getWriteSlot(), lastUpdateTime);
+                    snapshots.publish();
+                }
+                updatePacer.sleepUntil(lastUpdateTime + timeBetweenUpdates);
+            }
+        } finally {
+            running = false;
+            renderer.join();
+        }
+    }
+
+    /**
+     * Copies the current screen into a snapshot. The snapshot's render state
+     * is recreated whenever the screen has changed since it was last used.
+     *
+     * @param snapshot the snapshot to write into
+     * @param time the game time the snapshot was taken at, in nanoseconds
+     */
+    private void saveSnapshot(Snapshot snapshot, long time) {
+        GameScreen screen = game.getCurrentScreen();
+        if (snapshot.screen != screen) {
+            snapshot.screen = screen;
+            snapshot.state = screen.createRenderState();
+        }
+        if (snapshot.state != null) {
+            screen.saveRenderState(snapshot.state);
+        }
+        snapshot.time = time;
+    }
+
+    /**
+     * The render thread of the pipelined loop. This draws the newest snapshot
+     * at the target frame rate until the game stops.
+     *
+     * @param snapshots the buffer the update thread publishes snapshots to
+     * @param timeBetweenUpdates the time between updates, in nanoseconds
+     */
+    private void renderLoop(TripleBuffer<Snapshot> snapshots, long timeBetweenUpdates) {
+        long timeBetweenRenders = NS_TO_SEC / targetGameFps;
+
+        try {
+            while (running) {
+                long now = System.nanoTime();
+                Snapshot snapshot = snapshots.acquire();
+
+                // Nothing to draw until the first update has been published
+                if (snapshot.screen != null) {
+                    float interpolation = Math.min(1.0f, (float) (now - snapshot.time) / timeBetweenUpdates);
+                    render(snapshot, interpolation);
                 }
-                now = System.nanoTime();
+                pacer.sleepUntil(now + timeBetweenRenders);
             }
+        } catch (Exception e) {
+            e.printStackTrace();// Delete in production
+            running = false;
+        }
+    }
+
+    /**
+     * The headless time step loop runs updates back to back, either as fast
+     * as possible or paced to the update rate. Game time advances by one
+     * update interval per tick whatever the clock says, so a run is the same
+     * at any speed. The variable time step is given a delta of 1.0 for the
+     * same reason.
+     * <p/>
+     * If there is an offscreen image and a frame rate, a frame is drawn each
+     * time the game time passes a frame interval.
+     */
+    private void headlessTimeStep() {
+        int ups = targetGameUps;
+        long timeBetweenUpdates = NS_TO_SEC / ((ups > 0) ? ups : DEFAULT_UPS);
+        long timeBetweenRenders = (targetGameFps > 0) ? NS_TO_SEC / targetGameFps : 0;
+        double deltaTime = isFixedTimeStep ? 0 : 1.0;
+
+        long gameTime = 0;
+        long nextRender = 0;
+        long count = 0;
+        long nextUpdate = System.nanoTime();
+
+        if (ups > 0) {
+            pacer.calibrate();
+        }
+        while (running && (tickLimit == 0 || count < tickLimit)) {
+            update(deltaTime);
+            gameTime += timeBetweenUpdates;
+            count++;
+
+            if (headlessImage != null && timeBetweenRenders > 0 && gameTime >= nextRender) {
+                drawHeadless();
+                // Keep to the frame interval, but drop frames the updates skipped past
+                nextRender = Math.max(nextRender + timeBetweenRenders, gameTime);
+            }
+
+            if (ups > 0) {
+                nextUpdate += timeBetweenUpdates;
+                pacer.sleepUntil(nextUpdate);
+            }
+        }
+    }
+
+    /**
+     * Draws the current screen into the offscreen image.
+     */
+    private void drawHeadless() {
+        Graphics2D g2d = headlessImage.createGraphics();
+        try {
+            g2d.setColor(Color.BLACK);
+            g2d.fillRect(0, 0, headlessImage.getWidth(), headlessImage.getHeight());
+            drawScreen(g2d, null, 0);
+        } finally {
+            g2d.dispose();
         }
     }
 
@@ -319,16 +683,10 @@ public final class GameLoop implements Runnable {
 
             /**
              * We want each frame to take 16 milliseconds, to do this we've
-             * recorded when we started the frame. We then add 16 milliseconds
-             * to this and then factor in the current time to give us our final
-             * value to wait for. Remember this is in ms, whereas our
-             * currentTime etc. vars are in ns.
+             * recorded when we started the frame. We then wait until 16
+             * milliseconds after that.
              */
-            try {
-                Thread.sleep((startTime - System.nanoTime() + targetElapsedTime) / NS_TO_MS);
-            } catch (InterruptedException e) {
-                e.printStackTrace();// Delete in production
-            }
+            pacer.sleepUntil(startTime + targetElapsedTime);
         }
     }
 
@@ -345,10 +703,33 @@ public final class GameLoop implements Runnable {
      * states
      */
     private void render(float interpolation) {
+        render(null, interpolation);
+    }
+
+    /**
+     * Renders a frame to the screen, either from a snapshot or directly from
+     * the current screen.
+     *
+     * @param snapshot the snapshot to render, or null to render the current
+     * screen
+     * @param interpolation The value used to interpolate between two frame
+     * states
+     */
+    private void render(Snapshot snapshot, float interpolation) {
+        boolean dirty = isDirtyRendering && snapshot == null;// Not while pipelined
+        if (dirty && !drawDirty(snapshot, interpolation) && !debug) {
+            return;// Nothing has changed since the last frame
+        }
+
         Graphics g = null;
         try {
             g = strategy.getDrawGraphics();
-            draw(g, interpolation);
+            if (dirty) {
+                g.drawImage(backBuffer, 0, 0, null);
+                drawDebug((Graphics2D) g);
+            } else {
+                draw(g, snapshot, interpolation);
+            }
         } catch (Exception e) {
             e.printStackTrace();// Delete in production
         } finally {
@@ -371,21 +752,32 @@ public final class GameLoop implements Runnable {
      * @param deltaTime the time passed since the last update call
      */
     private void update(double deltaTime) {
-        game.getInput().getKeyboard().update();
-        game.getInput().getMouse().update();
-        game.getInput().getMouseWheel().update();
+        long start = System.nanoTime();
+        game.getInput().update();
         game.getCurrentScreen().update();
         game.getCurrentScreen().update(deltaTime);
+        game.getCurrentScreen().getSystems().update(deltaTime);
+
+        long end = System.nanoTime();
+        if (ticks == 0) {
+            tickStartTime = start;
+        }
+        ticks++;
+        tickTimeSum += end - start;
+        maxTickTime = Math.max(maxTickTime, end - start);
+        tickEndTime = end;
     }
 
     /**
      * Renders the game to the screen.
      *
      * @param g the Graphics to render with
+     * @param snapshot the snapshot to render, or null to render the current
+     * screen
      * @param interpolation the value used to interpolate between two frame
      * states
      */
-    private void draw(Graphics g, float interpolation) {
+    private void draw(Graphics g, Snapshot snapshot, float interpolation) {
         /**
          * Graphics2D provides more sophisticated control over geometry,
          * coordinate transformations, color management, and text layout.
@@ -396,14 +788,104 @@ public final class GameLoop implements Runnable {
         g2d.setColor(game.getGui().getWindow().getCanvas().getBackground());
         g2d.fillRect(0, 0, game.getGui().getWindow().getCanvas().getWidth(), game.getGui().getWindow().getCanvas().getHeight());
 
-        // Render the current Screen
-        game.getCurrentScreen().render(g2d, interpolation);
-        game.getCurrentScreen().render(g2d);
+        drawScreen(g2d, snapshot, interpolation);
+        drawDebug(g2d);
+    }
+
+    /**
+     * Redraws the changed areas of the screen into the back buffer.
+     *
+     * @param snapshot the snapshot to render, or null to render the current
+     * screen
+     * @param interpolation the value used to interpolate between two frame
+     * states
+     * @return true if anything was redrawn
+     */
+    private boolean drawDirty(Snapshot snapshot, float interpolation) {
+        Canvas canvas = game.getGui().getWindow().getCanvas();
+        GameScreen screen = (snapshot == null) ? game.getCurrentScreen() : snapshot.screen;
+        int width = Math.max(1, canvas.getWidth());
+        int height = Math.max(1, canvas.getHeight());
+
+        // Start again from a full redraw on a new screen or canvas size
+        boolean full = false;
+        if (backBuffer == null || backBuffer.getWidth() != width || backBuffer.getHeight() != height) {
+            backBuffer = canvas.getGraphicsConfiguration().createCompatibleImage(width, height);
+            full = true;
+        }
+        if (screen != backBufferScreen) {
+            backBufferScreen = screen;
+            full = true;
+        }
+
+        if (!screen.getDirtyRegions().take(dirtyArea, width, height)) {
+            if (!full) {
+                return false;
+            }
+        }
+        if (full) {
+            dirtyArea.setBounds(0, 0, width, height);
+        }
+
+        Graphics2D g2d = backBuffer.createGraphics();
+        try {
+            g2d.clip(dirtyArea);
+            g2d.setColor(canvas.getBackground());
+            g2d.fillRect(dirtyArea.x, dirtyArea.y, dirtyArea.width, dirtyArea.height);
+            drawScreen(g2d, snapshot, interpolation);
+        } finally {
+            g2d.dispose();
+        }
+        return true;
+    }
 
+    /**
+     * Renders the current screen, either from a snapshot or directly.
+     *
+     * @param g2d the Graphics to render with
+     * @param snapshot the snapshot to render, or null to render the current
+     * screen
+     * @param interpolation the value used to interpolate between two frame
+     * states
+     */
+    private void drawScreen(Graphics2D g2d, Snapshot snapshot, float interpolation) {
+        GameScreen screen = (snapshot == null) ? game.getCurrentScreen() : snapshot.screen;
+        SpriteBatch batch = screen.getSpriteBatch();
+
+        batch.begin(g2d);
+        try {
+            if (snapshot == null) {
+                screen.render(g2d, interpolation);
+                screen.render(g2d);
+            } else {
+                screen.render(g2d, snapshot.state, interpolation);
+            }
+        } finally {
+            batch.end();// Draw the queued sprites on top
+        }
+    }
+
+    /**
+     * Renders the debug info on top of the frame, if enabled.
+     *
+     * @param g2d the Graphics to render with
+     */
+    private void drawDebug(Graphics2D g2d) {
         if (debug) {
             DebugUtils.showCurrentFps(g2d);
             DebugUtils.showMemoryUsage(g2d);
             DebugUtils.showLoopType(g2d, isFixedTimeStep());
         }
     }
+
+    /**
+     * A snapshot of a screen handed from the update thread to the render
+     * thread in the pipelined loop.
+     */
+    private static final class Snapshot {
+
+        private GameScreen screen;      // The screen that saved the state
+        private RenderState state;
+        private long time;              // Game time of the last update, in ns
+    }
 }
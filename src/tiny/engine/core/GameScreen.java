@@ -12,6 +12,9 @@ import java.awt.*;
 public abstract class GameScreen {
 
     private final Game game;
+    private final SystemScheduler systems;
+    private final DirtyRegions dirtyRegions;
+    private final SpriteBatch spriteBatch;
 
     /**
      * Constructs a new game screen that has access to all TinyEngine
@@ -21,6 +24,39 @@ public abstract class GameScreen {
      */
     public GameScreen(Game game) {
         this.game = game;
+        systems = new SystemScheduler();
+        dirtyRegions = new DirtyRegions();
+        spriteBatch = new SpriteBatch();
+    }
+
+    /**
+     * Returns the scheduler for this screen's update systems. Systems added
+     * here run once per update, after update() and update(double).
+     *
+     * @return the system scheduler
+     */
+    public final SystemScheduler getSystems() {
+        return systems;
+    }
+
+    /**
+     * Returns the areas of this screen that need to be redrawn. These are only
+     * used when dirty rendering is switched on in the GameLoop.
+     *
+     * @return the dirty regions
+     */
+    public final DirtyRegions getDirtyRegions() {
+        return dirtyRegions;
+    }
+
+    /**
+     * Returns the batch this screen queues sprite draws on. The loop begins
+     * the batch before calling render and draws it afterwards.
+     *
+     * @return the sprite batch
+     */
+    public final SpriteBatch getSpriteBatch() {
+        return spriteBatch;
     }
 
     /**
@@ -59,6 +95,45 @@ public abstract class GameScreen {
     public void render(Graphics2D g2d) {
     }
 
+    /**
+     * Creates an empty snapshot of this screen for the pipelined loop. The
+     * loop creates three of these and reuses them. Override this, along with
+     * saveRenderState and render(Graphics2D, RenderState, float), to support
+     * pipelined rendering.
+     *
+     * @return a new render state, or null if this screen has none
+     */
+    public RenderState createRenderState() {
+        return null;
+    }
+
+    /**
+     * Copies the current screen state into a snapshot. This is called on the
+     * update thread after each batch of updates in the pipelined loop.
+     *
+     * @param state the snapshot to write into
+     */
+    public void saveRenderState(RenderState state) {
+    }
+
+    /**
+     * Renders the current screen from a snapshot. This is called on the render
+     * thread in the pipelined loop, at the same time as the next update runs,
+     * so it should only read from the snapshot.
+     * <p/>
+     * By default this calls the other render methods, which is only safe if
+     * they do not read anything the update thread changes.
+     *
+     * @param g2d the Graphics context to render with
+     * @param state the latest snapshot of this screen
+     * @param interpolation the interpolation between the previous and current
+     * state
+     */
+    public void render(Graphics2D g2d, RenderState state, float interpolation) {
+        render(g2d, interpolation);
+        render(g2d);
+    }
+
     /**
      * Pauses the current screen.
      */
@@ -0,0 +1,16 @@
+package tiny.engine.core;
+
+/**
+ * A RenderState is a snapshot of everything a GameScreen needs to draw one
+ * frame. In pipelined mode the update thread copies the screen into a
+ * RenderState after each update, and the render thread draws from it while
+ * the next update runs.
+ * <p/>
+ * A snapshot should hold copies of values rather than references to live game
+ * objects. To interpolate, keep both the previous and the current value of
+ * anything that moves.
+ *
+ * @author Damian Strain
+ */
+public interface RenderState {
+}
@@ -0,0 +1,336 @@
+package tiny.engine.core;
+
+import java.awt.AlphaComposite;
+import java.awt.Composite;
+import java.awt.Graphics2D;
+import java.awt.Image;
+import java.awt.Rectangle;
+import java.awt.geom.AffineTransform;
+import java.util.Arrays;
+import tiny.engine.entity.SpriteInstance;
+import tiny.engine.entity.SpriteSheet;
+import tiny.engine.utils.AtlasRegion;
+
+/**
+ * The SpriteBatch queues image draws and issues them together, sorted so the
+ * Graphics context changes as little as possible. Draws are ordered by layer
+ * first, lower layers underneath, then grouped by source image (an atlas
+ * page counts as one image) and by alpha. The camera transform is set once
+ * per flush and the composite only when the alpha changes.
+ * <p/>
+ * The GameLoop begins each screen's batch before calling
+ * GameScreen.render and flushes it afterwards, so queued sprites are drawn
+ * on top of anything the screen draws directly. Within a layer, draws
+ * sharing an image keep the order they were queued in, but draws of
+ * different images may be reordered, so put sprites whose overlap matters
+ * on different layers.
+ *
+ * @author Damian Strain
+ */
+public final class SpriteBatch {
+
+    public static final int MIN_LAYER = -32768;
+    public static final int MAX_LAYER = 32767;
+
+    private static final int INDEX_BITS = 20;
+    private static final int MAX_DRAWS = 1 << INDEX_BITS;
+    private static final int IMAGE_BITS = 20;
+    private static final int ALPHA_BITS = 8;
+
+    private Graphics2D g2d = null;
+    private Camera camera = null;
+    private float interpolation;
+    private final Rectangle view = new Rectangle();
+    private float alpha = 1.0f;
+
+    // The queued draws
+    private long[] keys = new long[256];
+    private Image[] images = new Image[256];
+    private int[] coords = new int[256 * 8];    // dx, dy, dw, dh, sx, sy, sw, sh
+    private int size;
+
+    // Per flush ids for images, so draws of one image sort together
+    private Image[] idImages = new Image[64];
+    private int[] ids = new int[64];
+    private int numIds;
+
+    private int drawCount;
+    private int stateChanges;
+    private int culledCount;
+
+    /**
+     * Starts queuing draws for the given Graphics context.
+     *
+     * @param g2d the Graphics context to flush to
+     */
+    public void begin(Graphics2D g2d) {
+        this.g2d = g2d;
+        camera = null;
+        alpha = 1.0f;
+        size = 0;
+        culledCount = 0;
+    }
+
+    /**
+     * Draws every following draw through a camera. Draws entirely outside its
+     * view are dropped when queued.
+     *
+     * @param camera the camera to draw through, or null to draw in screen
+     * coordinates
+     * @param interpolation the interpolation passed to render
+     */
+    public void setCamera(Camera camera, float interpolation) {
+        if (size > 0) {
+            flush();
+        }
+        this.camera = camera;
+        this.interpolation = interpolation;
+        if (camera != null) {
+            view.setBounds(camera.getViewBounds(interpolation));
+        }
+    }
+
+    /**
+     * Sets the alpha of the following draws.
+     *
+     * @param alpha the alpha, from 0 for invisible to 1 for opaque
+     */
+    public void setAlpha(float alpha) {
+        this.alpha = Math.max(0.0f, Math.min(1.0f, alpha));
+    }
+
+    /**
+     * Queues an image drawn at its own size.
+     *
+     * @param image the image to draw
+     * @param x the x position to draw at
+     * @param y the y position to draw at
+     * @param layer the layer to draw on
+     */
+    public void draw(Image image, int x, int y, int layer) {
+        int w = image.getWidth(null);
+        int h = image.getHeight(null);
+        draw(image, x, y, w, h, 0, 0, w, h, layer);
+    }
+
+    /**
+     * Queues an atlas region drawn at its own size.
+     *
+     * @param region the region to draw
+     * @param x the x position to draw at
+     * @param y the y position to draw at
+     * @param layer the layer to draw on
+     */
+    public void draw(AtlasRegion region, int x, int y, int layer) {
+        int w = region.getWidth();
+        int h = region.getHeight();
+        draw(region.getPage(), x, y, w, h, region.getX(), region.getY(), w, h, layer);
+    }
+
+    /**
+     * Queues the current frame of a sprite.
+     *
+     * @param sprite the sprite to draw
+     * @param layer the layer to draw on
+     */
+    public void draw(SpriteInstance sprite, int layer) {
+        SpriteSheet sheet = sprite.getSheet();
+        int frame = sprite.getSheetFrame();
+        AtlasRegion region = sheet.getRegion(frame);
+
+        if (region != null) {
+            draw(region, sprite.getRealX(), sprite.getRealY(), layer);
+        } else {
+            draw(sheet.getFrame(frame), sprite.getRealX(), sprite.getRealY(), layer);
+        }
+    }
+
+    /**
+     * Queues part of an image drawn into a rectangle.
+     *
+     * @param image the image to draw
+     * @param dx the x position to draw at
+     * @param dy the y position to draw at
+     * @param dw the width to draw at
+     * @param dh the height to draw at
+     * @param sx the x position of the part of the image
+     * @param sy the y position of the part of the image
+     * @param sw the width of the part of the image
+     * @param sh the height of the part of the image
+     * @param layer the layer to draw on
+     */
+    public void draw(Image image, int dx, int dy, int dw, int dh, int sx, int sy, int sw, int sh, int layer) {
+        if (g2d == null) {
+            throw new IllegalStateException("SpriteBatch.begin() has not been called");
+        }
+        if (alpha == 0.0f) {
+            return;
+        }
+        if (camera != null && (dx > view.x + view.width || dy > view.y + view.height
+                || dx + dw < view.x || dy + dh < view.y)) {
+            culledCount++;
+            return;
+        }
+        if (size == MAX_DRAWS) {
+            flush();
+        }
+        if (size == keys.length) {
+            grow();
+        }
+
+        long layerBits = Math.max(MIN_LAYER, Math.min(MAX_LAYER, layer)) - MIN_LAYER;
+        long alphaBits = Math.round(alpha * ((1 << ALPHA_BITS) - 1));
+        long key = (layerBits << (IMAGE_BITS + ALPHA_BITS + INDEX_BITS))
+                | ((long) idOf(image) << (ALPHA_BITS + INDEX_BITS))
+                | (alphaBits << INDEX_BITS)
+                | size;
+
+        // Flip the sign bit so a signed sort gives unsigned order
+        keys[size] = key ^ Long.MIN_VALUE;
+        images[size] = image;
+        int c = size * 8;
+        coords[c] = dx;
+        coords[c + 1] = dy;
+        coords[c + 2] = dw;
+        coords[c + 3] = dh;
+        coords[c + 4] = sx;
+        coords[c + 5] = sy;
+        coords[c + 6] = sw;
+        coords[c + 7] = sh;
+        size++;
+    }
+
+    /**
+     * Draws everything queued and stops queuing.
+     */
+    public void end() {
+        if (g2d != null) {
+            flush();
+            g2d = null;
+            camera = null;
+        }
+    }
+
+    /**
+     * Returns the number of images drawn by the last flush.
+     *
+     * @return the number of draws
+     */
+    public int getDrawCount() {
+        return drawCount;
+    }
+
+    /**
+     * Returns the number of composite changes made by the last flush.
+     *
+     * @return the number of state changes
+     */
+    public int getStateChanges() {
+        return stateChanges;
+    }
+
+    /**
+     * Returns the number of draws dropped by camera culling since begin().
+     *
+     * @return the number of culled draws
+     */
+    public int getCulledCount() {
+        return culledCount;
+    }
+
+    /**
+     * Sorts and draws the queue, then clears it.
+     */
+    private void flush() {
+        drawCount = 0;
+        stateChanges = 0;
+        if (size == 0) {
+            return;
+        }
+        Arrays.sort(keys, 0, size);
+
+        AffineTransform oldTransform = g2d.getTransform();
+        Composite oldComposite = g2d.getComposite();
+        if (camera != null) {
+            camera.apply(g2d, interpolation);
+        }
+
+        long currentAlpha = -1;
+        for (int i = 0; i < size; i++) {
+            long key = keys[i] ^ Long.MIN_VALUE;
+            int index = (int) (key & (MAX_DRAWS - 1));
+            long alphaBits = (key >>> INDEX_BITS) & ((1 << ALPHA_BITS) - 1);
+
+            if (alphaBits != currentAlpha) {
+                currentAlpha = alphaBits;
+                g2d.setComposite(AlphaComposite.getInstance(AlphaComposite.SRC_OVER, alphaBits / (float) ((1 << ALPHA_BITS) - 1)));
+                stateChanges++;
+            }
+
+            int c = index * 8;
+            int dx = coords[c];
+            int dy = coords[c + 1];
+            int sx = coords[c + 4];
+            int sy = coords[c + 5];
+            g2d.drawImage(images[index], dx, dy, dx + coords[c + 2], dy + coords[c + 3],
+                    sx, sy, sx + coords[c + 6], sy + coords[c + 7], null);
+            images[index] = null;
+            drawCount++;
+        }
+
+        g2d.setComposite(oldComposite);
+        g2d.setTransform(oldTransform);
+        Arrays.fill(idImages, null);
+        numIds = 0;
+        size = 0;
+    }
+
+    /**
+     * Returns the id of an image for this flush, assigning the next id to an
+     * image not seen yet.
+     */
+    private int idOf(Image image) {
+        int mask = idImages.length - 1;
+        int slot = System.identityHashCode(image) & mask;
+        while (idImages[slot] != null) {
+            if (idImages[slot] == image) {
+                return ids[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        if ((numIds + 1) * 2 > idImages.length) {
+            growIds();
+            return idOf(image);
+        }
+        idImages[slot] = image;
+        ids[slot] = numIds++ & ((1 << IMAGE_BITS) - 1);
+        return ids[slot];
+    }
+
+    private void growIds() {
+        Image[] oldImages = idImages;
+        int[] oldIds = ids;
+        idImages = new Image[oldImages.length * 2];
+        ids = new int[oldImages.length * 2];
+
+        int mask = idImages.length - 1;
+        for (int i = 0; i < oldImages.length; i++) {
+            if (oldImages[i] != null) {
+                int slot = System.identityHashCode(oldImages[i]) & mask;
+                while (idImages[slot] != null) {
+                    slot = (slot + 1) & mask;
+                }
+                idImages[slot] = oldImages[i];
+                ids[slot] = oldIds[i];
+            }
+        }
+    }
+
+    private void grow() {
+        int capacity = keys.length * 2;
+        keys = Arrays.copyOf(keys, capacity);
+        images = Arrays.copyOf(images, capacity);
+        coords = Arrays.copyOf(coords, capacity * 8);
+    }
+}
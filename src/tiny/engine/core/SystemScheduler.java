@@ -0,0 +1,275 @@
+package tiny.engine.core;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountedCompleter;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * The SystemScheduler runs a screen's update systems once per tick. Each
+ * system declares the resources it reads and writes; a resource can be any
+ * object used as a key, such as a class or a component list. A system waits
+ * for every earlier registered system it conflicts with, meaning one of them
+ * writes something the other reads or writes. Everything else may run at the
+ * same time on a work-stealing pool.
+ * <p/>
+ * Because conflicting systems always run in registration order, the parallel
+ * result is the same as running every system in order on one thread. That
+ * sequential mode can be switched on with setParallel(false) for debugging.
+ * Systems must not be added or removed while an update is running.
+ *
+ * @author Damian Strain
+ */
+public final class SystemScheduler {
+
+    private static final Object[] NONE = new Object[0];
+
+    private static ForkJoinPool pool = null;     // Shared by every scheduler
+
+    private final List<Entry> entries = new ArrayList<>();
+    private volatile boolean parallel = true;
+    private boolean dirty = false;
+
+    // The dependency graph, rebuilt when the systems change
+    private UpdateSystem[] systems = new UpdateSystem[0];
+    private int[][] successors = new int[0][];
+    private int[] predecessors = new int[0];
+    private int[] roots = new int[0];
+    private AtomicIntegerArray remaining = new AtomicIntegerArray(0);
+
+    /**
+     * Registers a system that runs after every system registered before it
+     * that it conflicts with.
+     *
+     * @param system the system to add
+     * @param reads the resources the system reads, may be null
+     * @param writes the resources the system writes, may be null
+     */
+    public void add(UpdateSystem system, Object[] reads, Object[] writes) {
+        entries.add(new Entry(system, (reads != null) ? reads : NONE, (writes != null) ? writes : NONE));
+        dirty = true;
+    }
+
+    /**
+     * Removes a system. Systems that depended on it keep their order relative
+     * to everything else.
+     *
+     * @param system the system to remove
+     * @return true if the system was registered
+     */
+    public boolean remove(UpdateSystem system) {
+        for (int i = 0; i < entries.size(); i++) {
+            if (entries.get(i).system == system) {
+                entries.remove(i);
+                dirty = true;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Removes all systems.
+     */
+    public void clear() {
+        entries.clear();
+        dirty = true;
+    }
+
+    /**
+     * Returns the number of registered systems.
+     *
+     * @return the number of systems
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Returns whether systems may run in parallel.
+     *
+     * @return true if parallel, false if every system runs in order on the
+     * calling thread
+     */
+    public boolean isParallel() {
+        return parallel;
+    }
+
+    /**
+     * Sets whether systems may run in parallel. When false, every system runs
+     * in registration order on the calling thread.
+     *
+     * @param parallel true to run in parallel, false to run in order
+     */
+    public void setParallel(boolean parallel) {
+        this.parallel = parallel;
+    }
+
+    /**
+     * Runs every system once, returning when they have all finished. If a
+     * system throws, the exception is rethrown here.
+     *
+     * @param deltaTime the delta passed to each system
+     */
+    public void update(double deltaTime) {
+        if (dirty) {
+            build();
+        }
+        if (systems.length == 0) {
+            return;
+        }
+
+        if (!parallel || systems.length == 1 || Runtime.getRuntime().availableProcessors() == 1) {
+            // Registration order is always a valid order
+            for (UpdateSystem system : systems) {
+                system.update(deltaTime);
+            }
+            return;
+        }
+
+        for (int i = 0; i < predecessors.length; i++) {
+            remaining.set(i, predecessors[i]);
+        }
+        getPool().invoke(new Tick(deltaTime));
+    }
+
+    /**
+     * Rebuilds the dependency graph from the registered systems.
+     */
+    private void build() {
+        int n = entries.size();
+        List<List<Integer>> edges = new ArrayList<>(n);
+
+        systems = new UpdateSystem[n];
+        predecessors = new int[n];
+
+        for (int i = 0; i < n; i++) {
+            Entry later = entries.get(i);
+            systems[i] = later.system;
+            edges.add(new ArrayList<Integer>());
+
+            for (int j = 0; j < i; j++) {
+                if (conflicts(entries.get(j), later)) {
+                    edges.get(j).add(i);
+                    predecessors[i]++;
+                }
+            }
+        }
+
+        successors = new int[n][];
+        int numRoots = 0;
+        int[] rootList = new int[n];
+        for (int i = 0; i < n; i++) {
+            List<Integer> next = edges.get(i);
+            successors[i] = new int[next.size()];
+            for (int k = 0; k < successors[i].length; k++) {
+                successors[i][k] = next.get(k);
+            }
+            if (predecessors[i] == 0) {
+                rootList[numRoots++] = i;
+            }
+        }
+        roots = Arrays.copyOf(rootList, numRoots);
+        remaining = new AtomicIntegerArray(n);
+        dirty = false;
+    }
+
+    /**
+     * Returns whether two systems must not run at the same time.
+     */
+    private static boolean conflicts(Entry a, Entry b) {
+        return intersects(a.writes, b.writes) || intersects(a.writes, b.reads) || intersects(a.reads, b.writes);
+    }
+
+    private static boolean intersects(Object[] a, Object[] b) {
+        for (Object x : a) {
+            for (Object y : b) {
+                if (x.equals(y)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the pool shared by all schedulers, creating it on first use.
+     */
+    private static synchronized ForkJoinPool getPool() {
+        if (pool == null) {
+            pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+        }
+        return pool;
+    }
+
+    /**
+     * A registered system and its declared resources.
+     */
+    private static final class Entry {
+
+        private final UpdateSystem system;
+        private final Object[] reads;
+        private final Object[] writes;
+
+        private Entry(UpdateSystem system, Object[] reads, Object[] writes) {
+            this.system = system;
+            this.reads = reads;
+            this.writes = writes;
+        }
+    }
+
+    /**
+     * The root of one tick. It completes once every system has run.
+     */
+    private final class Tick extends CountedCompleter<Void> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final double deltaTime;
+
+        private Tick(double deltaTime) {
+            this.deltaTime = deltaTime;
+        }
+
+        @Override
+        public void compute() {
+            setPendingCount(systems.length);
+            for (int root : roots) {
+                new Run(this, root).fork();
+            }
+            tryComplete();
+        }
+    }
+
+    /**
+     * Runs one system, then forks each successor whose last dependency this
+     * was.
+     */
+    private final class Run extends CountedCompleter<Void> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final Tick tick;
+        private final int index;
+
+        private Run(Tick tick, int index) {
+            super(tick);
+            this.tick = tick;
+            this.index = index;
+        }
+
+        @Override
+        public void compute() {
+            systems[index].update(tick.deltaTime);
+
+            for (int next : successors[index]) {
+                if (remaining.decrementAndGet(next) == 0) {
+                    new Run(tick, next).fork();
+                }
+            }
+            tryComplete();
+        }
+    }
+}
@@ -3,7 +3,6 @@ package tiny.engine.core;
 import java.awt.Graphics2D;
 import java.awt.event.KeyEvent;
 import java.awt.image.BufferedImage;
-import javax.imageio.ImageIO;
 import tiny.engine.input.Keyboard;
 import tiny.engine.input.Mouse;
 import tiny.engine.input.MouseWheel;
@@ -18,6 +17,8 @@ public final class TestScreen extends GameScreen {
     private final Mouse mouse;
     private final MouseWheel mouseWheel;
 
+    private static final String SPRITE = "res/sprite.gif";
+
     private BufferedImage sprite = null;
     //private Entity        pacman = null;
 
@@ -29,7 +30,7 @@ public final class TestScreen extends GameScreen {
         mouseWheel = game.getInput().getMouseWheel();
 
         try {
-            sprite = ImageIO.read(game.getFileIO().loadFile().getResource("res/sprite.gif"));
+            sprite = game.getAssets().getImage(SPRITE);
         } catch (Exception e) {
             e.printStackTrace();
         }
@@ -72,6 +73,9 @@ public final class TestScreen extends GameScreen {
 
     @Override
     public void dispose() {
-
+        if (sprite != null) {
+            game.getAssets().release(SPRITE);
+            sprite = null;
+        }
     }
 }
@@ -0,0 +1,70 @@
+package tiny.engine.core;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The TripleBuffer hands the latest of a stream of values from one producer
+ * thread to one consumer thread without locking. The producer always has a
+ * slot to write into, the consumer always has a slot to read from, and the
+ * third slot holds the most recently published value. Neither side ever waits
+ * on the other.
+ *
+ * @author Damian Strain
+ */
+final class TripleBuffer<T> {
+
+    private static final int INDEX_MASK = 3;
+    private static final int FRESH = 4;         // Set when the middle slot has not been read
+
+    private final Object[] slots;
+    private final AtomicInteger middle = new AtomicInteger(1);
+    private int writeIndex = 0;                 // Owned by the producer
+    private int readIndex = 2;                  // Owned by the consumer
+
+    /**
+     * Constructs a TripleBuffer over three pre-allocated slots.
+     *
+     * @param first the first slot to cycle through
+     * @param second the second slot
+     * @param third the third slot
+     */
+    TripleBuffer(T first, T second, T third) {
+        slots = new Object[]{first, second, third};
+    }
+
+    /**
+     * Returns the slot the producer may write into. It stays the same until
+     * publish() is called.
+     *
+     * @return the write slot
+     */
+    T getWriteSlot() {
+        return slot(writeIndex);
+    }
+
+    /**
+     * Publishes the write slot as the latest value and gives the producer a
+     * new slot to write into.
+     */
+    void publish() {
+        writeIndex = middle.getAndSet(writeIndex | FRESH) & INDEX_MASK;
+    }
+
+    /**
+     * Returns the latest published value. The slot belongs to the consumer
+     * until the next call.
+     *
+     * @return the read slot
+     */
+    T acquire() {
+        if ((middle.get() & FRESH) != 0) {
+            readIndex = middle.getAndSet(readIndex) & INDEX_MASK;
+        }
+        return slot(readIndex);
+    }
+
+    @SuppressWarnings("unchecked")
+    private T slot(int index) {
+        return (T) slots[index];
+    }
+}
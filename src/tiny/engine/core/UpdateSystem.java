@@ -0,0 +1,19 @@
+package tiny.engine.core;
+
+/**
+ * An UpdateSystem is one independent piece of a screen's update, such as
+ * physics, animation or AI. Systems are registered with a SystemScheduler
+ * along with the resources they read and write, which lets the scheduler run
+ * systems that do not conflict at the same time.
+ *
+ * @author Damian Strain
+ */
+public interface UpdateSystem {
+
+    /**
+     * Updates this system for one tick.
+     *
+     * @param deltaTime the delta passed to GameScreen.update(double)
+     */
+    public void update(double deltaTime);
+}
@@ -0,0 +1,463 @@
+package tiny.engine.entity;
+
+import java.awt.Rectangle;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The AabbTree is a Broadphase that keeps objects in a balanced tree of
+ * bounding boxes, where each node's box encloses its children. Each object is
+ * stored with a box enlarged by a margin, so an object only has to be moved
+ * in the tree once it leaves its enlarged box rather than every time it moves.
+ * <p/>
+ * Unlike the SpatialHashGrid, the tree copes well with objects of very
+ * different sizes and with worlds that are mostly empty.
+ *
+ * @author Damian Strain
+ */
+public final class AabbTree implements Broadphase {
+
+    /**
+     * The default distance, in pixels, each stored box is enlarged by.
+     */
+    public static final int DEFAULT_MARGIN = 8;
+
+    private static final int NULL = -1;
+
+    private final int margin;
+    private final Map<Collidable, Integer> leavesByObject = new IdentityHashMap<>();
+    private final PairBuffer pairs = new PairBuffer();
+
+    // Per node: the enlarged box and the tree links
+    private int[] minX = new int[64];
+    private int[] minY = new int[64];
+    private int[] maxX = new int[64];
+    private int[] maxY = new int[64];
+    private int[] parent = new int[64];     // Also links the free list
+    private int[] child1 = new int[64];
+    private int[] child2 = new int[64];
+    private int[] height = new int[64];
+    private int numNodes;
+    private int freeNode = NULL;
+    private int root = NULL;
+
+    // Per leaf node: the object and its exact bounds
+    private Collidable[] objects = new Collidable[64];
+    private int[] x = new int[64];
+    private int[] y = new int[64];
+    private int[] right = new int[64];
+    private int[] bottom = new int[64];
+
+    // Every leaf node, so update can walk them in order
+    private int[] leaves = new int[64];
+    private int[] leafSlot = new int[64];
+    private int numLeaves;
+
+    private int[] stack = new int[64];
+
+    /**
+     * Constructs a new tree with the default margin.
+     */
+    public AabbTree() {
+        this(DEFAULT_MARGIN);
+    }
+
+    /**
+     * Constructs a new tree. A bigger margin moves objects in the tree less
+     * often, but finds more boxes to test.
+     *
+     * @param margin the distance each stored box is enlarged by, in pixels
+     */
+    public AabbTree(int margin) {
+        if (margin < 0) {
+            throw new IllegalArgumentException("Margin must not be negative: " + margin);
+        }
+        this.margin = margin;
+    }
+
+    @Override
+    public void add(Collidable object) {
+        if (leavesByObject.containsKey(object)) {
+            return;
+        }
+
+        int leaf = allocateNode();
+        objects[leaf] = object;
+        child1[leaf] = NULL;
+        child2[leaf] = NULL;
+        height[leaf] = 0;
+        readBounds(leaf);
+        fatten(leaf);
+        insertLeaf(leaf);
+
+        leavesByObject.put(object, leaf);
+        if (numLeaves == leaves.length) {
+            leaves = Arrays.copyOf(leaves, numLeaves * 2);
+        }
+        leafSlot[leaf] = numLeaves;
+        leaves[numLeaves++] = leaf;
+    }
+
+    @Override
+    public boolean remove(Collidable object) {
+        Integer leaf = leavesByObject.remove(object);
+        if (leaf == null) {
+            return false;
+        }
+
+        removeLeaf(leaf);
+
+        // Swap the last leaf into the removed slot
+        int slot = leafSlot[leaf];
+        int last = leaves[--numLeaves];
+        leaves[slot] = last;
+        leafSlot[last] = slot;
+
+        objects[leaf] = null;
+        freeNode(leaf);
+        return true;
+    }
+
+    @Override
+    public int size() {
+        return numLeaves;
+    }
+
+    @Override
+    public void update() {
+        for (int i = 0; i < numLeaves; i++) {
+            int leaf = leaves[i];
+            readBounds(leaf);
+
+            // Only move leaves that have left their enlarged box
+            if (x[leaf] < minX[leaf] || y[leaf] < minY[leaf] || right[leaf] > maxX[leaf] || bottom[leaf] > maxY[leaf]) {
+                removeLeaf(leaf);
+                fatten(leaf);
+                insertLeaf(leaf);
+            }
+        }
+        findPairs();
+    }
+
+    @Override
+    public int getPairCount() {
+        return pairs.size();
+    }
+
+    @Override
+    public Collidable getFirst(int pair) {
+        return pairs.getFirst(pair);
+    }
+
+    @Override
+    public Collidable getSecond(int pair) {
+        return pairs.getSecond(pair);
+    }
+
+    @Override
+    public int query(Rectangle area, List<Collidable> out) {
+        int areaRight = area.x + area.width;
+        int areaBottom = area.y + area.height;
+        int added = 0;
+
+        if (root == NULL) {
+            return 0;
+        }
+        int top = 0;
+        stack[top++] = root;
+        while (top > 0) {
+            int node = stack[--top];
+            if (minX[node] > areaRight || area.x > maxX[node] || minY[node] > areaBottom || area.y > maxY[node]) {
+                continue;
+            }
+            if (child1[node] == NULL) {
+                if (x[node] <= areaRight && area.x <= right[node] && y[node] <= areaBottom && area.y <= bottom[node]) {
+                    out.add(objects[node]);
+                    added++;
+                }
+            } else {
+                top = push(top, child1[node], child2[node]);
+            }
+        }
+        return added;
+    }
+
+    /**
+     * Queries the tree with each leaf's exact bounds. Each pair is found from
+     * both of its leaves, so it is only reported from the lower numbered one.
+     */
+    private void findPairs() {
+        pairs.clear();
+
+        for (int i = 0; i < numLeaves; i++) {
+            int leaf = leaves[i];
+            int top = 0;
+            stack[top++] = root;
+
+            while (top > 0) {
+                int node = stack[--top];
+                if (minX[node] > right[leaf] || x[leaf] > maxX[node] || minY[node] > bottom[leaf] || y[leaf] > maxY[node]) {
+                    continue;
+                }
+                if (child1[node] == NULL) {
+                    if (node > leaf && x[node] <= right[leaf] && x[leaf] <= right[node]
+                            && y[node] <= bottom[leaf] && y[leaf] <= bottom[node]) {
+                        pairs.add(objects[leaf], objects[node]);
+                    }
+                } else {
+                    top = push(top, child1[node], child2[node]);
+                }
+            }
+        }
+    }
+
+    private int push(int top, int a, int b) {
+        if (top + 2 > stack.length) {
+            stack = Arrays.copyOf(stack, stack.length * 2);
+        }
+        stack[top++] = a;
+        stack[top++] = b;
+        return top;
+    }
+
+    private void readBounds(int leaf) {
+        Rectangle bounds = objects[leaf].getBounds();
+        x[leaf] = bounds.x;
+        y[leaf] = bounds.y;
+        right[leaf] = bounds.x + bounds.width;
+        bottom[leaf] = bounds.y + bounds.height;
+    }
+
+    private void fatten(int leaf) {
+        minX[leaf] = x[leaf] - margin;
+        minY[leaf] = y[leaf] - margin;
+        maxX[leaf] = right[leaf] + margin;
+        maxY[leaf] = bottom[leaf] + margin;
+    }
+
+    /**
+     * Inserts a leaf next to the sibling that grows the tree the least, then
+     * refits and rebalances its ancestors.
+     */
+    private void insertLeaf(int leaf) {
+        if (root == NULL) {
+            root = leaf;
+            parent[leaf] = NULL;
+            return;
+        }
+
+        // Find the best sibling by descending the cheaper child
+        int sibling = root;
+        while (child1[sibling] != NULL) {
+            int c1 = child1[sibling];
+            int c2 = child2[sibling];
+
+            long area = perimeter(sibling);
+            long combined = combinedPerimeter(sibling, leaf);
+            long cost = 2 * combined;                   // Cost of pairing with this node
+            long inheritance = 2 * (combined - area);   // Cost of pushing the leaf down
+
+            long cost1 = descendCost(c1, leaf) + inheritance;
+            long cost2 = descendCost(c2, leaf) + inheritance;
+
+            if (cost < cost1 && cost < cost2) {
+                break;
+            }
+            sibling = (cost1 < cost2) ? c1 : c2;
+        }
+
+        // Join the leaf and the sibling under a new parent
+        int oldParent = parent[sibling];
+        int newParent = allocateNode();
+        parent[newParent] = oldParent;
+        objects[newParent] = null;
+        child1[newParent] = sibling;
+        child2[newParent] = leaf;
+        height[newParent] = height[sibling] + 1;
+        union(newParent, sibling, leaf);
+        parent[sibling] = newParent;
+        parent[leaf] = newParent;
+
+        if (oldParent == NULL) {
+            root = newParent;
+        } else if (child1[oldParent] == sibling) {
+            child1[oldParent] = newParent;
+        } else {
+            child2[oldParent] = newParent;
+        }
+        refit(parent[leaf]);
+    }
+
+    /**
+     * Removes a leaf, replacing its parent with its sibling.
+     */
+    private void removeLeaf(int leaf) {
+        if (leaf == root) {
+            root = NULL;
+            return;
+        }
+
+        int oldParent = parent[leaf];
+        int grandParent = parent[oldParent];
+        int sibling = (child1[oldParent] == leaf) ? child2[oldParent] : child1[oldParent];
+
+        if (grandParent == NULL) {
+            root = sibling;
+            parent[sibling] = NULL;
+        } else {
+            if (child1[grandParent] == oldParent) {
+                child1[grandParent] = sibling;
+            } else {
+                child2[grandParent] = sibling;
+            }
+            parent[sibling] = grandParent;
+            refit(grandParent);
+        }
+        freeNode(oldParent);
+    }
+
+    /**
+     * Walks up from a node, rebalancing and recomputing boxes and heights.
+     */
+    private void refit(int node) {
+        while (node != NULL) {
+            node = balance(node);
+            int c1 = child1[node];
+            int c2 = child2[node];
+            height[node] = 1 + Math.max(height[c1], height[c2]);
+            union(node, c1, c2);
+            node = parent[node];
+        }
+    }
+
+    /**
+     * Rotates a node's taller grandchild up if its children differ in height
+     * by more than one.
+     *
+     * @return the node now in the given node's place
+     */
+    private int balance(int a) {
+        if (child1[a] == NULL || height[a] < 2) {
+            return a;
+        }
+
+        int b = child1[a];
+        int c = child2[a];
+        int difference = height[c] - height[b];
+
+        if (difference > 1) {
+            return rotate(a, c, b, true);
+        }
+        if (difference < -1) {
+            return rotate(a, b, c, false);
+        }
+        return a;
+    }
+
+    /**
+     * Moves the taller child of a up into a's place.
+     *
+     * @param a the unbalanced node
+     * @param up the taller child of a
+     * @param other the shorter child of a
+     * @param upIsChild2 true if up is a's second child
+     * @return the node now in a's place
+     */
+    private int rotate(int a, int up, int other, boolean upIsChild2) {
+        int f = child1[up];
+        int g = child2[up];
+
+        // Swap a and up
+        child1[up] = a;
+        parent[up] = parent[a];
+        parent[a] = up;
+
+        if (parent[up] == NULL) {
+            root = up;
+        } else if (child1[parent[up]] == a) {
+            child1[parent[up]] = up;
+        } else {
+            child2[parent[up]] = up;
+        }
+
+        // Keep the taller grandchild under up and give the other to a
+        int keep = (height[f] > height[g]) ? f : g;
+        int give = (keep == f) ? g : f;
+        child2[up] = keep;
+        if (upIsChild2) {
+            child2[a] = give;
+        } else {
+            child1[a] = give;
+        }
+        parent[give] = a;
+
+        union(a, other, give);
+        height[a] = 1 + Math.max(height[other], height[give]);
+        union(up, a, keep);
+        height[up] = 1 + Math.max(height[a], height[keep]);
+        return up;
+    }
+
+    /**
+     * Returns the cost of pairing a leaf with a node, or with the best node
+     * below it.
+     */
+    private long descendCost(int node, int leaf) {
+        long combined = combinedPerimeter(node, leaf);
+        return (child1[node] == NULL) ? combined : combined - perimeter(node);
+    }
+
+    private long perimeter(int node) {
+        return 2L * ((long) maxX[node] - minX[node] + maxY[node] - minY[node]);
+    }
+
+    private long combinedPerimeter(int a, int b) {
+        long w = (long) Math.max(maxX[a], maxX[b]) - Math.min(minX[a], minX[b]);
+        long h = (long) Math.max(maxY[a], maxY[b]) - Math.min(minY[a], minY[b]);
+        return 2L * (w + h);
+    }
+
+    private void union(int node, int a, int b) {
+        minX[node] = Math.min(minX[a], minX[b]);
+        minY[node] = Math.min(minY[a], minY[b]);
+        maxX[node] = Math.max(maxX[a], maxX[b]);
+        maxY[node] = Math.max(maxY[a], maxY[b]);
+    }
+
+    private int allocateNode() {
+        if (freeNode != NULL) {
+            int node = freeNode;
+            freeNode = parent[node];
+            return node;
+        }
+        if (numNodes == minX.length) {
+            growNodes();
+        }
+        return numNodes++;
+    }
+
+    private void freeNode(int node) {
+        parent[node] = freeNode;
+        freeNode = node;
+    }
+
+    private void growNodes() {
+        int capacity = minX.length * 2;
+        minX = Arrays.copyOf(minX, capacity);
+        minY = Arrays.copyOf(minY, capacity);
+        maxX = Arrays.copyOf(maxX, capacity);
+        maxY = Arrays.copyOf(maxY, capacity);
+        parent = Arrays.copyOf(parent, capacity);
+        child1 = Arrays.copyOf(child1, capacity);
+        child2 = Arrays.copyOf(child2, capacity);
+        height = Arrays.copyOf(height, capacity);
+        objects = Arrays.copyOf(objects, capacity);
+        x = Arrays.copyOf(x, capacity);
+        y = Arrays.copyOf(y, capacity);
+        right = Arrays.copyOf(right, capacity);
+        bottom = Arrays.copyOf(bottom, capacity);
+        leafSlot = Arrays.copyOf(leafSlot, capacity);
+    }
+}
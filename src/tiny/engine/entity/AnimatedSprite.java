@@ -3,8 +3,8 @@ package tiny.engine.entity;
 import java.awt.*;
 import java.awt.image.*;
 import java.io.Serializable;
-import java.util.logging.Level;
-import java.util.logging.Logger;
+import tiny.engine.utils.AtlasRegion;
+import tiny.engine.utils.TextureAtlas;
 
 /**
  * You may use this sprite-class (or parts of it) in any way you want, as long
@@ -19,13 +19,16 @@ import java.util.logging.Logger;
  * @author Captain Awesome
  * (http://www.javagaming.org/index.php?action=profile;u=28320)
  */
-public class AnimatedSprite implements Cloneable, Serializable {
+public class AnimatedSprite implements Cloneable, Serializable, Collidable {
 
     //For serialization
     private static final long serialVersionUID = 1L;
 
     private transient BufferedImage spriteImg;
     private transient BufferedImage[] animImg;
+    private transient AtlasRegion[] animRegions;     // Set when split into an atlas
+    private transient CollisionMask spriteMask;
+    private transient CollisionMask[] animMasks;
 
     private int x;
     private int y;
@@ -49,6 +52,7 @@ public class AnimatedSprite implements Cloneable, Serializable {
 
     public AnimatedSprite(BufferedImage img) {
         spriteImg = toCompatibleImage(img);
+        buildMasks();
     }
 
     /**
@@ -98,6 +102,22 @@ public class AnimatedSprite implements Cloneable, Serializable {
         return bimg;
     }
 
+    /**
+     * Builds the collision masks of the whole image and of every frame.
+     */
+    private void buildMasks() {
+        spriteMask = new CollisionMask(spriteImg);
+
+        if (animImg != null) {
+            animMasks = new CollisionMask[animImg.length];
+            for (int i = 0; i < animImg.length; i++) {
+                animMasks[i] = new CollisionMask(animImg[i]);
+            }
+        } else {
+            animMasks = null;
+        }
+    }
+
     private static boolean intersection(Rectangle r, Rectangle d) {
         int rect1x = r.x;
         int rect1y = r.y;
@@ -180,7 +200,9 @@ public class AnimatedSprite implements Cloneable, Serializable {
     @Override
     public AnimatedSprite clone() {
         try {
-            return (AnimatedSprite) super.clone();
+            AnimatedSprite copy = (AnimatedSprite) super.clone();
+            copy.bounds = null;// Each copy needs its own bounds
+            return copy;
         } catch (CloneNotSupportedException e) {
             System.out.println("Clone failed.");
             return null;
@@ -216,7 +238,11 @@ public class AnimatedSprite implements Cloneable, Serializable {
      * current frame.
      */
     public void paint(Graphics g) {
-        g.drawImage(this.getImage(), this.getRealX(), this.getRealY(), null);
+        if (animRegions != null && currentFrame < frameSequence.length) {
+            animRegions[frameSequence[currentFrame]].draw(g, this.getRealX(), this.getRealY());
+        } else {
+            g.drawImage(this.getImage(), this.getRealX(), this.getRealY(), null);
+        }
     }
 
     /**
@@ -229,7 +255,11 @@ public class AnimatedSprite implements Cloneable, Serializable {
      * @param y The y-position to paint the frame at.
      */
     public void paintFrame(Graphics g, int frame, int x, int y) {
-        g.drawImage(animImg[frameSequence[frame]], x, y, null);
+        if (animRegions != null) {
+            animRegions[frameSequence[frame]].draw(g, x, y);
+        } else {
+            g.drawImage(animImg[frameSequence[frame]], x, y, null);
+        }
     }
 
     /**
@@ -283,11 +313,39 @@ public class AnimatedSprite implements Cloneable, Serializable {
         this.rows = rows;
 
         animImg = splitImage(spriteImg, cols, rows);
+        animRegions = null;
         frameSequence = new int[animImg.length];
 
         for (int i = 0; i < animImg.length; i++) {
             frameSequence[i] = i;
         }
+        buildMasks();
+    }
+
+    /**
+     * Splits this sprite like splitSprite(cols, rows), but packs the frames
+     * into a shared atlas and draws them from there. Many sprites split into
+     * the same atlas share a few large images instead of one image per frame.
+     * Flipping, reloading or changing the transparency of the sprite splits it
+     * into its own images again.
+     *
+     * @param cols The amount of columns to split the Sprite into.
+     * @param rows The amount of rows to split the Sprite into.
+     * @param atlas The atlas to pack the frames into.
+     */
+    public void splitSprite(int cols, int rows, TextureAtlas atlas) {
+        this.cols = cols;
+        this.rows = rows;
+
+        animRegions = atlas.addSheet(spriteImg, cols, rows);
+        animImg = new BufferedImage[animRegions.length];
+        frameSequence = new int[animImg.length];
+
+        for (int i = 0; i < animImg.length; i++) {
+            animImg[i] = animRegions[i].toImage();
+            frameSequence[i] = i;
+        }
+        buildMasks();
     }
 
     /**
@@ -392,57 +450,14 @@ public class AnimatedSprite implements Cloneable, Serializable {
     }
 
     /*
-     *  pixelPerfectCollision(); first determines the area where the sprites collides
-     *  AKA the collision-rectangle. It then grabs the pixels from both sprites
-     *  which are inside the rectangle. It then checks every pixel from the arrays
-     *  given by grabPixels();, and if 2 pixels at the same position are opaque,
-     *  (alpha value over 0) it will return true. Otherwise it will return false.
+     *  pixelPerfectCollision(); tests the collision masks of the current frames,
+     *  which were built when the sprite was split. Both masks are placed at the
+     *  sprites' positions and compared 64 pixels at a time. If 2 pixels at the
+     *  same position are opaque (alpha value over 0) it will return true.
+     *  Otherwise it will return false.
      */
     private boolean pixelPerfectCollision(AnimatedSprite sprite, Rectangle r1, Rectangle r2) {
-        /*
-         * Get the X-values and Y-values for the two coordinates where the sprites collide
-         */
-        int cornerTopX = (r1.x > r2.x) ? r1.x : r2.x;
-        int cornerBottomX = ((r1.x + r1.width) < (r2.x + r2.width)) ? (r1.x + r1.width) : (r2.x + r2.width);
-
-        int cornerTopY = (r1.y > r2.y) ? r1.y : r2.y;
-        int cornerBottomY = ((r1.y + r1.height) < (r2.y + r2.height)) ? (r1.y + r1.height) : (r2.y + r2.height);
-
-        //Determine the width and height of the collision rectangle
-        int width = cornerBottomX - cornerTopX;
-        int height = cornerBottomY - cornerTopY;
-
-        //Create arrays to hold the pixels
-        int[] pixels1 = new int[width * height];
-        int[] pixels2 = new int[width * height];
-
-        //Create the pixel grabber and fill the arrays
-        PixelGrabber pg1 = new PixelGrabber(getImage(), cornerTopX - getRealX(), cornerTopY - getRealY(), width, height, pixels1, 0, width);
-        PixelGrabber pg2 = new PixelGrabber(sprite.getImage(), cornerTopX - sprite.getRealX(), cornerTopY - sprite.getRealY(), width, height, pixels2, 0, width);
-
-        //Grab the pixels
-        try {
-            pg1.grabPixels();
-            pg2.grabPixels();
-        } catch (InterruptedException ex) {
-            Logger.getLogger(AnimatedSprite.class.getName()).log(Level.SEVERE, null, ex);
-        }
-
-        //Check if pixels at the same spot from both arrays are not transparent.
-        for (int i = 0; i < pixels1.length; i++) {
-            int a = (pixels1[i] >>> 24) & 0xff;
-            int a2 = (pixels2[i] >>> 24) & 0xff;
-
-            /* Awesome, we found two pixels in the same spot that aren't
-             * completely transparent! Thus the sprites are colliding!
-             */
-            if (a > 0 && a2 > 0) {
-                return true;
-            }
-
-        }
-
-        return false;
+        return getCollisionMask().overlaps(r1.x, r1.y, sprite.getCollisionMask(), r2.x, r2.y);
     }
 
     /**
@@ -455,6 +470,8 @@ public class AnimatedSprite implements Cloneable, Serializable {
 
         if (this.cols > 0 & this.rows > 0) {
             this.splitSprite(this.cols, this.rows);
+        } else {
+            buildMasks();
         }
 
     }
@@ -469,6 +486,8 @@ public class AnimatedSprite implements Cloneable, Serializable {
         spriteImg = makeTransparent(spriteImg, color, newAlphaValue);
         if (this.cols > 0 & this.rows > 0) {
             this.splitSprite(this.cols, this.rows);
+        } else {
+            buildMasks();
         }
     }
 
@@ -531,6 +550,7 @@ public class AnimatedSprite implements Cloneable, Serializable {
     /**
      * Returns the boundaries for the sprite, used for collision detection
      */
+    @Override
     public Rectangle getBounds() {
         if (this.bounds == null) {
             this.bounds = new Rectangle(this.getRealX(), this.getRealY(), this.getWidth(), this.getHeight());
@@ -555,6 +575,21 @@ public class AnimatedSprite implements Cloneable, Serializable {
         }
     }
 
+    /**
+     * @return the collision mask of the current frame if it has been split,
+     * otherwise of the whole image.
+     */
+    public CollisionMask getCollisionMask() {
+        if (spriteMask == null) {
+            buildMasks();// Masks are not serialized
+        }
+        if (animMasks != null && currentFrame < frameSequence.length) {
+            return animMasks[frameSequence[currentFrame]];
+        } else {
+            return spriteMask;
+        }
+    }
+
     /**
      * @return the whole image even if this Sprite has been split.
      */
@@ -579,7 +614,9 @@ public class AnimatedSprite implements Cloneable, Serializable {
 
         if (this.rows > 0 & this.cols > 0) {
             animImg = splitImage(spriteImg, cols, rows);
+            animRegions = null;
         }
+        buildMasks();
     }
 
     /**
@@ -599,7 +636,9 @@ public class AnimatedSprite implements Cloneable, Serializable {
 
         if (this.rows > 0 & this.cols > 0) {
             animImg = splitImage(spriteImg, cols, rows);
+            animRegions = null;
         }
+        buildMasks();
     }
 
     /**
@@ -611,7 +650,9 @@ public class AnimatedSprite implements Cloneable, Serializable {
         this.spriteImg = img;
         if (this.rows > 0 & this.cols > 0) {
             animImg = splitImage(spriteImg, cols, rows);
+            animRegions = null;
         }
+        buildMasks();
     }
 
     /**
@@ -0,0 +1,241 @@
+package tiny.engine.entity;
+
+import java.util.Arrays;
+
+/**
+ * An Archetype is the table holding every entity with exactly the same set of
+ * components. Each field of each component is a primitive column, so a system
+ * that walks one field touches one contiguous array.
+ * <p/>
+ * Rows are kept packed: removing an entity moves the last row into its place.
+ * Column arrays are replaced when the table grows, so fetch them again after
+ * adding entities rather than keeping them between ticks.
+ *
+ * @author Damian Strain
+ */
+public final class Archetype {
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final long mask;
+    private final Component[] components;
+    private final int[] firstColumn = new int[Component.MAX_COMPONENTS];
+    private final int[] types;          // Type of each column
+    private final Object[] columns;     // int[], float[] or double[]
+    private int[] entities;
+    private int size;
+    private int capacity;
+
+    /**
+     * Constructs an empty archetype for a set of components.
+     *
+     * @param components the components of this archetype, without duplicates
+     */
+    Archetype(Component[] components) {
+        this.components = components.clone();
+
+        long bits = 0;
+        int numColumns = 0;
+        Arrays.fill(firstColumn, -1);
+        for (Component component : components) {
+            bits |= component.getMask();
+            firstColumn[component.getId()] = numColumns;
+            numColumns += component.getFieldCount();
+        }
+        mask = bits;
+
+        types = new int[numColumns];
+        columns = new Object[numColumns];
+        capacity = INITIAL_CAPACITY;
+        entities = new int[capacity];
+
+        int column = 0;
+        for (Component component : components) {
+            for (int field = 0; field < component.getFieldCount(); field++) {
+                types[column] = component.getFieldType(field);
+                columns[column] = allocate(types[column], capacity);
+                column++;
+            }
+        }
+    }
+
+    /**
+     * Returns the number of entities in this archetype.
+     *
+     * @return the number of rows
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the entity ids of each row. Only the first size() are valid.
+     *
+     * @return the entity column
+     */
+    public int[] getEntities() {
+        return entities;
+    }
+
+    /**
+     * Returns whether this archetype holds a component.
+     *
+     * @param component the component
+     * @return true if every entity here has the component
+     */
+    public boolean has(Component component) {
+        return (mask & component.getMask()) != 0;
+    }
+
+    /**
+     * Returns an int column. Only the first size() values are valid.
+     *
+     * @param component the component the field belongs to
+     * @param field the index of the field
+     * @return the column
+     */
+    public int[] getInts(Component component, int field) {
+        return (int[]) columns[column(component, field, Component.INT)];
+    }
+
+    /**
+     * Returns a float column. Only the first size() values are valid.
+     *
+     * @param component the component the field belongs to
+     * @param field the index of the field
+     * @return the column
+     */
+    public float[] getFloats(Component component, int field) {
+        return (float[]) columns[column(component, field, Component.FLOAT)];
+    }
+
+    /**
+     * Returns a double column. Only the first size() values are valid.
+     *
+     * @param component the component the field belongs to
+     * @param field the index of the field
+     * @return the column
+     */
+    public double[] getDoubles(Component component, int field) {
+        return (double[]) columns[column(component, field, Component.DOUBLE)];
+    }
+
+    /**
+     * Returns the components of this archetype.
+     *
+     * @return a copy of the components
+     */
+    public Component[] getComponents() {
+        return components.clone();
+    }
+
+    long getMask() {
+        return mask;
+    }
+
+    /**
+     * Appends a row for an entity, with every field zeroed.
+     *
+     * @param entity the entity id
+     * @return the new row
+     */
+    int add(int entity) {
+        if (size == capacity) {
+            grow();
+        }
+        for (int c = 0; c < columns.length; c++) {
+            clear(c, size);
+        }
+        entities[size] = entity;
+        return size++;
+    }
+
+    /**
+     * Removes a row by moving the last row into it.
+     *
+     * @param row the row to remove
+     * @return the entity that moved into the row, or Entity.NONE if the last
+     * row was removed
+     */
+    int remove(int row) {
+        int last = --size;
+        if (row == last) {
+            return Entity.NONE;
+        }
+        for (int c = 0; c < columns.length; c++) {
+            System.arraycopy(columns[c], last, columns[c], row, 1);
+        }
+        entities[row] = entities[last];
+        return entities[row];
+    }
+
+    /**
+     * Copies the fields this archetype shares with another from one row to
+     * another.
+     *
+     * @param row the row in this archetype
+     * @param to the archetype to copy to
+     * @param toRow the row in the other archetype
+     */
+    void copyShared(int row, Archetype to, int toRow) {
+        for (Component component : components) {
+            int dst = to.firstColumn[component.getId()];
+            if (dst < 0) {
+                continue;
+            }
+            int src = firstColumn[component.getId()];
+            for (int field = 0; field < component.getFieldCount(); field++) {
+                System.arraycopy(columns[src + field], row, to.columns[dst + field], toRow, 1);
+            }
+        }
+    }
+
+    /**
+     * Returns the column index of a field, checking its type.
+     */
+    private int column(Component component, int field, int type) {
+        int first = firstColumn[component.getId()];
+        if (first < 0) {
+            throw new RuntimeException("Archetype does not contain component: " + component);
+        }
+        if (component.getFieldType(field) != type) {
+            throw new RuntimeException("Wrong type for field " + field + " of component: " + component);
+        }
+        return first + field;
+    }
+
+    private void grow() {
+        capacity *= 2;
+        entities = Arrays.copyOf(entities, capacity);
+        for (int c = 0; c < columns.length; c++) {
+            Object column = allocate(types[c], capacity);
+            System.arraycopy(columns[c], 0, column, 0, size);
+            columns[c] = column;
+        }
+    }
+
+    private void clear(int column, int row) {
+        switch (types[column]) {
+            case Component.INT:
+                ((int[]) columns[column])[row] = 0;
+                break;
+            case Component.FLOAT:
+                ((float[]) columns[column])[row] = 0;
+                break;
+            default:
+                ((double[]) columns[column])[row] = 0;
+                break;
+        }
+    }
+
+    private static Object allocate(int type, int length) {
+        switch (type) {
+            case Component.INT:
+                return new int[length];
+            case Component.FLOAT:
+                return new float[length];
+            default:
+                return new double[length];
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package tiny.engine.entity;
+
+import java.awt.Rectangle;
+import java.util.List;
+
+/**
+ * A Broadphase finds which registered objects have overlapping bounds without
+ * testing every object against every other. After each update() it holds the
+ * list of overlapping pairs, which are the only pairs worth passing to an
+ * exact test such as AnimatedSprite.collidesWith(other, true):
+ * <pre>
+ * broadphase.update();
+ * for (int i = 0; i &lt; broadphase.getPairCount(); i++) {
+ *     Collidable a = broadphase.getFirst(i);
+ *     Collidable b = broadphase.getSecond(i);
+ *     ...
+ * }
+ * </pre>
+ * Bounds are treated as closed, so touching boxes count as overlapping, the
+ * same as AnimatedSprite.collidesWith. Implementations are not thread safe.
+ *
+ * @author Damian Strain
+ */
+public interface Broadphase {
+
+    /**
+     * Registers an object. Adding an object twice has no effect.
+     *
+     * @param object the object to add
+     */
+    public void add(Collidable object);
+
+    /**
+     * Unregisters an object.
+     *
+     * @param object the object to remove
+     * @return true if the object was registered
+     */
+    public boolean remove(Collidable object);
+
+    /**
+     * Returns the number of registered objects.
+     *
+     * @return the number of objects
+     */
+    public int size();
+
+    /**
+     * Reads the bounds of every registered object again, moves the objects
+     * that changed, and rebuilds the list of overlapping pairs.
+     */
+    public void update();
+
+    /**
+     * Returns the number of overlapping pairs found by the last update.
+     *
+     * @return the number of pairs
+     */
+    public int getPairCount();
+
+    /**
+     * Returns the first object of a pair.
+     *
+     * @param pair the index of the pair
+     * @return the first object
+     */
+    public Collidable getFirst(int pair);
+
+    /**
+     * Returns the second object of a pair.
+     *
+     * @param pair the index of the pair
+     * @return the second object
+     */
+    public Collidable getSecond(int pair);
+
+    /**
+     * Adds every object whose bounds, as of the last add or update, overlap
+     * an area to a list. Each object is added once.
+     *
+     * @param area the area to search
+     * @param out the list to add the objects to
+     * @return the number of objects added
+     */
+    public int query(Rectangle area, List<Collidable> out);
+}
@@ -0,0 +1,21 @@
+package tiny.engine.entity;
+
+import java.awt.Rectangle;
+
+/**
+ * A Collidable is anything with an axis aligned bounding box that can be
+ * registered with a Broadphase.
+ *
+ * @author Damian Strain
+ */
+public interface Collidable {
+
+    /**
+     * Returns the current bounds of this object. The Broadphase reads the
+     * bounds during add() and update() and does not keep the rectangle, so
+     * it may be reused between calls.
+     *
+     * @return the bounding box
+     */
+    public Rectangle getBounds();
+}
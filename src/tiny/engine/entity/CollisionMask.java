@@ -0,0 +1,131 @@
+package tiny.engine.entity;
+
+import java.awt.image.BufferedImage;
+
+/**
+ * A CollisionMask is a 1-bit copy of an image's alpha channel, with a bit set
+ * for every pixel that is not completely transparent. Rows are packed into
+ * longs, 64 pixels to a word, so two masks are tested for overlap a word at a
+ * time rather than a pixel at a time.
+ *
+ * @author Damian Strain
+ */
+public final class CollisionMask {
+
+    private final int width;
+    private final int height;
+    private final int wordsPerRow;
+    private final long[] bits;      // Bit x of a row is pixel x, low bit first
+
+    /**
+     * Constructs a mask from the alpha channel of an image.
+     *
+     * @param image the image to build the mask from
+     */
+    public CollisionMask(BufferedImage image) {
+        width = image.getWidth();
+        height = image.getHeight();
+        wordsPerRow = (width + 63) >>> 6;
+        bits = new long[wordsPerRow * height];
+
+        int[] row = new int[width];
+        for (int y = 0; y < height; y++) {
+            image.getRGB(0, y, width, 1, row, 0, width);
+            int base = y * wordsPerRow;
+            for (int x = 0; x < width; x++) {
+                if ((row[x] >>> 24) != 0) {
+                    bits[base + (x >>> 6)] |= 1L << x;
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the width of this mask.
+     *
+     * @return the width in pixels
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * Returns the height of this mask.
+     *
+     * @return the height in pixels
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Returns whether a pixel is solid.
+     *
+     * @param x the x position within the mask
+     * @param y the y position within the mask
+     * @return true if the pixel is not completely transparent
+     */
+    public boolean isSolid(int x, int y) {
+        return (bits[y * wordsPerRow + (x >>> 6)] & (1L << x)) != 0;
+    }
+
+    /**
+     * Returns whether this mask and another have a solid pixel in the same
+     * place when drawn at the given positions.
+     *
+     * @param x the x position of this mask
+     * @param y the y position of this mask
+     * @param other the other mask
+     * @param otherX the x position of the other mask
+     * @param otherY the y position of the other mask
+     * @return true if the masks overlap
+     */
+    public boolean overlaps(int x, int y, CollisionMask other, int otherX, int otherY) {
+        int left = Math.max(x, otherX);
+        int top = Math.max(y, otherY);
+        int overlapWidth = Math.min(x + width, otherX + other.width) - left;
+        int bottom = Math.min(y + height, otherY + other.height);
+
+        if (overlapWidth <= 0 || bottom <= top) {
+            return false;
+        }
+
+        int startA = left - x;
+        int startB = left - otherX;
+
+        for (int row = top; row < bottom; row++) {
+            int baseA = (row - y) * wordsPerRow;
+            int baseB = (row - otherY) * other.wordsPerRow;
+
+            for (int offset = 0; offset < overlapWidth; offset += 64) {
+                long a = word(bits, baseA, wordsPerRow, startA + offset);
+                long b = word(other.bits, baseB, other.wordsPerRow, startB + offset);
+                long overlap = a & b;
+
+                int remaining = overlapWidth - offset;
+                if (remaining < 64) {
+                    overlap &= (1L << remaining) - 1;
+                }
+                if (overlap != 0) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the 64 bits of a row starting at a bit position, reading zeros
+     * past the end of the row.
+     */
+    private static long word(long[] bits, int base, int wordsPerRow, int start) {
+        int index = start >>> 6;
+        int shift = start & 63;
+        long low = bits[base + index] >>> shift;
+
+        if (shift == 0 || index + 1 >= wordsPerRow) {
+            return low;
+        }
+        return low | (bits[base + index + 1] << (64 - shift));
+    }
+}
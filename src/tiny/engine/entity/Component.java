@@ -1,17 +1,105 @@
 package tiny.engine.entity;
 
-import java.awt.*;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
+ * A Component describes one kind of data an entity can have, such as a
+ * position or a velocity. It is a schema rather than a value: it lists the
+ * types of its fields, and a World stores the field values of every entity
+ * with the component in primitive columns, one column per field.
+ * <p/>
+ * Components are usually created once and kept in constants:
+ * <pre>
+ * static final Component POSITION = new Component("Position", Component.FLOAT, Component.FLOAT);
+ * </pre>
+ * Fields are addressed by their index in the constructor. At most 64
+ * components can be created.
+ *
  * @author Damian Strain
  */
-public interface Component {
+public final class Component {
 
-    public void update();
+    public static final int INT = 0;
+    public static final int FLOAT = 1;
+    public static final int DOUBLE = 2;
 
-    public void update(double deltaTime);
+    public static final int MAX_COMPONENTS = 64;
 
-    public void render(Graphics2D g2d, float interpolation);
+    private static final AtomicInteger count = new AtomicInteger();
 
-    public void render(Graphics2D g2d);
+    private final String name;
+    private final int[] types;
+    private final int id;
+
+    /**
+     * Constructs a new component with the given field types.
+     *
+     * @param name the name of the component, used in error messages
+     * @param types the type of each field, INT, FLOAT or DOUBLE
+     */
+    public Component(String name, int... types) {
+        for (int type : types) {
+            if (type < INT || type > DOUBLE) {
+                throw new IllegalArgumentException("Unknown field type " + type + " in component: " + name);
+            }
+        }
+
+        id = count.getAndIncrement();
+        if (id >= MAX_COMPONENTS) {
+            throw new RuntimeException("Too many components, cannot create: " + name);
+        }
+        this.name = name;
+        this.types = types.clone();
+    }
+
+    /**
+     * Returns the name of this component.
+     *
+     * @return the name
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Returns the number of fields in this component.
+     *
+     * @return the number of fields
+     */
+    public int getFieldCount() {
+        return types.length;
+    }
+
+    /**
+     * Returns the type of a field.
+     *
+     * @param field the index of the field
+     * @return INT, FLOAT or DOUBLE
+     */
+    public int getFieldType(int field) {
+        return types[field];
+    }
+
+    /**
+     * Returns the unique id of this component, between 0 and 63.
+     *
+     * @return the id
+     */
+    public int getId() {
+        return id;
+    }
+
+    /**
+     * Returns the bit representing this component in an archetype mask.
+     *
+     * @return the mask bit
+     */
+    long getMask() {
+        return 1L << id;
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
 }
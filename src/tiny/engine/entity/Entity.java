@@ -1,27 +1,64 @@
 package tiny.engine.entity;
 
 /**
+ * Entities are plain int ids handed out by a World. The low bits of an id are
+ * an index into the World's tables and the high bits are a generation, which
+ * is bumped each time the index is reused. An index that has been through
+ * all 128 generations is retired instead of wrapping around, so an id kept
+ * after its entity was destroyed never refers to a newer entity.
+ * <p/>
+ * This class only holds helpers for taking ids apart.
+ *
  * @author Damian Strain
  */
-public class Entity {
+public final class Entity {
 
-    public void addComponent(Component component) {
+    /**
+     * An id that never refers to an entity.
+     */
+    public static final int NONE = -1;
 
-    }
+    static final int INDEX_BITS = 24;
+    static final int INDEX_MASK = (1 << INDEX_BITS) - 1;
+    static final int GENERATION_MASK = 0x7F;        // Keeps ids positive
 
-    public void removeComponent(String componentName) {
+    /**
+     * The largest number of entities a World can hold at once, less any
+     * indices that have been retired.
+     */
+    public static final int MAX_ENTITIES = 1 << INDEX_BITS;
 
+    private Entity() {
     }
 
-    public Component getComponent(String componentName) {
-        return null;
+    /**
+     * Returns the table index of an entity id.
+     *
+     * @param entity the entity id
+     * @return the index
+     */
+    public static int index(int entity) {
+        return entity & INDEX_MASK;
     }
 
-    public void update() {
-
+    /**
+     * Returns the generation of an entity id.
+     *
+     * @param entity the entity id
+     * @return the generation
+     */
+    public static int generation(int entity) {
+        return (entity >>> INDEX_BITS) & GENERATION_MASK;
     }
 
-    public void render() {
-
+    /**
+     * Builds an entity id from an index and a generation.
+     *
+     * @param index the table index
+     * @param generation the generation
+     * @return the entity id
+     */
+    static int make(int index, int generation) {
+        return ((generation & GENERATION_MASK) << INDEX_BITS) | index;
     }
 }
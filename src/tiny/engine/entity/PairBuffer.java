@@ -0,0 +1,44 @@
+package tiny.engine.entity;
+
+import java.util.Arrays;
+
+/**
+ * A growable list of object pairs, reused between updates so finding pairs
+ * does not allocate once it has reached its working size.
+ *
+ * @author Damian Strain
+ */
+final class PairBuffer {
+
+    private Collidable[] first = new Collidable[64];
+    private Collidable[] second = new Collidable[64];
+    private int size;
+
+    void clear() {
+        Arrays.fill(first, 0, size, null);
+        Arrays.fill(second, 0, size, null);
+        size = 0;
+    }
+
+    void add(Collidable a, Collidable b) {
+        if (size == first.length) {
+            first = Arrays.copyOf(first, size * 2);
+            second = Arrays.copyOf(second, size * 2);
+        }
+        first[size] = a;
+        second[size] = b;
+        size++;
+    }
+
+    int size() {
+        return size;
+    }
+
+    Collidable getFirst(int pair) {
+        return first[pair];
+    }
+
+    Collidable getSecond(int pair) {
+        return second[pair];
+    }
+}
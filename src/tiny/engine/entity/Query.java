@@ -0,0 +1,84 @@
+package tiny.engine.entity;
+
+import java.util.Arrays;
+
+/**
+ * A Query is the live list of archetypes holding a given set of components.
+ * Queries are created by World.query() and kept up to date as new archetypes
+ * appear, so they can be held for the life of the World and iterated without
+ * allocating:
+ * <pre>
+ * for (int a = 0; a &lt; moving.getArchetypeCount(); a++) {
+ *     Archetype archetype = moving.getArchetype(a);
+ *     float[] x = archetype.getFloats(POSITION, 0);
+ *     float[] dx = archetype.getFloats(VELOCITY, 0);
+ *     for (int i = 0; i &lt; archetype.size(); i++) {
+ *         x[i] += dx[i];
+ *     }
+ * }
+ * </pre>
+ * Entities must not be created, destroyed or given components while a query
+ * is being iterated.
+ *
+ * @author Damian Strain
+ */
+public final class Query {
+
+    private final long mask;
+    private Archetype[] archetypes = new Archetype[4];
+    private int numArchetypes;
+
+    Query(long mask) {
+        this.mask = mask;
+    }
+
+    /**
+     * Returns the number of matching archetypes.
+     *
+     * @return the number of archetypes
+     */
+    public int getArchetypeCount() {
+        return numArchetypes;
+    }
+
+    /**
+     * Returns a matching archetype.
+     *
+     * @param index the index of the archetype, less than getArchetypeCount()
+     * @return the archetype
+     */
+    public Archetype getArchetype(int index) {
+        return archetypes[index];
+    }
+
+    /**
+     * Returns the number of entities matching this query.
+     *
+     * @return the number of entities
+     */
+    public int count() {
+        int total = 0;
+        for (int a = 0; a < numArchetypes; a++) {
+            total += archetypes[a].size();
+        }
+        return total;
+    }
+
+    long getMask() {
+        return mask;
+    }
+
+    /**
+     * Adds an archetype if it holds every component of this query.
+     *
+     * @param archetype the new archetype
+     */
+    void offer(Archetype archetype) {
+        if ((archetype.getMask() & mask) == mask) {
+            if (numArchetypes == archetypes.length) {
+                archetypes = Arrays.copyOf(archetypes, numArchetypes * 2);
+            }
+            archetypes[numArchetypes++] = archetype;
+        }
+    }
+}
@@ -0,0 +1,375 @@
+package tiny.engine.entity;
+
+import java.awt.Rectangle;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The SpatialHashGrid is a Broadphase that divides the world into square
+ * cells and hashes each object into every cell its bounds touch. Only objects
+ * sharing a cell are tested against each other. The grid is unbounded, and
+ * objects only change cells when their bounds cross a cell edge, so an update
+ * costs little more than reading every object's bounds.
+ * <p/>
+ * This works best when objects are of similar size and the cell size is about
+ * the size of a typical object. For a wide mix of sizes use an AabbTree.
+ *
+ * @author Damian Strain
+ */
+public final class SpatialHashGrid implements Broadphase {
+
+    /**
+     * The default width and height of a cell, in pixels.
+     */
+    public static final int DEFAULT_CELL_SIZE = 64;
+
+    private final int cellSize;
+    private final Map<Collidable, Integer> proxies = new IdentityHashMap<>();
+    private final PairBuffer pairs = new PairBuffer();
+
+    // Per proxy: the object, its bounds, and the range of cells it is in
+    private Collidable[] objects = new Collidable[64];
+    private int[] x = new int[64];
+    private int[] y = new int[64];
+    private int[] right = new int[64];
+    private int[] bottom = new int[64];
+    private int[] cellX0 = new int[64];
+    private int[] cellY0 = new int[64];
+    private int[] cellX1 = new int[64];
+    private int[] cellY1 = new int[64];
+    private int[] marks = new int[64];      // Last query that found each proxy
+    private int numProxies;
+    private int[] free = new int[16];
+    private int numFree;
+    private int mark;
+
+    // Open addressing table of cells, keyed by packed cell coordinates
+    private long[] keys = new long[256];
+    private boolean[] used = new boolean[256];
+    private int[][] members = new int[256][];
+    private int[] counts = new int[256];
+    private int numCells;
+
+    /**
+     * Constructs a new grid with the default cell size.
+     */
+    public SpatialHashGrid() {
+        this(DEFAULT_CELL_SIZE);
+    }
+
+    /**
+     * Constructs a new grid.
+     *
+     * @param cellSize the width and height of a cell, in pixels
+     */
+    public SpatialHashGrid(int cellSize) {
+        if (cellSize <= 0) {
+            throw new IllegalArgumentException("Cell size must be positive: " + cellSize);
+        }
+        this.cellSize = cellSize;
+    }
+
+    /**
+     * Returns the width and height of a cell.
+     *
+     * @return the cell size in pixels
+     */
+    public int getCellSize() {
+        return cellSize;
+    }
+
+    @Override
+    public void add(Collidable object) {
+        if (proxies.containsKey(object)) {
+            return;
+        }
+
+        int proxy;
+        if (numFree > 0) {
+            proxy = free[--numFree];
+        } else {
+            if (numProxies == objects.length) {
+                growProxies();
+            }
+            proxy = numProxies++;
+        }
+        proxies.put(object, proxy);
+        objects[proxy] = object;
+        marks[proxy] = mark;
+
+        readBounds(proxy);
+        cellX0[proxy] = cell(x[proxy]);
+        cellY0[proxy] = cell(y[proxy]);
+        cellX1[proxy] = cell(right[proxy]);
+        cellY1[proxy] = cell(bottom[proxy]);
+        insert(proxy);
+    }
+
+    @Override
+    public boolean remove(Collidable object) {
+        Integer proxy = proxies.remove(object);
+        if (proxy == null) {
+            return false;
+        }
+
+        erase(proxy);
+        objects[proxy] = null;
+        if (numFree == free.length) {
+            free = Arrays.copyOf(free, numFree * 2);
+        }
+        free[numFree++] = proxy;
+        return true;
+    }
+
+    @Override
+    public int size() {
+        return proxies.size();
+    }
+
+    @Override
+    public void update() {
+        for (int p = 0; p < numProxies; p++) {
+            if (objects[p] == null) {
+                continue;
+            }
+            readBounds(p);
+
+            // Only touch the table when the object crossed into other cells
+            int x0 = cell(x[p]);
+            int y0 = cell(y[p]);
+            int x1 = cell(right[p]);
+            int y1 = cell(bottom[p]);
+            if (x0 != cellX0[p] || y0 != cellY0[p] || x1 != cellX1[p] || y1 != cellY1[p]) {
+                erase(p);
+                cellX0[p] = x0;
+                cellY0[p] = y0;
+                cellX1[p] = x1;
+                cellY1[p] = y1;
+                insert(p);
+            }
+        }
+        findPairs();
+    }
+
+    @Override
+    public int getPairCount() {
+        return pairs.size();
+    }
+
+    @Override
+    public Collidable getFirst(int pair) {
+        return pairs.getFirst(pair);
+    }
+
+    @Override
+    public Collidable getSecond(int pair) {
+        return pairs.getSecond(pair);
+    }
+
+    @Override
+    public int query(Rectangle area, List<Collidable> out) {
+        int areaRight = area.x + area.width;
+        int areaBottom = area.y + area.height;
+        int added = 0;
+        mark++;
+
+        for (int cy = cell(area.y); cy <= cell(areaBottom); cy++) {
+            for (int cx = cell(area.x); cx <= cell(areaRight); cx++) {
+                int slot = find(cx, cy);
+                if (slot < 0) {
+                    continue;
+                }
+                int[] cellMembers = members[slot];
+                for (int i = 0; i < counts[slot]; i++) {
+                    int p = cellMembers[i];
+                    if (marks[p] != mark && x[p] <= areaRight && area.x <= right[p]
+                            && y[p] <= areaBottom && area.y <= bottom[p]) {
+                        marks[p] = mark;
+                        out.add(objects[p]);
+                        added++;
+                    }
+                }
+            }
+        }
+        return added;
+    }
+
+    /**
+     * Tests every pair of objects sharing a cell. A pair overlapping several
+     * cells is only reported by the cell holding the top left corner of the
+     * overlap, so no pair is reported twice.
+     */
+    private void findPairs() {
+        pairs.clear();
+
+        for (int slot = 0; slot < keys.length; slot++) {
+            int count = counts[slot];
+            if (count < 2) {
+                continue;
+            }
+            int[] cellMembers = members[slot];
+            int cx = (int) (keys[slot] >> 32);
+            int cy = (int) keys[slot];
+
+            for (int i = 0; i < count - 1; i++) {
+                int a = cellMembers[i];
+                for (int j = i + 1; j < count; j++) {
+                    int b = cellMembers[j];
+                    if (x[a] <= right[b] && x[b] <= right[a] && y[a] <= bottom[b] && y[b] <= bottom[a]
+                            && cell(Math.max(x[a], x[b])) == cx && cell(Math.max(y[a], y[b])) == cy) {
+                        pairs.add(objects[a], objects[b]);
+                    }
+                }
+            }
+        }
+    }
+
+    private void readBounds(int proxy) {
+        Rectangle bounds = objects[proxy].getBounds();
+        x[proxy] = bounds.x;
+        y[proxy] = bounds.y;
+        right[proxy] = bounds.x + bounds.width;
+        bottom[proxy] = bounds.y + bounds.height;
+    }
+
+    private int cell(int coordinate) {
+        return Math.floorDiv(coordinate, cellSize);
+    }
+
+    /**
+     * Adds a proxy to every cell in its range.
+     */
+    private void insert(int proxy) {
+        for (int cy = cellY0[proxy]; cy <= cellY1[proxy]; cy++) {
+            for (int cx = cellX0[proxy]; cx <= cellX1[proxy]; cx++) {
+                int slot = findOrCreate(cx, cy);
+                if (members[slot] == null) {
+                    members[slot] = new int[4];
+                } else if (counts[slot] == members[slot].length) {
+                    members[slot] = Arrays.copyOf(members[slot], counts[slot] * 2);
+                }
+                members[slot][counts[slot]++] = proxy;
+            }
+        }
+    }
+
+    /**
+     * Removes a proxy from every cell in its range.
+     */
+    private void erase(int proxy) {
+        for (int cy = cellY0[proxy]; cy <= cellY1[proxy]; cy++) {
+            for (int cx = cellX0[proxy]; cx <= cellX1[proxy]; cx++) {
+                int slot = find(cx, cy);
+                int[] cellMembers = members[slot];
+                int last = --counts[slot];
+                for (int i = 0; i <= last; i++) {
+                    if (cellMembers[i] == proxy) {
+                        cellMembers[i] = cellMembers[last];
+                        break;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the table slot of a cell, or -1 if the cell has never been used.
+     */
+    private int find(int cx, int cy) {
+        long key = key(cx, cy);
+        int mask = keys.length - 1;
+        for (int slot = hash(key) & mask; used[slot]; slot = (slot + 1) & mask) {
+            if (keys[slot] == key) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    private int findOrCreate(int cx, int cy) {
+        long key = key(cx, cy);
+        int mask = keys.length - 1;
+        int slot = hash(key) & mask;
+        while (used[slot]) {
+            if (keys[slot] == key) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        if ((numCells + 1) * 2 > keys.length) {
+            rehash();
+            return findOrCreate(cx, cy);
+        }
+        used[slot] = true;
+        keys[slot] = key;
+        numCells++;
+        return slot;
+    }
+
+    /**
+     * Rebuilds the cell table, dropping empty cells and doubling the table if
+     * it is still more than a quarter full.
+     */
+    private void rehash() {
+        long[] oldKeys = keys;
+        boolean[] oldUsed = used;
+        int[][] oldMembers = members;
+        int[] oldCounts = counts;
+
+        int live = 0;
+        for (int slot = 0; slot < oldKeys.length; slot++) {
+            if (oldUsed[slot] && oldCounts[slot] > 0) {
+                live++;
+            }
+        }
+        int capacity = (live * 4 > oldKeys.length) ? oldKeys.length * 2 : oldKeys.length;
+
+        keys = new long[capacity];
+        used = new boolean[capacity];
+        members = new int[capacity][];
+        counts = new int[capacity];
+        numCells = 0;
+
+        int mask = capacity - 1;
+        for (int old = 0; old < oldKeys.length; old++) {
+            if (!oldUsed[old] || oldCounts[old] == 0) {
+                continue;
+            }
+            int slot = hash(oldKeys[old]) & mask;
+            while (used[slot]) {
+                slot = (slot + 1) & mask;
+            }
+            used[slot] = true;
+            keys[slot] = oldKeys[old];
+            members[slot] = oldMembers[old];
+            counts[slot] = oldCounts[old];
+            numCells++;
+        }
+    }
+
+    private void growProxies() {
+        int capacity = objects.length * 2;
+        objects = Arrays.copyOf(objects, capacity);
+        x = Arrays.copyOf(x, capacity);
+        y = Arrays.copyOf(y, capacity);
+        right = Arrays.copyOf(right, capacity);
+        bottom = Arrays.copyOf(bottom, capacity);
+        cellX0 = Arrays.copyOf(cellX0, capacity);
+        cellY0 = Arrays.copyOf(cellY0, capacity);
+        cellX1 = Arrays.copyOf(cellX1, capacity);
+        cellY1 = Arrays.copyOf(cellY1, capacity);
+        marks = Arrays.copyOf(marks, capacity);
+    }
+
+    private static long key(int cx, int cy) {
+        return ((long) cx << 32) | (cy & 0xFFFFFFFFL);
+    }
+
+    private static int hash(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+}
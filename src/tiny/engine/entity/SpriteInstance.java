@@ -0,0 +1,253 @@
+package tiny.engine.entity;
+
+import java.awt.Graphics;
+import java.awt.Rectangle;
+
+/**
+ * A SpriteInstance is one sprite on screen drawn from a shared SpriteSheet.
+ * It only holds what differs between sprites of the same type: the position,
+ * the current sequence and frame, and the animation timer. Spawning another
+ * enemy of a type that is already loaded costs a few dozen bytes.
+ *
+ * @author Damian Strain
+ */
+public final class SpriteInstance implements Collidable {
+
+    private final SpriteSheet sheet;
+    private final Rectangle bounds = new Rectangle();
+
+    private int x;
+    private int y;
+    private int refX;
+    private int refY;
+
+    private String sequenceName;
+    private int[] sequence;
+    private int currentFrame = 0;
+    private int sleepTime;
+    private int currentSleepFrame;
+    private boolean runAnim = false;
+
+    /**
+     * Constructs a new instance of a sheet, playing every frame in order.
+     *
+     * @param sheet the shared sprite sheet
+     */
+    public SpriteInstance(SpriteSheet sheet) {
+        this.sheet = sheet;
+        setSequence(SpriteSheet.ALL);
+    }
+
+    /**
+     * Returns the shared sheet this instance draws from.
+     *
+     * @return the sprite sheet
+     */
+    public SpriteSheet getSheet() {
+        return sheet;
+    }
+
+    /**
+     * Sets the position of the reference pixel.
+     *
+     * @param x the x position
+     * @param y the y position
+     */
+    public void setPosition(int x, int y) {
+        this.x = x;
+        this.y = y;
+    }
+
+    /**
+     * Defines which pixel of the frame is placed on the x/y position.
+     *
+     * @param x the x position of the reference pixel within the frame
+     * @param y the y position of the reference pixel within the frame
+     */
+    public void setRefPixel(int x, int y) {
+        refX = x;
+        refY = y;
+    }
+
+    /**
+     * @return the current x position of this sprite.
+     */
+    public int getX() {
+        return x;
+    }
+
+    /**
+     * @return the current y position of this sprite.
+     */
+    public int getY() {
+        return y;
+    }
+
+    /**
+     * @return the current x position of the top left corner of this sprite.
+     */
+    public int getRealX() {
+        return x - refX;
+    }
+
+    /**
+     * @return the current y position of the top left corner of this sprite.
+     */
+    public int getRealY() {
+        return y - refY;
+    }
+
+    /**
+     * Switches to one of the sheet's sequences, starting from its first frame.
+     *
+     * @param name the name of the sequence
+     */
+    public void setSequence(String name) {
+        sequence = sheet.sequence(name);
+        sequenceName = name;
+        currentFrame = 0;
+    }
+
+    /**
+     * @return the name of the current sequence.
+     */
+    public String getSequence() {
+        return sequenceName;
+    }
+
+    /**
+     * Starts the animation. continueAnimation() must then be called once per
+     * update to animate the sprite.
+     *
+     * @param sleep the number of updates to show each frame for
+     */
+    public void setAnimation(int sleep) {
+        sleepTime = sleep;
+        currentSleepFrame = 0;
+        runAnim = true;
+    }
+
+    /**
+     * @return true if this sprite is animating, otherwise false.
+     */
+    public boolean isAnimating() {
+        return runAnim;
+    }
+
+    /**
+     * Stops the animation.
+     */
+    public void stopAnimation() {
+        runAnim = false;
+    }
+
+    /**
+     * Continues the animation if setAnimation() has been used.
+     */
+    public void continueAnimation() {
+        if (runAnim && currentSleepFrame >= sleepTime) {
+            currentSleepFrame = 0;
+            nextFrame();
+        } else {
+            currentSleepFrame++;
+        }
+    }
+
+    /**
+     * Moves to the next frame of the sequence, wrapping to the start.
+     */
+    public void nextFrame() {
+        currentFrame++;
+        if (currentFrame >= sequence.length) {
+            currentFrame = 0;
+        }
+    }
+
+    /**
+     * @return the position within the current sequence.
+     */
+    public int getFrame() {
+        return currentFrame;
+    }
+
+    /**
+     * Sets the position within the current sequence.
+     *
+     * @param frame the position within the sequence
+     */
+    public void setFrame(int frame) {
+        if (frame >= 0 && frame < sequence.length) {
+            currentFrame = frame;
+        }
+    }
+
+    /**
+     * @return the index in the sheet of the frame being shown.
+     */
+    public int getSheetFrame() {
+        return sequence[currentFrame];
+    }
+
+    /**
+     * @return the width of this sprite.
+     */
+    public int getWidth() {
+        return sheet.getFrameWidth();
+    }
+
+    /**
+     * @return the height of this sprite.
+     */
+    public int getHeight() {
+        return sheet.getFrameHeight();
+    }
+
+    /**
+     * Paints the current frame.
+     *
+     * @param g the Graphics to paint with
+     */
+    public void paint(Graphics g) {
+        sheet.draw(g, sequence[currentFrame], getRealX(), getRealY());
+    }
+
+    /**
+     * Returns the boundaries of this sprite. The same rectangle is reused by
+     * every call.
+     *
+     * @return the bounds
+     */
+    @Override
+    public Rectangle getBounds() {
+        bounds.setBounds(getRealX(), getRealY(), getWidth(), getHeight());
+        return bounds;
+    }
+
+    /**
+     * @return the collision mask of the current frame.
+     */
+    public CollisionMask getCollisionMask() {
+        return sheet.getMask(sequence[currentFrame]);
+    }
+
+    /**
+     * Checks if this sprite is colliding with another.
+     *
+     * @param other the sprite to check a collision with
+     * @param pixelPerfect if true, opaque pixels must overlap, otherwise only
+     * the bounding boxes are checked
+     * @return true if the sprites collide, otherwise false
+     */
+    public boolean collidesWith(SpriteInstance other, boolean pixelPerfect) {
+        int ax = getRealX();
+        int ay = getRealY();
+        int bx = other.getRealX();
+        int by = other.getRealY();
+
+        if (ax + getWidth() < bx || bx + other.getWidth() < ax
+                || ay + getHeight() < by || by + other.getHeight() < ay) {
+            return false;
+        }
+        return !pixelPerfect || getCollisionMask().overlaps(ax, ay, other.getCollisionMask(), bx, by);
+    }
+}
@@ -0,0 +1,215 @@
+package tiny.engine.entity;
+
+import java.awt.Color;
+import java.awt.Graphics;
+import java.awt.image.BufferedImage;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import tiny.engine.utils.AtlasRegion;
+import tiny.engine.utils.ImageUtils;
+import tiny.engine.utils.TextureAtlas;
+
+/**
+ * A SpriteSheet holds everything about an animated sprite that does not change
+ * per instance: the split frames, their collision masks and the named frame
+ * sequences. It is immutable, so one sheet can be shared by any number of
+ * SpriteInstances and memory grows with the number of sheets rather than the
+ * number of sprites on screen.
+ *
+ * @author Damian Strain
+ */
+public final class SpriteSheet {
+
+    /**
+     * The name of the sequence that plays every frame in order.
+     */
+    public static final String ALL = "ALL";
+
+    private final BufferedImage[] frames;
+    private final AtlasRegion[] regions;        // Null unless packed into an atlas
+    private final CollisionMask[] masks;
+    private final Map<String, int[]> sequences;
+
+    /**
+     * Constructs a sheet by splitting an image into frames.
+     *
+     * @param image the sprite sheet image
+     * @param cols the number of columns to split the image into
+     * @param rows the number of rows to split the image into
+     */
+    public SpriteSheet(BufferedImage image, int cols, int rows) {
+        this(image, cols, rows, null, null);
+    }
+
+    /**
+     * Constructs a sheet by splitting an image into frames, optionally making
+     * a colour transparent first and packing the frames into an atlas.
+     *
+     * @param image the sprite sheet image
+     * @param cols the number of columns to split the image into
+     * @param rows the number of rows to split the image into
+     * @param transparent the colour to make transparent, or null
+     * @param atlas the atlas to pack the frames into, or null for separate
+     * images
+     */
+    public SpriteSheet(BufferedImage image, int cols, int rows, Color transparent, TextureAtlas atlas) {
+        if (transparent != null) {
+            image = ImageUtils.makeTransparent(image, transparent);
+        }
+
+        if (atlas != null) {
+            regions = atlas.addSheet(image, cols, rows);
+            frames = new BufferedImage[regions.length];
+            for (int i = 0; i < regions.length; i++) {
+                frames[i] = regions[i].toImage();
+            }
+        } else {
+            regions = null;
+            frames = ImageUtils.splitSpriteSheet(image, cols, rows);
+        }
+
+        masks = new CollisionMask[frames.length];
+        int[] all = new int[frames.length];
+        for (int i = 0; i < frames.length; i++) {
+            masks[i] = new CollisionMask(frames[i]);
+            all[i] = i;
+        }
+
+        Map<String, int[]> map = new HashMap<>();
+        map.put(ALL, all);
+        sequences = Collections.unmodifiableMap(map);
+    }
+
+    private SpriteSheet(SpriteSheet sheet, Map<String, int[]> sequences) {
+        frames = sheet.frames;
+        regions = sheet.regions;
+        masks = sheet.masks;
+        this.sequences = Collections.unmodifiableMap(sequences);
+    }
+
+    /**
+     * Returns a sheet sharing this sheet's frames with one more named
+     * sequence. This sheet is left unchanged.
+     *
+     * @param name the name of the sequence
+     * @param frames the frame indices to play, in order
+     * @return the new sheet
+     */
+    public SpriteSheet withSequence(String name, int... frames) {
+        for (int frame : frames) {
+            if (frame < 0 || frame >= this.frames.length) {
+                throw new IllegalArgumentException("No frame " + frame + " in sequence: " + name);
+            }
+        }
+        Map<String, int[]> map = new HashMap<>(sequences);
+        map.put(name, frames.clone());
+        return new SpriteSheet(this, map);
+    }
+
+    /**
+     * Returns whether this sheet has a sequence.
+     *
+     * @param name the name of the sequence
+     * @return true if the sequence exists
+     */
+    public boolean hasSequence(String name) {
+        return sequences.containsKey(name);
+    }
+
+    /**
+     * Returns the frame indices of a sequence.
+     *
+     * @param name the name of the sequence
+     * @return a copy of the frame indices
+     */
+    public int[] getSequence(String name) {
+        return sequence(name).clone();
+    }
+
+    /**
+     * Returns the shared frame indices of a sequence, which must not be
+     * changed.
+     */
+    int[] sequence(String name) {
+        int[] sequence = sequences.get(name);
+        if (sequence == null) {
+            throw new RuntimeException("No such sequence: " + name);
+        }
+        return sequence;
+    }
+
+    /**
+     * Returns the number of frames.
+     *
+     * @return the number of frames
+     */
+    public int getFrameCount() {
+        return frames.length;
+    }
+
+    /**
+     * Returns the image of a frame. Draw frames with draw() rather than this
+     * image, which may be a view into an atlas page.
+     *
+     * @param frame the frame index
+     * @return the frame image
+     */
+    public BufferedImage getFrame(int frame) {
+        return frames[frame];
+    }
+
+    /**
+     * Returns the atlas region of a frame.
+     *
+     * @param frame the frame index
+     * @return the region, or null if this sheet was not packed into an atlas
+     */
+    public AtlasRegion getRegion(int frame) {
+        return (regions != null) ? regions[frame] : null;
+    }
+
+    /**
+     * Returns the collision mask of a frame.
+     *
+     * @param frame the frame index
+     * @return the collision mask
+     */
+    public CollisionMask getMask(int frame) {
+        return masks[frame];
+    }
+
+    /**
+     * Returns the width of a frame.
+     *
+     * @return the frame width in pixels
+     */
+    public int getFrameWidth() {
+        return frames[0].getWidth();
+    }
+
+    /**
+     * Returns the height of a frame.
+     *
+     * @return the frame height in pixels
+     */
+    public int getFrameHeight() {
+        return frames[0].getHeight();
+    }
+
+    /**
+     * Draws a frame with its top left corner at the given position.
+     *
+     * @param g the Graphics context to draw with
+     * @param frame the frame index
+     * @param x the x position to draw at
+     * @param y the y position to draw at
+     */
+    public void draw(Graphics g, int frame, int x, int y) {
+        if (regions != null) {
+            regions[frame].draw(g, x, y);
+        } else {
+            g.drawImage(frames[frame], x, y, null);
+        }
+    }
+}
@@ -0,0 +1,347 @@
+package tiny.engine.entity;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The World stores entities and their components. Entities with the same set
+ * of components share an Archetype, a table of primitive columns, so systems
+ * can update thousands of them with plain loops over arrays by iterating a
+ * Query.
+ * <p/>
+ * Single values can also be read and written through the World by entity id,
+ * which is simpler but slower than iterating a query. A World is not thread
+ * safe.
+ *
+ * @author Damian Strain
+ */
+public final class World {
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    private final List<Archetype> archetypes = new ArrayList<>();
+    private final Map<Long, Archetype> archetypesByMask = new HashMap<>();
+    private final Map<Long, Query> queries = new HashMap<>();
+    private final Component[] known = new Component[Component.MAX_COMPONENTS];
+
+    // Per entity index
+    private int[] generations = new int[INITIAL_CAPACITY];
+    private Archetype[] archetypeOf = new Archetype[INITIAL_CAPACITY];
+    private int[] rowOf = new int[INITIAL_CAPACITY];
+    private int numIndices;
+
+    // Indices of destroyed entities, ready for reuse
+    private int[] free = new int[INITIAL_CAPACITY];
+    private int numFree;
+
+    private int numEntities;
+
+    /**
+     * Creates an entity with the given components, with every field zeroed.
+     *
+     * @param components the components of the new entity
+     * @return the entity id
+     */
+    public int create(Component... components) {
+        int index;
+        if (numFree > 0) {
+            index = free[--numFree];
+        } else {
+            if (numIndices == Entity.MAX_ENTITIES) {
+                throw new RuntimeException("Too many entities: " + numIndices);
+            }
+            if (numIndices == generations.length) {
+                int capacity = generations.length * 2;
+                generations = Arrays.copyOf(generations, capacity);
+                archetypeOf = Arrays.copyOf(archetypeOf, capacity);
+                rowOf = Arrays.copyOf(rowOf, capacity);
+            }
+            index = numIndices++;
+        }
+
+        int entity = Entity.make(index, generations[index]);
+        Archetype archetype = getArchetype(maskOf(components));
+        archetypeOf[index] = archetype;
+        rowOf[index] = archetype.add(entity);
+        numEntities++;
+        return entity;
+    }
+
+    /**
+     * Destroys an entity. Its id will never refer to another entity.
+     *
+     * @param entity the entity id
+     */
+    public void destroy(int entity) {
+        int index = check(entity);
+        removeRow(archetypeOf[index], rowOf[index]);
+        archetypeOf[index] = null;
+        numEntities--;
+
+        // Retire the index rather than let its generation wrap around
+        if (generations[index] == Entity.GENERATION_MASK) {
+            return;
+        }
+        generations[index]++;
+
+        if (numFree == free.length) {
+            free = Arrays.copyOf(free, numFree * 2);
+        }
+        free[numFree++] = index;
+    }
+
+    /**
+     * Returns whether an id refers to an entity that has not been destroyed.
+     *
+     * @param entity the entity id
+     * @return true if the entity is alive
+     */
+    public boolean isAlive(int entity) {
+        int index = Entity.index(entity);
+        return entity >= 0 && index < numIndices && archetypeOf[index] != null
+                && generations[index] == Entity.generation(entity);
+    }
+
+    /**
+     * Returns the number of live entities.
+     *
+     * @return the number of entities
+     */
+    public int size() {
+        return numEntities;
+    }
+
+    /**
+     * Returns whether an entity has a component.
+     *
+     * @param entity the entity id
+     * @param component the component
+     * @return true if the entity has the component
+     */
+    public boolean has(int entity, Component component) {
+        return archetypeOf[check(entity)].has(component);
+    }
+
+    /**
+     * Adds a component to an entity, with its fields zeroed. This moves the
+     * entity to another archetype.
+     *
+     * @param entity the entity id
+     * @param component the component to add
+     */
+    public void add(int entity, Component component) {
+        int index = check(entity);
+        Archetype from = archetypeOf[index];
+        if (!from.has(component)) {
+            known[component.getId()] = component;
+            move(index, from, getArchetype(from.getMask() | component.getMask()));
+        }
+    }
+
+    /**
+     * Removes a component from an entity. This moves the entity to another
+     * archetype.
+     *
+     * @param entity the entity id
+     * @param component the component to remove
+     */
+    public void remove(int entity, Component component) {
+        int index = check(entity);
+        Archetype from = archetypeOf[index];
+        if (from.has(component)) {
+            move(index, from, getArchetype(from.getMask() & ~component.getMask()));
+        }
+    }
+
+    /**
+     * Returns the archetype an entity is stored in.
+     *
+     * @param entity the entity id
+     * @return the archetype
+     */
+    public Archetype getArchetypeOf(int entity) {
+        return archetypeOf[check(entity)];
+    }
+
+    /**
+     * Returns the row of an entity in its archetype.
+     *
+     * @param entity the entity id
+     * @return the row
+     */
+    public int getRowOf(int entity) {
+        return rowOf[check(entity)];
+    }
+
+    /**
+     * Returns an int field of an entity.
+     *
+     * @param entity the entity id
+     * @param component the component the field belongs to
+     * @param field the index of the field
+     * @return the value
+     */
+    public int getInt(int entity, Component component, int field) {
+        int index = check(entity);
+        return archetypeOf[index].getInts(component, field)[rowOf[index]];
+    }
+
+    /**
+     * Sets an int field of an entity.
+     *
+     * @param entity the entity id
+     * @param component the component the field belongs to
+     * @param field the index of the field
+     * @param value the new value
+     */
+    public void setInt(int entity, Component component, int field, int value) {
+        int index = check(entity);
+        archetypeOf[index].getInts(component, field)[rowOf[index]] = value;
+    }
+
+    /**
+     * Returns a float field of an entity.
+     *
+     * @param entity the entity id
+     * @param component the component the field belongs to
+     * @param field the index of the field
+     * @return the value
+     */
+    public float getFloat(int entity, Component component, int field) {
+        int index = check(entity);
+        return archetypeOf[index].getFloats(component, field)[rowOf[index]];
+    }
+
+    /**
+     * Sets a float field of an entity.
+     *
+     * @param entity the entity id
+     * @param component the component the field belongs to
+     * @param field the index of the field
+     * @param value the new value
+     */
+    public void setFloat(int entity, Component component, int field, float value) {
+        int index = check(entity);
+        archetypeOf[index].getFloats(component, field)[rowOf[index]] = value;
+    }
+
+    /**
+     * Returns a double field of an entity.
+     *
+     * @param entity the entity id
+     * @param component the component the field belongs to
+     * @param field the index of the field
+     * @return the value
+     */
+    public double getDouble(int entity, Component component, int field) {
+        int index = check(entity);
+        return archetypeOf[index].getDoubles(component, field)[rowOf[index]];
+    }
+
+    /**
+     * Sets a double field of an entity.
+     *
+     * @param entity the entity id
+     * @param component the component the field belongs to
+     * @param field the index of the field
+     * @param value the new value
+     */
+    public void setDouble(int entity, Component component, int field, double value) {
+        int index = check(entity);
+        archetypeOf[index].getDoubles(component, field)[rowOf[index]] = value;
+    }
+
+    /**
+     * Returns the query for entities with every given component. Queries are
+     * cached, so asking twice for the same components returns the same query.
+     *
+     * @param components the components an entity must have
+     * @return the query
+     */
+    public Query query(Component... components) {
+        long mask = maskOf(components);
+        Query query = queries.get(mask);
+
+        if (query == null) {
+            query = new Query(mask);
+            for (Archetype archetype : archetypes) {
+                query.offer(archetype);
+            }
+            queries.put(mask, query);
+        }
+        return query;
+    }
+
+    /**
+     * Returns the archetype for a set of components, creating it and adding
+     * it to the matching queries if needed.
+     */
+    private Archetype getArchetype(long mask) {
+        Archetype archetype = archetypesByMask.get(mask);
+
+        if (archetype == null) {
+            Component[] components = new Component[Long.bitCount(mask)];
+            int n = 0;
+            for (int id = 0; id < known.length; id++) {
+                if ((mask & (1L << id)) != 0) {
+                    components[n++] = known[id];
+                }
+            }
+            archetype = new Archetype(components);
+            archetypes.add(archetype);
+            archetypesByMask.put(mask, archetype);
+            for (Query query : queries.values()) {
+                query.offer(archetype);
+            }
+        }
+        return archetype;
+    }
+
+    /**
+     * Moves an entity to another archetype, keeping the fields they share.
+     */
+    private void move(int index, Archetype from, Archetype to) {
+        int row = rowOf[index];
+        int toRow = to.add(Entity.make(index, generations[index]));
+        from.copyShared(row, to, toRow);
+        removeRow(from, row);
+        archetypeOf[index] = to;
+        rowOf[index] = toRow;
+    }
+
+    /**
+     * Removes a row and fixes the row of the entity that moved into it.
+     */
+    private void removeRow(Archetype archetype, int row) {
+        int moved = archetype.remove(row);
+        if (moved != Entity.NONE) {
+            rowOf[Entity.index(moved)] = row;
+        }
+    }
+
+    /**
+     * Returns the index of a live entity, throwing if it is not alive.
+     */
+    private int check(int entity) {
+        if (!isAlive(entity)) {
+            throw new RuntimeException("Entity is not alive: " + entity);
+        }
+        return Entity.index(entity);
+    }
+
+    /**
+     * Returns the mask of a set of components, remembering each component so
+     * archetypes can be built from masks later.
+     */
+    private long maskOf(Component[] components) {
+        long mask = 0;
+        for (Component component : components) {
+            known[component.getId()] = component;
+            mask |= component.getMask();
+        }
+        return mask;
+    }
+}
@@ -1,71 +1,291 @@
 package tiny.engine.input;
 
-import java.util.Collection;
-import java.util.LinkedList;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
 
 /**
  * The EventQueue Class provides basic thread-safe and deterministic event
  * handling for input. Events that occur between update calls are placed into
  * the event queue. When update is called, each event is processed, then the
- * event queue is moved to the publicly accessible events List.
+ * processed events are kept as the publicly accessible events of this tick.
+ * <p/>
+ * Events are stored as plain values in a fixed size ring, not as AWT event
+ * objects. Any thread may add events without locking, while update() and the
+ * event accessors must only be called from the game thread. If events arrive
+ * faster than update() drains them, coalesced events such as mouse motion are
+ * dropped first, once the ring is three quarters full, leaving the rest for
+ * presses and releases. If even those are dropped, resync() is called after
+ * the next update so no key or button is left stuck down.
  *
  * @author Damian Strain
  */
-public abstract class EventQueue<T> {
+public abstract class EventQueue {
 
-    private LinkedList<T> events = new LinkedList<T>();
-    private LinkedList<T> eventQueue = new LinkedList<T>();
+    /**
+     * The default number of events the ring holds between updates.
+     */
+    public static final int DEFAULT_CAPACITY = 1024;
+
+    private static final int FIELDS = 5;
+
+    // The ring, with the fields of each event packed together
+    private final int capacity;
+    private final int[] fields;
+    private final long[] times;
+    private final AtomicLongArray published;    // Sequence number each slot was last written for
+    private final AtomicLong tail = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private volatile boolean lost = false;      // An event that changes state was dropped
+    private volatile long head = 0;
+
+    // The events processed by the last update
+    private int[] events = new int[64 * FIELDS];
+    private long[] eventTimes = new long[64];
+    private int numEvents;
+
+    private InputRecorder recorder;
+    private int device;
+
+    private final InputRecord record = new InputRecord();
+    private final InputRecord pending = new InputRecord();     // Last coalesced event of a run
+    private final InputRecord event = new InputRecord();
+
+    /**
+     * Constructs an event queue holding the default number of events.
+     */
+    public EventQueue() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Constructs an event queue.
+     *
+     * @param capacity the number of events the ring holds, rounded up to a
+     * power of two
+     */
+    public EventQueue(int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+        this.capacity = size;
+        fields = new int[size * FIELDS];
+        times = new long[size];
+        published = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            published.set(i, i - size);
+        }
+    }
+
+    /**
+     * Adds an event to the event queue, timed now. This may be called from
+     * any thread.
+     *
+     * @param type the AWT event id
+     * @param code the key code, key character, button or wheel rotation
+     * @param x the x position, or 0
+     * @param y the y position, or 0
+     * @param modifiers the extended modifiers
+     * @return false if the queue was full and the event was dropped
+     */
+    public final boolean add(int type, int code, int x, int y, int modifiers) {
+        return add(type, code, x, y, modifiers, System.nanoTime());
+    }
+
+    /**
+     * Adds a copy of a recorded event to the event queue, keeping its time.
+     * This may be called from any thread.
+     *
+     * @param record the event to add
+     * @return false if the queue was full and the event was dropped
+     */
+    public final boolean add(InputRecord record) {
+        return add(record.type, record.code, record.x, record.y, record.modifiers, record.time);
+    }
+
+    private boolean add(int type, int code, int x, int y, int modifiers, long time) {
+        // Keep a quarter of the ring free of events that are safe to lose
+        boolean coalesced = isCoalesced(type);
+        long limit = coalesced ? capacity - capacity / 4 : capacity;
+
+        long sequence;
+        do {
+            sequence = tail.get();
+            if (sequence - head >= limit) {
+                dropped.incrementAndGet();
+                if (!coalesced) {
+                    lost = true;
+                }
+                return false;
+            }
+        } while (!tail.compareAndSet(sequence, sequence + 1));
+
+        int slot = (int) sequence & (capacity - 1);
+        int f = slot * FIELDS;
+        fields[f] = type;
+        fields[f + 1] = code;
+        fields[f + 2] = x;
+        fields[f + 3] = y;
+        fields[f + 4] = modifiers;
+        times[slot] = time;
+
+        // Publish the slot, the consumer reads the fields after seeing this
+        published.lazySet(slot, sequence);
+        return true;
+    }
 
     /**
-     * Adds an event to the event queue.
+     * Returns the number of events processed by the last update.
      *
-     * @param newEvent the event to be added
+     * @return the number of events
      */
-    public final synchronized void add(T newEvent) {
-        eventQueue.add(newEvent);
+    public final int getEventCount() {
+        return numEvents;
     }
 
     /**
-     * Adds events to the event queue. The events will be processed during the
-     * next update.
+     * Returns an event processed by the last update. The same record is
+     * refilled by every call.
      *
-     * @param newEvents the events to be added
+     * @param index the index of the event, in the order they arrived
+     * @return the event
      */
-    public final synchronized void addEvents(Collection<T> newEvents) {
-        eventQueue.addAll(newEvents);
+    public final InputRecord getEvent(int index) {
+        if (index < 0 || index >= numEvents) {
+            throw new IndexOutOfBoundsException("Event " + index + " of " + numEvents);
+        }
+        int f = index * FIELDS;
+        event.set(events[f], events[f + 1], events[f + 2], events[f + 3], events[f + 4], eventTimes[index]);
+        return event;
+    }
+
+    /**
+     * Returns the number of events dropped because the queue was full.
+     *
+     * @return the number of dropped events
+     */
+    public final long getDroppedCount() {
+        return dropped.get();
     }
 
     /**
-     * Returns a list of events that occurred before the last update.
+     * Sets the recorder every drained event is written to.
      *
-     * @return a List of events
+     * @param recorder the recorder, or null to stop recording
+     * @param device the device this queue is recorded as
      */
-    public final LinkedList<T> getEvents() {
-        return events;
+    final void setRecorder(InputRecorder recorder, int device) {
+        this.recorder = recorder;
+        this.device = device;
     }
 
     /**
      * Override to perform any custom processing for events. When update() is
-     * called, this will be called for each event in the queue.
+     * called, this will be called for each event in the queue. The record is
+     * reused for the next event.
      *
      * @param event the event to be processed
      */
-    protected abstract void processEvent(T event);
+    protected abstract void processEvent(InputRecord event);
+
+    /**
+     * Override to coalesce events. A run of events of the same type that this
+     * returns true for is processed and kept as the last event of the run
+     * only. The events it replaced are passed to processCoalesced instead.
+     *
+     * Coalesced events are also the first to be dropped when the queue is
+     * filling up. This may be called from any thread.
+     *
+     * @param type the AWT event id
+     * @return true if a later event of the same type may replace this one
+     */
+    protected boolean isCoalesced(int type) {
+        return false;
+    }
+
+    /**
+     * Override to see coalesced events that a later event replaced, and so
+     * were never passed to processEvent. This does nothing by default.
+     *
+     * @param event the replaced event
+     */
+    protected void processCoalesced(InputRecord event) {
+    }
+
+    /**
+     * Override to reset state after events that are not coalesced were
+     * dropped because the queue was full. A lost release would otherwise
+     * leave a key or button held down until it is pressed again. This is
+     * called at the end of update() and does nothing by default.
+     */
+    protected void resync() {
+    }
 
     /**
      * This method processes the event queue. The processEvent() method is
-     * called for each event in the queue. Events are then set to the eventQueue
-     * List, and a new eventQueue is created.
+     * called for each event in the queue, and the events are then kept until
+     * the next update, where getEvent() can read them.
      * <p/>
-     * As events are no longer needed, the user is free to modify them. If a
-     * reference to events is not saved before the next update, the contents
-     * will be lost.
+     * This must only be called from the game thread.
+     */
+    public void update() {
+        numEvents = 0;
+        long next = head;
+        boolean held = false;
+
+        // Stop at the first slot that has been claimed but not yet written
+        while (next < tail.get() && published.get((int) next & (capacity - 1)) == next) {
+            int slot = (int) next & (capacity - 1);
+            int f = slot * FIELDS;
+            record.set(fields[f], fields[f + 1], fields[f + 2], fields[f + 3], fields[f + 4], times[slot]);
+            next++;
+            head = next;// Free the slot before processing
+
+            if (recorder != null) {
+                recorder.record(device, record);
+            }
+
+            // Hold back coalesced events until the end of their run
+            if (held) {
+                if (pending.type == record.type && isCoalesced(record.type)) {
+                    processCoalesced(pending);
+                } else {
+                    keep(pending);
+                    processEvent(pending);
+                }
+                held = false;
+            }
+            if (isCoalesced(record.type)) {
+                pending.set(record);
+                held = true;
+            } else {
+                keep(record);
+                processEvent(record);
+            }
+        }
+        if (held) {
+            keep(pending);
+            processEvent(pending);
+        }
+
+        if (lost) {
+            lost = false;
+            resync();
+        }
+    }
+
+    /**
+     * Keeps a copy of an event for getEvent().
      */
-    public synchronized void update() {
-        for (T event : eventQueue) {
-            processEvent(event);
+    private void keep(InputRecord record) {
+        if (numEvents == eventTimes.length) {
+            events = Arrays.copyOf(events, events.length * 2);
+            eventTimes = Arrays.copyOf(eventTimes, eventTimes.length * 2);
         }
-        events = eventQueue;
-        eventQueue = new LinkedList<T>();
+        int f = numEvents * FIELDS;
+        events[f] = record.type;
+        events[f + 1] = record.code;
+        events[f + 2] = record.x;
+        events[f + 3] = record.y;
+        events[f + 4] = record.modifiers;
+        eventTimes[numEvents++] = record.time;
     }
 }
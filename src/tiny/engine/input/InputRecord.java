@@ -0,0 +1,98 @@
+package tiny.engine.input;
+
+/**
+ * An InputRecord is one input event stored as plain values. EventQueues hand
+ * the same InputRecord to processEvent for every event, refilled each time,
+ * so reading input allocates nothing. Copy out any values that need to be
+ * kept.
+ * <p/>
+ * The type is the AWT event id, such as KeyEvent.KEY_PRESSED or
+ * MouseEvent.MOUSE_MOVED. What the code holds depends on the type: the key
+ * code for key presses and releases, the key character for KEY_TYPED, the
+ * button for mouse buttons and the rotation for the mouse wheel.
+ *
+ * @author Damian Strain
+ */
+public final class InputRecord {
+
+    int type;
+    int code;
+    int x;
+    int y;
+    int modifiers;
+    long time;
+
+    /**
+     * Returns the AWT event id of this event.
+     *
+     * @return the event type
+     */
+    public int getType() {
+        return type;
+    }
+
+    /**
+     * Returns the key code, key character, mouse button or wheel rotation of
+     * this event, depending on its type.
+     *
+     * @return the event code
+     */
+    public int getCode() {
+        return code;
+    }
+
+    /**
+     * Returns the x position of the mouse, or 0 for key events.
+     *
+     * @return the x position
+     */
+    public int getX() {
+        return x;
+    }
+
+    /**
+     * Returns the y position of the mouse, or 0 for key events.
+     *
+     * @return the y position
+     */
+    public int getY() {
+        return y;
+    }
+
+    /**
+     * Returns the extended modifiers of this event, as from
+     * InputEvent.getModifiersEx().
+     *
+     * @return the modifiers
+     */
+    public int getModifiers() {
+        return modifiers;
+    }
+
+    /**
+     * Returns the System.nanoTime() at which this event was queued.
+     *
+     * @return the time in nanoseconds
+     */
+    public long getTime() {
+        return time;
+    }
+
+    /**
+     * Copies every value of another record into this one.
+     *
+     * @param record the record to copy
+     */
+    public void set(InputRecord record) {
+        set(record.type, record.code, record.x, record.y, record.modifiers, record.time);
+    }
+
+    void set(int type, int code, int x, int y, int modifiers, long time) {
+        this.type = type;
+        this.code = code;
+        this.x = x;
+        this.y = y;
+        this.modifiers = modifiers;
+        this.time = time;
+    }
+}
@@ -0,0 +1,153 @@
+package tiny.engine.input;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * The InputRecorder writes every event drained by the keyboard, mouse and
+ * mouse wheel to a compact binary log, one block per update. An InputReplay
+ * can feed the log back in, so a session plays out the same way again.
+ * <p/>
+ * The log starts with a magic number and version. Each tick is then written
+ * as a count followed by that many events, each as a device byte and the
+ * event values as variable length integers. Times are stored relative to the
+ * previous event, so most events take a handful of bytes. The log is flushed
+ * every 60 ticks, so a game that dies without closing it loses little.
+ *
+ * @author Damian Strain
+ */
+public final class InputRecorder {
+
+    static final int MAGIC = 0x54494E50;       // "TINP"
+    static final int VERSION = 1;
+
+    static final int KEYBOARD = 0;
+    static final int MOUSE = 1;
+    static final int MOUSE_WHEEL = 2;
+
+    private static final int FLUSH_TICKS = 60;     // Flush about once a second
+
+    private final DataOutputStream out;
+    private final EventQueue[] queues;
+
+    // The events of the current tick, written out by endTick()
+    private byte[] tickBuffer = new byte[1024];
+    private int tickLength;
+    private int tickEvents;
+    private long lastTime;
+    private long ticks;
+
+    /**
+     * Constructs a recorder and starts recording the given devices.
+     *
+     * @param out the stream to write the log to
+     * @param keyboard the keyboard to record
+     * @param mouse the mouse to record
+     * @param mouseWheel the mouse wheel to record
+     */
+    public InputRecorder(OutputStream out, Keyboard keyboard, Mouse mouse, MouseWheel mouseWheel) {
+        this.out = new DataOutputStream(new BufferedOutputStream(out));
+        queues = new EventQueue[]{keyboard, mouse, mouseWheel};
+        try {
+            this.out.writeInt(MAGIC);
+            this.out.writeByte(VERSION);
+        } catch (IOException e) {
+            throw new RuntimeException("Could not write input log", e);
+        }
+        for (int i = 0; i < queues.length; i++) {
+            queues[i].setRecorder(this, i);
+        }
+    }
+
+    /**
+     * Adds a drained event to the current tick.
+     *
+     * @param device the device the event came from
+     * @param event the event
+     */
+    void record(int device, InputRecord event) {
+        if (tickLength + 64 > tickBuffer.length) {
+            tickBuffer = Arrays.copyOf(tickBuffer, tickBuffer.length * 2);
+        }
+        tickBuffer[tickLength++] = (byte) device;
+        writeVar(event.type);
+        writeVar(zigZag(event.code));
+        writeVar(zigZag(event.x));
+        writeVar(zigZag(event.y));
+        writeVar(zigZag(event.modifiers));
+        writeVar(zigZag(event.time - lastTime));
+        lastTime = event.time;
+        tickEvents++;
+    }
+
+    /**
+     * Ends the current tick and writes its events to the log. This should be
+     * called once per update, after every device has been updated.
+     */
+    public void endTick() {
+        try {
+            writeVar(out, tickEvents);
+            out.write(tickBuffer, 0, tickLength);
+
+            // Keep the log mostly intact if the game dies without closing it
+            if ((ticks + 1) % FLUSH_TICKS == 0) {
+                out.flush();
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Could not write input log", e);
+        }
+        tickLength = 0;
+        tickEvents = 0;
+        ticks++;
+    }
+
+    /**
+     * Returns the number of ticks recorded so far.
+     *
+     * @return the number of ticks
+     */
+    public long getTicks() {
+        return ticks;
+    }
+
+    /**
+     * Stops recording and closes the log.
+     */
+    public void close() {
+        for (EventQueue queue : queues) {
+            queue.setRecorder(null, 0);
+        }
+        try {
+            out.close();
+        } catch (IOException e) {
+            throw new RuntimeException("Could not close input log", e);
+        }
+    }
+
+    private void writeVar(long value) {
+        while ((value & ~0x7FL) != 0) {
+            tickBuffer[tickLength++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        tickBuffer[tickLength++] = (byte) value;
+    }
+
+    private static void writeVar(DataOutputStream out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    static long zigZag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    static long unZigZag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+}
@@ -0,0 +1,173 @@
+package tiny.engine.input;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * The InputReplay reads a log written by an InputRecorder and queues each
+ * recorded tick back into the keyboard, mouse and mouse wheel. The events then
+ * go through the usual update and processEvent path, so the game sees the
+ * same input on the same ticks as the recorded session.
+ * <p/>
+ * A log cut off part way through a tick, as left by a game that was not shut
+ * down cleanly, ends at the last whole tick.
+ * <p/>
+ * Replayed events are queued alongside any live input, so replays are best
+ * run with the loop in headless mode.
+ *
+ * @author Damian Strain
+ */
+public final class InputReplay {
+
+    private final DataInputStream in;
+    private static final int FIELDS = 6;
+
+    private final InputRecord record = new InputRecord();
+
+    // The events of the tick being replayed
+    private int[] events = new int[64 * FIELDS];
+    private long[] times = new long[64];
+    private long lastTime;
+    private long ticks;
+    private boolean ended = false;
+
+    /**
+     * Constructs a replay reading from the given log.
+     *
+     * @param in the stream to read the log from
+     */
+    public InputReplay(InputStream in) {
+        this.in = new DataInputStream(new BufferedInputStream(in));
+        try {
+            if (this.in.readInt() != InputRecorder.MAGIC) {
+                throw new IllegalArgumentException("Not an input log");
+            }
+            int version = this.in.readUnsignedByte();
+            if (version != InputRecorder.VERSION) {
+                throw new IllegalArgumentException("Unsupported input log version: " + version);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Could not read input log", e);
+        }
+    }
+
+    /**
+     * Queues the events of the next recorded tick. This should be called once
+     * per update, before the devices are updated.
+     *
+     * @param keyboard the keyboard to replay into
+     * @param mouse the mouse to replay into
+     * @param mouseWheel the mouse wheel to replay into
+     * @return false if the log has ended
+     */
+    public boolean nextTick(Keyboard keyboard, Mouse mouse, MouseWheel mouseWheel) {
+        if (ended) {
+            return false;
+        }
+        int count;
+        try {
+            count = readTick();
+        } catch (EOFException e) {
+            // The log ends here, possibly part way through a tick that is dropped
+            ended = true;
+            return false;
+        } catch (IOException e) {
+            throw new RuntimeException("Could not read input log", e);
+        }
+
+        for (int i = 0; i < count; i++) {
+            int f = i * FIELDS;
+            record.set(events[f + 1], events[f + 2], events[f + 3], events[f + 4], events[f + 5], times[i]);
+
+            if (events[f] == InputRecorder.KEYBOARD) {
+                keyboard.add(record);
+            } else if (events[f] == InputRecorder.MOUSE) {
+                mouse.add(record);
+            } else {
+                mouseWheel.add(record);
+            }
+        }
+        ticks++;
+        return true;
+    }
+
+    /**
+     * Reads a whole tick into the events, so a tick cut short by the end of
+     * the log is never partly queued.
+     *
+     * @return the number of events in the tick
+     * @throws java.io.IOException if the log cannot be read or ends early
+     */
+    private int readTick() throws IOException {
+        int count = (int) readVar();
+        long time = lastTime;
+
+        for (int i = 0; i < count; i++) {
+            if (i == times.length) {
+                events = Arrays.copyOf(events, events.length * 2);
+                times = Arrays.copyOf(times, times.length * 2);
+            }
+            int f = i * FIELDS;
+            int device = in.readUnsignedByte();
+            if (device > InputRecorder.MOUSE_WHEEL) {
+                throw new IllegalArgumentException("Unknown input device in log: " + device);
+            }
+            events[f] = device;
+            events[f + 1] = (int) readVar();
+            events[f + 2] = (int) InputRecorder.unZigZag(readVar());
+            events[f + 3] = (int) InputRecorder.unZigZag(readVar());
+            events[f + 4] = (int) InputRecorder.unZigZag(readVar());
+            events[f + 5] = (int) InputRecorder.unZigZag(readVar());
+            time += InputRecorder.unZigZag(readVar());
+            times[i] = time;
+        }
+        lastTime = time;
+        return count;
+    }
+
+    /**
+     * Returns whether every tick of the log has been replayed.
+     *
+     * @return true if the log has ended
+     */
+    public boolean isEnded() {
+        return ended;
+    }
+
+    /**
+     * Returns the number of ticks replayed so far.
+     *
+     * @return the number of ticks
+     */
+    public long getTicks() {
+        return ticks;
+    }
+
+    /**
+     * Closes the log.
+     */
+    public void close() {
+        ended = true;
+        try {
+            in.close();
+        } catch (IOException e) {
+            throw new RuntimeException("Could not close input log", e);
+        }
+    }
+
+    private long readVar() throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Corrupt input log");
+    }
+}
@@ -7,13 +7,18 @@ import java.awt.event.KeyListener;
  * The Keyboard Class handles key input events. The only commonly needed public
  * method is isKeyPressed(int). This simply returns whether a key is currently
  * pressed (i.e. the key has been pressed, but not yet released).
+ * wasKeyPressedThisTick(int) and wasKeyReleasedThisTick(int) report the
+ * moment a key changes, once, on the update it changed in.
  *
  * @author Damian Strain
  */
-public final class Keyboard extends EventQueue<KeyEvent> implements KeyListener {
+public final class Keyboard extends EventQueue implements KeyListener {
 
     private static final int KEY_CODE_MAX = 256;
     private final boolean[] keys;
+    private final int[] pressedTick;
+    private final int[] releasedTick;
+    private int tick = 1;
 
     /**
      * Constructs a new Keyboard instance and initialises the keys array. The
@@ -22,6 +27,8 @@ public final class Keyboard extends EventQueue<KeyEvent> implements KeyListener
      */
     public Keyboard() {
         keys = new boolean[KEY_CODE_MAX];
+        pressedTick = new int[KEY_CODE_MAX];
+        releasedTick = new int[KEY_CODE_MAX];
     }
 
     /**
@@ -31,7 +38,7 @@ public final class Keyboard extends EventQueue<KeyEvent> implements KeyListener
      */
     @Override
     public void keyTyped(KeyEvent keyEvent) {
-        add(keyEvent);
+        queue(keyEvent);
     }
 
     /**
@@ -41,7 +48,7 @@ public final class Keyboard extends EventQueue<KeyEvent> implements KeyListener
      */
     @Override
     public void keyPressed(KeyEvent keyEvent) {
-        add(keyEvent);
+        queue(keyEvent);
     }
 
     /**
@@ -51,7 +58,18 @@ public final class Keyboard extends EventQueue<KeyEvent> implements KeyListener
      */
     @Override
     public void keyReleased(KeyEvent keyEvent) {
-        add(keyEvent);
+        queue(keyEvent);
+    }
+
+    /**
+     * Adds a key event to the queue as an input record. Key typed events keep
+     * the key character as their code, since they have no key code.
+     *
+     * @param keyEvent the key event to be added
+     */
+    private void queue(KeyEvent keyEvent) {
+        int code = (keyEvent.getID() == KeyEvent.KEY_TYPED) ? keyEvent.getKeyChar() : keyEvent.getKeyCode();
+        add(keyEvent.getID(), code, 0, 0, keyEvent.getModifiersEx());
     }
 
     /**
@@ -65,6 +83,51 @@ public final class Keyboard extends EventQueue<KeyEvent> implements KeyListener
         return (keyCode >= 0) && (keyCode < KEY_CODE_MAX) && keys[keyCode];
     }
 
+    /**
+     * Returns whether a given key went down during the last update. Key
+     * repeats while the key is held do not count.
+     *
+     * @param keyCode the code for the given key
+     * @return true if the key was pressed this tick, false otherwise
+     */
+    public boolean wasKeyPressedThisTick(int keyCode) {
+        return (keyCode >= 0) && (keyCode < KEY_CODE_MAX) && pressedTick[keyCode] == tick;
+    }
+
+    /**
+     * Returns whether a given key went up during the last update.
+     *
+     * @param keyCode the code for the given key
+     * @return true if the key was released this tick, false otherwise
+     */
+    public boolean wasKeyReleasedThisTick(int keyCode) {
+        return (keyCode >= 0) && (keyCode < KEY_CODE_MAX) && releasedTick[keyCode] == tick;
+    }
+
+    /**
+     * Starts a new tick for the edge queries before processing the queue.
+     */
+    @Override
+    public void update() {
+        tick++;
+        super.update();
+    }
+
+    /**
+     * Releases every key after a press or release was lost, marking the keys
+     * that were down as released this tick. Keys still held down are pressed
+     * again by their key repeats.
+     */
+    @Override
+    protected void resync() {
+        for (int i = 0; i < KEY_CODE_MAX; i++) {
+            if (keys[i]) {
+                keys[i] = false;
+                releasedTick[i] = tick;
+            }
+        }
+    }
+
     /**
      * This method processes the key event passed into it. If the key has been
      * pressed, true is added to the keys array and false if the key is
@@ -73,14 +136,20 @@ public final class Keyboard extends EventQueue<KeyEvent> implements KeyListener
      * @param event the event to be processed
      */
     @Override
-    public void processEvent(KeyEvent event) {
-        if (event.getID() == KeyEvent.KEY_PRESSED) {
-            if ((event.getKeyCode() >= 0) && (event.getKeyCode() < KEY_CODE_MAX)) {
-                keys[event.getKeyCode()] = true;
+    public void processEvent(InputRecord event) {
+        if (event.getType() == KeyEvent.KEY_PRESSED) {
+            if ((event.getCode() >= 0) && (event.getCode() < KEY_CODE_MAX)) {
+                if (!keys[event.getCode()]) {
+                    pressedTick[event.getCode()] = tick;
+                }
+                keys[event.getCode()] = true;
             }
-        } else if (event.getID() == KeyEvent.KEY_RELEASED) {
-            if ((event.getKeyCode() >= 0) && (event.getKeyCode() < KEY_CODE_MAX)) {
-                keys[event.getKeyCode()] = false;
+        } else if (event.getType() == KeyEvent.KEY_RELEASED) {
+            if ((event.getCode() >= 0) && (event.getCode() < KEY_CODE_MAX)) {
+                if (keys[event.getCode()]) {
+                    releasedTick[event.getCode()] = tick;
+                }
+                keys[event.getCode()] = false;
             }
         }
     }
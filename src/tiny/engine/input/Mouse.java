@@ -3,14 +3,20 @@ package tiny.engine.input;
 import java.awt.event.MouseEvent;
 import java.awt.event.MouseListener;
 import java.awt.event.MouseMotionListener;
+import java.util.Arrays;
 
 /**
  * The Mouse Class handles mouse and mouse motion events. The last event is used
  * to determine the mouse location.
+ * <p/>
+ * Motion events are coalesced, so only the last of each run of moves or drags
+ * in a tick is processed and kept for getEvent(). Games that need every
+ * sample, for gestures or drawing, can switch on the motion history, which
+ * keeps each position with the time it was queued.
  *
  * @author Damian Strain
  */
-public final class Mouse extends EventQueue<MouseEvent> implements MouseListener, MouseMotionListener {
+public final class Mouse extends EventQueue implements MouseListener, MouseMotionListener {
 
     private int x;
     private int y;
@@ -19,6 +25,16 @@ public final class Mouse extends EventQueue<MouseEvent> implements MouseListener
     private boolean middleButton;
     private boolean rightButton;
 
+    // Edge tracking, indexed by MouseEvent button
+    private final int[] pressedTick = new int[4];
+    private final int[] releasedTick = new int[4];
+    private int tick = 1;
+
+    private boolean motionHistory = false;
+    private int[] motion = new int[64 * 2];
+    private long[] motionTimes = new long[64];
+    private int numMotions;
+
     /**
      * Returns the x coordinate of the mouse cursor.
      *
@@ -64,6 +80,15 @@ public final class Mouse extends EventQueue<MouseEvent> implements MouseListener
         return rightButton;
     }
 
+    /**
+     * Adds a mouse event to the queue as an input record.
+     *
+     * @param mouseEvent the mouse event to be added
+     */
+    private void queue(MouseEvent mouseEvent) {
+        add(mouseEvent.getID(), mouseEvent.getButton(), mouseEvent.getX(), mouseEvent.getY(), mouseEvent.getModifiersEx());
+    }
+
     /**
      * Adds a mouse clicked event to the queue.
      *
@@ -71,7 +96,7 @@ public final class Mouse extends EventQueue<MouseEvent> implements MouseListener
      */
     @Override
     public void mouseClicked(MouseEvent mouseEvent) {
-        add(mouseEvent);
+        queue(mouseEvent);
     }
 
     /**
@@ -81,7 +106,7 @@ public final class Mouse extends EventQueue<MouseEvent> implements MouseListener
      */
     @Override
     public void mousePressed(MouseEvent mouseEvent) {
-        add(mouseEvent);
+        queue(mouseEvent);
     }
 
     /**
@@ -91,7 +116,7 @@ public final class Mouse extends EventQueue<MouseEvent> implements MouseListener
      */
     @Override
     public void mouseReleased(MouseEvent mouseEvent) {
-        add(mouseEvent);
+        queue(mouseEvent);
     }
 
     /**
@@ -101,7 +126,7 @@ public final class Mouse extends EventQueue<MouseEvent> implements MouseListener
      */
     @Override
     public void mouseEntered(MouseEvent mouseEvent) {
-        add(mouseEvent);
+        queue(mouseEvent);
     }
 
     /**
@@ -111,7 +136,7 @@ public final class Mouse extends EventQueue<MouseEvent> implements MouseListener
      */
     @Override
     public void mouseExited(MouseEvent mouseEvent) {
-        add(mouseEvent);
+        queue(mouseEvent);
     }
 
     /**
@@ -121,7 +146,7 @@ public final class Mouse extends EventQueue<MouseEvent> implements MouseListener
      */
     @Override
     public void mouseDragged(MouseEvent mouseEvent) {
-        add(mouseEvent);
+        queue(mouseEvent);
     }
 
     /**
@@ -131,48 +156,210 @@ public final class Mouse extends EventQueue<MouseEvent> implements MouseListener
      */
     @Override
     public void mouseMoved(MouseEvent mouseEvent) {
-        add(mouseEvent);
+        queue(mouseEvent);
+    }
+
+    /**
+     * Returns whether a mouse button went down during the last update.
+     *
+     * @param button MouseEvent.BUTTON1, BUTTON2 or BUTTON3
+     * @return true if the button was pressed this tick, false otherwise
+     */
+    public boolean wasPressedThisTick(int button) {
+        return (button > 0) && (button < pressedTick.length) && pressedTick[button] == tick;
+    }
+
+    /**
+     * Returns whether a mouse button went up during the last update.
+     *
+     * @param button MouseEvent.BUTTON1, BUTTON2 or BUTTON3
+     * @return true if the button was released this tick, false otherwise
+     */
+    public boolean wasReleasedThisTick(int button) {
+        return (button > 0) && (button < releasedTick.length) && releasedTick[button] == tick;
+    }
+
+    /**
+     * Returns whether every motion sample is kept.
+     *
+     * @return true if the motion history is on
+     */
+    public boolean isMotionHistory() {
+        return motionHistory;
+    }
+
+    /**
+     * Sets whether every motion sample of a tick is kept, rather than just the
+     * final position.
+     *
+     * @param motionHistory true to keep the motion history
+     */
+    public void setMotionHistory(boolean motionHistory) {
+        this.motionHistory = motionHistory;
+        numMotions = 0;
+    }
+
+    /**
+     * Returns the number of motion samples kept during the last update. This
+     * is always 0 unless the motion history is on.
+     *
+     * @return the number of motion samples
+     */
+    public int getMotionCount() {
+        return numMotions;
+    }
+
+    /**
+     * Returns the x coordinate of a motion sample.
+     *
+     * @param index the index of the sample, oldest first
+     * @return the x coordinate
+     */
+    public int getMotionX(int index) {
+        checkMotion(index);
+        return motion[index * 2];
+    }
+
+    /**
+     * Returns the y coordinate of a motion sample.
+     *
+     * @param index the index of the sample, oldest first
+     * @return the y coordinate
+     */
+    public int getMotionY(int index) {
+        checkMotion(index);
+        return motion[index * 2 + 1];
     }
 
     /**
-     * This method processes the mouse event passed into it. If a mouse button
-     * has been pressed, it is marked true.
+     * Returns the System.nanoTime() at which a motion sample was queued.
+     *
+     * @param index the index of the sample, oldest first
+     * @return the time in nanoseconds
+     */
+    public long getMotionTime(int index) {
+        checkMotion(index);
+        return motionTimes[index];
+    }
+
+    private void checkMotion(int index) {
+        if (index < 0 || index >= numMotions) {
+            throw new IndexOutOfBoundsException("Motion " + index + " of " + numMotions);
+        }
+    }
+
+    /**
+     * Starts a new tick for the edge queries and motion history before
+     * processing the queue.
+     */
+    @Override
+    public void update() {
+        tick++;
+        numMotions = 0;
+        super.update();
+    }
+
+    /**
+     * Motion events only matter for their final position, so runs of them are
+     * coalesced.
+     *
+     * @param type the AWT event id
+     * @return true for moved and dragged events
+     */
+    @Override
+    protected boolean isCoalesced(int type) {
+        return type == MouseEvent.MOUSE_MOVED || type == MouseEvent.MOUSE_DRAGGED;
+    }
+
+    /**
+     * Releases every button after a press or release was lost, marking the
+     * buttons that were down as released this tick.
+     */
+    @Override
+    protected void resync() {
+        for (int button = MouseEvent.BUTTON1; button <= MouseEvent.BUTTON3; button++) {
+            if (isButtonPressed(button)) {
+                releasedTick[button] = tick;
+                setButton(button, false);
+            }
+        }
+    }
+
+    /**
+     * Adds a replaced motion event to the motion history, if it is on.
+     *
+     * @param event the replaced event
+     */
+    @Override
+    protected void processCoalesced(InputRecord event) {
+        if (motionHistory) {
+            addMotion(event);
+        }
+    }
+
+    /**
+     * This method processes the mouse event passed into it. Motion only moves
+     * the cursor, and is added to the motion history if it is on. If a mouse
+     * button has been pressed, it is marked true.
      *
      * @param event the event to be processed
      */
     @Override
-    public void processEvent(MouseEvent event) {
+    public void processEvent(InputRecord event) {
         x = event.getX();
         y = event.getY();
 
-        // If the mouse button was pressed, update the correct button
-        if (event.getID() == MouseEvent.MOUSE_PRESSED) {
-            if (event.getButton() == MouseEvent.BUTTON1) {
-                leftButton = true;
+        int type = event.getType();
+        if (type == MouseEvent.MOUSE_MOVED || type == MouseEvent.MOUSE_DRAGGED) {
+            if (motionHistory) {
+                addMotion(event);
             }
+            return;
+        }
 
-            if (event.getButton() == MouseEvent.BUTTON2) {
-                middleButton = true;
-            }
+        int button = event.getCode();
+        if (button <= MouseEvent.NOBUTTON || button > MouseEvent.BUTTON3) {
+            return;
+        }
 
-            if (event.getButton() == MouseEvent.BUTTON3) {
-                rightButton = true;
+        // If the mouse button was pressed or released, update the correct button
+        if (type == MouseEvent.MOUSE_PRESSED) {
+            if (!isButtonPressed(button)) {
+                pressedTick[button] = tick;
+            }
+            setButton(button, true);
+        } else if (type == MouseEvent.MOUSE_RELEASED) {
+            if (isButtonPressed(button)) {
+                releasedTick[button] = tick;
             }
+            setButton(button, false);
         }
+    }
 
-        // If the mouse button was released, update the correct button
-        if (event.getID() == MouseEvent.MOUSE_RELEASED) {
-            if (event.getButton() == MouseEvent.BUTTON1) {
-                leftButton = false;
-            }
+    private boolean isButtonPressed(int button) {
+        if (button == MouseEvent.BUTTON1) {
+            return leftButton;
+        }
+        return (button == MouseEvent.BUTTON2) ? middleButton : rightButton;
+    }
 
-            if (event.getButton() == MouseEvent.BUTTON2) {
-                middleButton = false;
-            }
+    private void setButton(int button, boolean pressed) {
+        if (button == MouseEvent.BUTTON1) {
+            leftButton = pressed;
+        } else if (button == MouseEvent.BUTTON2) {
+            middleButton = pressed;
+        } else {
+            rightButton = pressed;
+        }
+    }
 
-            if (event.getButton() == MouseEvent.BUTTON3) {
-                rightButton = false;
-            }
+    private void addMotion(InputRecord event) {
+        if (numMotions == motionTimes.length) {
+            motion = Arrays.copyOf(motion, motion.length * 2);
+            motionTimes = Arrays.copyOf(motionTimes, motionTimes.length * 2);
         }
+        motion[numMotions * 2] = event.getX();
+        motion[numMotions * 2 + 1] = event.getY();
+        motionTimes[numMotions++] = event.getTime();
     }
 }
@@ -8,7 +8,7 @@ import java.awt.event.MouseWheelListener;
  *
  * @author Damian Strain
  */
-public final class MouseWheel extends EventQueue<MouseWheelEvent> implements MouseWheelListener {
+public final class MouseWheel extends EventQueue implements MouseWheelListener {
 
     private int wheelRotation = 0;
 
@@ -29,7 +29,7 @@ public final class MouseWheel extends EventQueue<MouseWheelEvent> implements Mou
      * EventQueue’s update as normal.
      */
     @Override
-    public synchronized void update() {
+    public void update() {
         // Reset the wheel rotation
         wheelRotation = 0;
         super.update();
@@ -42,7 +42,7 @@ public final class MouseWheel extends EventQueue<MouseWheelEvent> implements Mou
      */
     @Override
     public void mouseWheelMoved(MouseWheelEvent mouseWheelEvent) {
-        add(mouseWheelEvent);
+        add(mouseWheelEvent.getID(), mouseWheelEvent.getWheelRotation(), mouseWheelEvent.getX(), mouseWheelEvent.getY(), mouseWheelEvent.getModifiersEx());
     }
 
     /**
@@ -51,8 +51,8 @@ public final class MouseWheel extends EventQueue<MouseWheelEvent> implements Mou
      * @param event the event to be processed
      */
     @Override
-    public void processEvent(MouseWheelEvent event) {
+    public void processEvent(InputRecord event) {
         // Increment the wheel rotation
-        wheelRotation += event.getWheelRotation();
+        wheelRotation += event.getCode();
     }
 }
@@ -0,0 +1,108 @@
+package tiny.engine.utils;
+
+import java.awt.Graphics;
+import java.awt.image.BufferedImage;
+
+/**
+ * An AtlasRegion is one image packed into a page of a TextureAtlas. It is
+ * drawn by copying its rectangle out of the page, so every region on a page
+ * shares the page's accelerated copy.
+ *
+ * @author Damian Strain
+ */
+public final class AtlasRegion {
+
+    private final BufferedImage page;
+    private final int x;
+    private final int y;
+    private final int width;
+    private final int height;
+
+    AtlasRegion(BufferedImage page, int x, int y, int width, int height) {
+        this.page = page;
+        this.x = x;
+        this.y = y;
+        this.width = width;
+        this.height = height;
+    }
+
+    /**
+     * Draws this region with its top left corner at the given position.
+     *
+     * @param g the Graphics context to draw with
+     * @param dx the x position to draw at
+     * @param dy the y position to draw at
+     */
+    public void draw(Graphics g, int dx, int dy) {
+        g.drawImage(page, dx, dy, dx + width, dy + height, x, y, x + width, y + height, null);
+    }
+
+    /**
+     * Draws this region scaled to fill the given rectangle.
+     *
+     * @param g the Graphics context to draw with
+     * @param dx the x position to draw at
+     * @param dy the y position to draw at
+     * @param dw the width to draw at
+     * @param dh the height to draw at
+     */
+    public void draw(Graphics g, int dx, int dy, int dw, int dh) {
+        g.drawImage(page, dx, dy, dx + dw, dy + dh, x, y, x + width, y + height, null);
+    }
+
+    /**
+     * Returns a view of this region as its own image. The view shares the
+     * page's pixels, but drawing it does not use the page's accelerated copy,
+     * so use draw() for rendering and this for reading pixels.
+     *
+     * @return an image of this region
+     */
+    public BufferedImage toImage() {
+        return page.getSubimage(x, y, width, height);
+    }
+
+    /**
+     * Returns the page this region is packed into.
+     *
+     * @return the atlas page
+     */
+    public BufferedImage getPage() {
+        return page;
+    }
+
+    /**
+     * Returns the x position of this region on its page.
+     *
+     * @return the x position in pixels
+     */
+    public int getX() {
+        return x;
+    }
+
+    /**
+     * Returns the y position of this region on its page.
+     *
+     * @return the y position in pixels
+     */
+    public int getY() {
+        return y;
+    }
+
+    /**
+     * Returns the width of this region.
+     *
+     * @return the width in pixels
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * Returns the height of this region.
+     *
+     * @return the height in pixels
+     */
+    public int getHeight() {
+        return height;
+    }
+}
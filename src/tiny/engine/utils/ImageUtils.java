@@ -106,7 +106,15 @@ public final class ImageUtils {
 //        }
     }
 
-    private static BufferedImage makeTransparent(BufferedImage sprite, final Color color) {
+    /**
+     * Returns a copy of the specified image with every pixel of the specified
+     * Color made completely transparent.
+     *
+     * @param sprite The image to copy
+     * @param color The Color to make transparent
+     * @return The transparent copy
+     */
+    public static BufferedImage makeTransparent(BufferedImage sprite, final Color color) {
         ImageFilter filter = new RGBImageFilter() {
             public int markerRGB = color.getRGB() | 0xFF000000;
 
@@ -0,0 +1,244 @@
+package tiny.engine.utils;
+
+import java.awt.AlphaComposite;
+import java.awt.Graphics2D;
+import java.awt.GraphicsEnvironment;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The TextureAtlas packs many small images, such as the frames of split
+ * sprite sheets, into a few large pages. Java2D keeps an accelerated copy of
+ * each image it draws often, so a handful of pages is far cheaper than one
+ * image per frame, and consecutive draws from the same page batch well.
+ * <p/>
+ * Images are placed as they are added using the max rects method: each page
+ * tracks the largest free rectangles left on it, and an image goes where it
+ * leaves the smallest leftover side. A new page is started when no page has
+ * room. Adding the largest images first gives the tightest packing.
+ *
+ * @author Damian Strain
+ */
+public final class TextureAtlas {
+
+    /**
+     * The default width and height of a page, in pixels.
+     */
+    public static final int DEFAULT_PAGE_SIZE = 1024;
+
+    private final int pageSize;
+    private final int padding;
+    private final List<Page> pages = new ArrayList<>();
+
+    /**
+     * Constructs a new atlas with the default page size and 1 pixel of
+     * padding between images.
+     */
+    public TextureAtlas() {
+        this(DEFAULT_PAGE_SIZE, 1);
+    }
+
+    /**
+     * Constructs a new atlas. Padding keeps neighbouring images from bleeding
+     * into each other when regions are drawn scaled.
+     *
+     * @param pageSize the width and height of a page, in pixels
+     * @param padding the space to leave around each image, in pixels
+     */
+    public TextureAtlas(int pageSize, int padding) {
+        if (pageSize <= 0 || padding < 0) {
+            throw new IllegalArgumentException("Invalid atlas size " + pageSize + " or padding " + padding);
+        }
+        this.pageSize = pageSize;
+        this.padding = padding;
+    }
+
+    /**
+     * Packs an image into the atlas. Images larger than a page get a page of
+     * their own.
+     *
+     * @param image the image to add
+     * @return the region the image was packed into
+     */
+    public AtlasRegion add(BufferedImage image) {
+        return add(image, 0, 0, image.getWidth(), image.getHeight());
+    }
+
+    /**
+     * Splits a sprite sheet into frames and packs each frame into the atlas,
+     * in the same order as ImageUtils.splitSpriteSheet.
+     *
+     * @param spriteSheet the sprite sheet to split
+     * @param cols the number of columns to split the sprite sheet into
+     * @param rows the number of rows to split the sprite sheet into
+     * @return the region of each frame
+     */
+    public AtlasRegion[] addSheet(BufferedImage spriteSheet, int cols, int rows) {
+        int w = spriteSheet.getWidth() / cols;
+        int h = spriteSheet.getHeight() / rows;
+
+        AtlasRegion[] regions = new AtlasRegion[cols * rows];
+        for (int y = 0; y < rows; y++) {
+            for (int x = 0; x < cols; x++) {
+                regions[y * cols + x] = add(spriteSheet, w * x, h * y, w, h);
+            }
+        }
+        return regions;
+    }
+
+    /**
+     * Returns the pages created so far.
+     *
+     * @return an unmodifiable list of pages
+     */
+    public List<BufferedImage> getPages() {
+        List<BufferedImage> images = new ArrayList<>(pages.size());
+        for (Page page : pages) {
+            images.add(page.image);
+        }
+        return Collections.unmodifiableList(images);
+    }
+
+    /**
+     * Returns the fraction of the pages' area covered by images.
+     *
+     * @return a value between 0 and 1
+     */
+    public double getOccupancy() {
+        long total = 0;
+        long used = 0;
+        for (Page page : pages) {
+            total += (long) page.image.getWidth() * page.image.getHeight();
+            used += page.used;
+        }
+        return (total > 0) ? (double) used / total : 0;
+    }
+
+    /**
+     * Packs part of an image into the first page with room for it.
+     */
+    private AtlasRegion add(BufferedImage source, int sx, int sy, int width, int height) {
+        int w = width + padding * 2;
+        int h = height + padding * 2;
+
+        Rectangle place = null;
+        Page page = null;
+        for (Page candidate : pages) {
+            place = candidate.find(w, h);
+            if (place != null) {
+                page = candidate;
+                break;
+            }
+        }
+        if (page == null) {
+            page = new Page(Math.max(pageSize, w), Math.max(pageSize, h));
+            pages.add(page);
+            place = page.find(w, h);
+        }
+        page.place(place);
+
+        int x = place.x + padding;
+        int y = place.y + padding;
+        Graphics2D g = page.image.createGraphics();
+        g.setComposite(AlphaComposite.Src);// Copy alpha as is rather than blend
+        g.drawImage(source, x, y, x + width, y + height, sx, sy, sx + width, sy + height, null);
+        g.dispose();
+        page.used += (long) width * height;
+
+        return new AtlasRegion(page.image, x, y, width, height);
+    }
+
+    /**
+     * One page of the atlas and its free rectangles.
+     */
+    private static final class Page {
+
+        private final BufferedImage image;
+        private final List<Rectangle> free = new ArrayList<>();
+        private long used;
+
+        private Page(int width, int height) {
+            if (GraphicsEnvironment.isHeadless()) {
+                image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+            } else {
+                image = ImageUtils.createCompatibleImage(width, height);
+            }
+            free.add(new Rectangle(0, 0, width, height));
+        }
+
+        /**
+         * Returns the free spot that leaves the shortest leftover side, or
+         * null if nothing fits.
+         */
+        private Rectangle find(int w, int h) {
+            Rectangle best = null;
+            int bestShort = Integer.MAX_VALUE;
+            int bestLong = Integer.MAX_VALUE;
+
+            for (Rectangle r : free) {
+                if (r.width >= w && r.height >= h) {
+                    int leftoverW = r.width - w;
+                    int leftoverH = r.height - h;
+                    int shortSide = Math.min(leftoverW, leftoverH);
+                    int longSide = Math.max(leftoverW, leftoverH);
+
+                    if (shortSide < bestShort || (shortSide == bestShort && longSide < bestLong)) {
+                        best = new Rectangle(r.x, r.y, w, h);
+                        bestShort = shortSide;
+                        bestLong = longSide;
+                    }
+                }
+            }
+            return best;
+        }
+
+        /**
+         * Marks a rectangle as used, splitting every free rectangle it
+         * overlaps into the parts left around it.
+         */
+        private void place(Rectangle used) {
+            List<Rectangle> split = new ArrayList<>();
+
+            for (int i = free.size() - 1; i >= 0; i--) {
+                Rectangle r = free.get(i);
+                if (!r.intersects(used)) {
+                    continue;
+                }
+                free.remove(i);
+
+                if (used.x > r.x) {
+                    split.add(new Rectangle(r.x, r.y, used.x - r.x, r.height));
+                }
+                if (used.x + used.width < r.x + r.width) {
+                    split.add(new Rectangle(used.x + used.width, r.y, r.x + r.width - used.x - used.width, r.height));
+                }
+                if (used.y > r.y) {
+                    split.add(new Rectangle(r.x, r.y, r.width, used.y - r.y));
+                }
+                if (used.y + used.height < r.y + r.height) {
+                    split.add(new Rectangle(r.x, used.y + used.height, r.width, r.y + r.height - used.y - used.height));
+                }
+            }
+            free.addAll(split);
+            prune();
+        }
+
+        /**
+         * Removes free rectangles contained in other free rectangles.
+         */
+        private void prune() {
+            for (int i = free.size() - 1; i >= 0; i--) {
+                Rectangle a = free.get(i);
+                for (int j = 0; j < free.size(); j++) {
+                    if (i != j && free.get(j).contains(a)) {
+                        free.remove(i);
+                        break;
+                    }
+                }
+            }
+        }
+    }
+}